@@ -79,6 +79,9 @@ public class ArtifactCoords implements Comparable<ArtifactCoords> {
      */
     public class Gav implements Comparable<Gav> {
 
+        // lazily computed, the coordinates never change
+        private int hash;
+
         public String getGroupId() {
             return groupId;
         }
@@ -117,11 +120,15 @@ public class ArtifactCoords implements Comparable<ArtifactCoords> {
 
         @Override
         public int hashCode() {
-            final int prime = 31;
-            int result = 1;
-            result = prime * result + ((artifactId == null) ? 0 : artifactId.hashCode());
-            result = prime * result + ((groupId == null) ? 0 : groupId.hashCode());
-            result = prime * result + ((version == null) ? 0 : version.hashCode());
+            int result = hash;
+            if(result == 0) {
+                final int prime = 31;
+                result = 1;
+                result = prime * result + ((artifactId == null) ? 0 : artifactId.hashCode());
+                result = prime * result + ((groupId == null) ? 0 : groupId.hashCode());
+                result = prime * result + ((version == null) ? 0 : version.hashCode());
+                hash = result;
+            }
             return result;
         }
 
@@ -134,6 +141,8 @@ public class ArtifactCoords implements Comparable<ArtifactCoords> {
             if (getClass() != obj.getClass())
                 return false;
             Gav other = (Gav) obj;
+            if (hash != 0 && other.hash != 0 && hash != other.hash)
+                return false;
             if (artifactId == null) {
                 if (other.getArtifactId() != null)
                     return false;
@@ -17,6 +17,9 @@
 package org.jboss.provisioning;
 
 import java.nio.file.Path;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  *
@@ -27,4 +30,21 @@ public interface ArtifactRepositoryManager {
     Path resolve(ArtifactCoords coords) throws ArtifactException;
     void install(ArtifactCoords coords, Path artifact) throws ArtifactException;
     void deploy(ArtifactCoords coords, Path artifact) throws ArtifactException;
+
+    /**
+     * Resolves the artifacts in one request. The default implementation resolves
+     * the artifacts one by one, repository managers able to fetch artifacts concurrently
+     * are expected to override it.
+     *
+     * @param coords  artifact coordinates
+     * @return  locations of the artifacts keyed by their coordinates
+     * @throws ArtifactException  in case any of the artifacts could not be resolved
+     */
+    default Map<ArtifactCoords, Path> resolveAll(Collection<ArtifactCoords> coords) throws ArtifactException {
+        final Map<ArtifactCoords, Path> resolved = new LinkedHashMap<>(coords.size());
+        for(ArtifactCoords artifact : coords) {
+            resolved.put(artifact, resolve(artifact));
+        }
+        return resolved;
+    }
 }
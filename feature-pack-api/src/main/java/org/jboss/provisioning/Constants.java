@@ -32,6 +32,7 @@ public interface Constants {
     String FEATURE_GROUPS = "feature_groups";
     String FEATURES = "features";
     String FEATURE_PACK_XML = "feature-pack.xml";
+    String METADATA_INDEX = "metadata.idx";
     String MODULES_XML = "module.xml";
     String PACKAGE_XML = "package.xml";
     String PACKAGES = "packages";
@@ -43,6 +44,7 @@ public interface Constants {
 
     String PROVISIONED_STATE_DIR = ".pm";
     String PROVISIONED_STATE_XML = "provisioned.xml";
+    String CONTENT_HASHES = "content-hashes.txt";
 
     String PM_UNDEFINED = "PM_UNDEFINED";
 
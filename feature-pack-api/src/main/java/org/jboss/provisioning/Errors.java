@@ -85,6 +85,10 @@ public interface Errors {
         return "Failed to parse " + p.toAbsolutePath();
     }
 
+    static String fileChanged(Path p) {
+        return p.toAbsolutePath() + " has been modified since it was read";
+    }
+
     static String writeFile(Path p) {
         return "Failed to write to " + p.toAbsolutePath();
     }
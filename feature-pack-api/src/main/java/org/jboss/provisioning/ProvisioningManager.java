@@ -29,11 +29,13 @@ import javax.xml.stream.XMLStreamException;
 
 import org.jboss.provisioning.config.FeaturePackConfig;
 import org.jboss.provisioning.config.ProvisioningConfig;
+import org.jboss.provisioning.runtime.FeaturePackLayoutCache;
 import org.jboss.provisioning.runtime.ProvisioningRuntime;
 import org.jboss.provisioning.runtime.ProvisioningRuntimeBuilder;
 import org.jboss.provisioning.state.ProvisionedState;
 import org.jboss.provisioning.util.IoUtils;
 import org.jboss.provisioning.util.PathsUtils;
+import org.jboss.provisioning.xml.LazyProvisionedStateReader;
 import org.jboss.provisioning.xml.XmlParsers;
 
 /**
@@ -48,6 +50,7 @@ public class ProvisioningManager {
         private Path installationHome;
         private ArtifactRepositoryManager artifactResolver;
         private MessageWriter messageWriter;
+        private FeaturePackLayoutCache layoutCache;
 
         private Builder() {
         }
@@ -72,6 +75,11 @@ public class ProvisioningManager {
             return this;
         }
 
+        public Builder setLayoutCache(FeaturePackLayoutCache layoutCache) {
+            this.layoutCache = layoutCache;
+            return this;
+        }
+
         public ProvisioningManager build() {
             return new ProvisioningManager(this);
         }
@@ -85,6 +93,7 @@ public class ProvisioningManager {
     private final Path installationHome;
     private final ArtifactRepositoryManager artifactResolver;
     private final MessageWriter messageWriter;
+    private final FeaturePackLayoutCache layoutCache;
 
     private ProvisioningConfig provisioningConfig;
 
@@ -93,6 +102,7 @@ public class ProvisioningManager {
         this.installationHome = builder.installationHome;
         this.artifactResolver = builder.artifactResolver;
         this.messageWriter = builder.messageWriter == null ? DefaultMessageWriter.getDefaultInstance() : builder.messageWriter;
+        this.layoutCache = builder.layoutCache;
     }
 
     /**
@@ -138,6 +148,27 @@ public class ProvisioningManager {
         }
     }
 
+    /**
+     * Returns the description of the provisioned installation reading only the feature-packs
+     * and the names of the configs upfront. The properties and the features of a config
+     * are read from the disk the first time they are accessed, which makes this a cheap way
+     * to inspect the structure of a large installation.
+     *
+     * @return  description of the provisioned installation with the configs loaded on demand
+     * @throws ProvisioningException  in case there was an error reading the description from the disk
+     */
+    public ProvisionedState getProvisionedStateView() throws ProvisioningException {
+        final Path xml = PathsUtils.getProvisionedStateXml(installationHome);
+        if (!Files.exists(xml)) {
+            return null;
+        }
+        try {
+            return LazyProvisionedStateReader.read(xml);
+        } catch (IOException | XMLStreamException e) {
+            throw new ProvisioningException(Errors.parseXml(xml), e);
+        }
+    }
+
     /**
      * Installs the specified feature-pack.
      *
@@ -240,6 +271,7 @@ public class ProvisioningManager {
                 .setConfig(provisioningConfig)
                 .setEncoding(encoding)
                 .setInstallDir(installationHome)
+                .setLayoutCache(layoutCache)
                 .build()) {
             // install the software
             ProvisioningRuntime.install(runtime);
@@ -330,6 +362,7 @@ public class ProvisioningManager {
                     .setConfig(configuration)
                     .setEncoding(this.getEncoding())
                     .setInstallDir(tempInstallationDir)
+                    .setLayoutCache(layoutCache)
                     .addAllParameters(parameters)
                     .setOperation(toFeaturePack ? "diff-to-feature-pack" : "diff");
             try (ProvisioningRuntime runtime = builder.build()) {
@@ -420,6 +453,7 @@ public class ProvisioningManager {
                     .setConfig(configuration)
                     .setEncoding(this.getEncoding())
                     .setInstallDir(tempInstallationDir)
+                    .setLayoutCache(layoutCache)
                     .addAllParameters(parameters)
                     .setOperation("upgrade");
             try (ProvisioningRuntime runtime = diffBuilder.build()) {
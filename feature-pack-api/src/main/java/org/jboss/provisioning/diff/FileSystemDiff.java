@@ -16,8 +16,6 @@
  */
 package org.jboss.provisioning.diff;
 
-import static org.jboss.provisioning.util.IoUtils.listContents;
-
 import difflib.DiffUtils;
 import difflib.Patch;
 import java.io.IOException;
@@ -25,6 +23,7 @@ import java.nio.charset.MalformedInputException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.ProviderException;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -32,14 +31,23 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.jboss.provisioning.Constants;
 import org.jboss.provisioning.MessageWriter;
+import org.jboss.provisioning.util.ContentHashIndex;
+import org.jboss.provisioning.util.IoUtils;
 import org.jboss.provisioning.util.PathFilter;
+import org.jboss.provisioning.util.PathsUtils;
 
 /**
  *
  * @author Emmanuel Hugonnet (c) 2017 Red Hat, inc.
  */
 public class FileSystemDiff {
+
+    private static final Path CONTENT_HASHES = Paths.get(Constants.PROVISIONED_STATE_DIR, Constants.CONTENT_HASHES);
+
     private final Path stagedInstallation;
     private final Path customizedInstallation;
     protected final MessageWriter messageWriter;
@@ -69,6 +77,30 @@ public class FileSystemDiff {
         }
     }
 
+    /**
+     * Hashes the content of the installation re-using the hashes recorded at
+     * provisioning time for the files that haven't changed since.
+     * The hashes of the changed files are recorded in the index of the installation
+     * so that the following diffs don't hash them again.
+     */
+    private Map<Path, String> listContents(Path installation, PathFilter filter) throws IOException {
+        if(installation == null) {
+            return IoUtils.listContents(installation, path -> !CONTENT_HASHES.equals(path) && filter.accept(path), ForkJoinPool.commonPool(), null);
+        }
+        final Path indexFile = PathsUtils.getContentHashes(installation);
+        final ContentHashIndex index = ContentHashIndex.load(indexFile);
+        final Map<Path, String> contents = IoUtils.listContents(installation, path -> !CONTENT_HASHES.equals(path) && filter.accept(path), ForkJoinPool.commonPool(), index);
+        if(index.isModified() && Files.exists(indexFile)) {
+            try {
+                index.store(indexFile);
+            } catch(IOException e) {
+                // the index is only an optimization
+                messageWriter.verbose(e, "Failed to store " + indexFile);
+            }
+        }
+        return contents;
+    }
+
     private Set<Path> listDeletedFiles(final Map<Path, String> stagged, final Map<Path, String> custom) {
         Set<Path> deletedFiles = new HashSet<>();
         for (Path path : stagged.keySet()) {
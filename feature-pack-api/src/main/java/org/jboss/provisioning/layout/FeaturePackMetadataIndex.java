@@ -0,0 +1,565 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.provisioning.layout;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.jboss.provisioning.Constants;
+import org.jboss.provisioning.Errors;
+import org.jboss.provisioning.ProvisioningDescriptionException;
+import org.jboss.provisioning.spec.CapabilitySpec;
+import org.jboss.provisioning.spec.FeatureAnnotation;
+import org.jboss.provisioning.spec.FeatureDependencySpec;
+import org.jboss.provisioning.spec.FeatureId;
+import org.jboss.provisioning.spec.FeatureParameterSpec;
+import org.jboss.provisioning.spec.FeatureReferenceSpec;
+import org.jboss.provisioning.spec.FeatureSpec;
+import org.jboss.provisioning.spec.PackageDepsSpec;
+import org.jboss.provisioning.spec.PackageDepsSpecBuilder;
+import org.jboss.provisioning.spec.PackageDependencySpec;
+import org.jboss.provisioning.spec.PackageSpec;
+import org.jboss.provisioning.xml.FeatureSpecXmlParser;
+import org.jboss.provisioning.xml.PackageXmlParser;
+
+/**
+ * Precompiled binary form of the feature specs and the package specs of a feature-pack.
+ *
+ * The index is stored in the root of the feature-pack as {@link Constants#METADATA_INDEX}
+ * and consists of a table of the distinct strings, the directories of the indexed feature spec
+ * and package names and the length-prefixed spec records which reference the strings by their
+ * position in the table. A record is decoded only when the spec is requested and a string
+ * is decoded the first time a record referencing it is.
+ *
+ * The index is an optimization, the XML files remain the source of truth: the specs
+ * not found in the index are read from XML and an index of an unsupported version is ignored.
+ * Each record also keeps the size and the CRC32 checksum of the XML file it was generated from.
+ * A record is used only as long as the XML file in the feature-pack still matches them,
+ * otherwise the spec is treated as not indexed and is read from XML.
+ *
+ * @author Alexey Loubyansky
+ */
+public class FeaturePackMetadataIndex {
+
+    private static final int MAGIC = 0x504d4958;
+    private static final int VERSION = 2;
+    private static final int NULL = -1;
+
+    // directory entry: the offset of the record, the size and the checksum of the XML file
+    private static final int OFFSET = 0;
+    private static final int XML_SIZE = 1;
+    private static final int XML_CRC = 2;
+
+    private static final byte PARAM_ID = 1;
+    private static final byte PARAM_NILLABLE = 2;
+    private static final byte PARAM_DEFAULT = 4;
+
+    /**
+     * Parses the feature specs and the package specs of the feature-pack directory
+     * and writes their index into the root of the directory.
+     */
+    public static void write(Path fpDir) throws ProvisioningDescriptionException {
+        final Writer writer = new Writer();
+        final Path featuresDir = fpDir.resolve(Constants.FEATURES);
+        if(Files.exists(featuresDir)) {
+            for(Path specXml : listXml(featuresDir, Constants.SPEC_XML)) {
+                final byte[] xml = readXml(specXml);
+                final FeatureSpec spec;
+                try(Reader reader = new InputStreamReader(new ByteArrayInputStream(xml), StandardCharsets.UTF_8)) {
+                    spec = FeatureSpecXmlParser.getInstance().parse(reader);
+                } catch (IOException | XMLStreamException e) {
+                    throw new ProvisioningDescriptionException(Errors.parseXml(specXml), e);
+                }
+                writer.add(specXml.getParent().getFileName().toString(), spec, xml);
+            }
+        }
+        final Path packagesDir = fpDir.resolve(Constants.PACKAGES);
+        if(Files.exists(packagesDir)) {
+            for(Path pkgXml : listXml(packagesDir, Constants.PACKAGE_XML)) {
+                final byte[] xml = readXml(pkgXml);
+                final PackageSpec spec;
+                try(Reader reader = new InputStreamReader(new ByteArrayInputStream(xml), StandardCharsets.UTF_8)) {
+                    spec = PackageXmlParser.getInstance().parse(reader);
+                } catch (IOException | XMLStreamException e) {
+                    throw new ProvisioningDescriptionException(Errors.parseXml(pkgXml), e);
+                }
+                writer.add(pkgXml.getParent().getFileName().toString(), spec, xml);
+            }
+        }
+        final Path target = fpDir.resolve(Constants.METADATA_INDEX);
+        try(OutputStream out = Files.newOutputStream(target)) {
+            writer.writeTo(out);
+        } catch (IOException e) {
+            throw new ProvisioningDescriptionException(Errors.writeFile(target), e);
+        }
+    }
+
+    /**
+     * Opens the index of the feature-pack.
+     *
+     * @param fpDir  feature-pack root directory
+     * @return  the index or null, if the feature-pack does not include an index of the supported version
+     */
+    public static FeaturePackMetadataIndex read(Path fpDir) throws ProvisioningDescriptionException {
+        final Path file = fpDir.resolve(Constants.METADATA_INDEX);
+        if(!Files.exists(file)) {
+            return null;
+        }
+        // the index is read into the heap, so that no file handle or mapping outlives the call
+        final ByteBuffer buf;
+        try {
+            buf = ByteBuffer.wrap(Files.readAllBytes(file));
+        } catch (IOException e) {
+            throw new ProvisioningDescriptionException(Errors.readFile(file), e);
+        }
+        try {
+            if(buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+                return null;
+            }
+            return new FeaturePackMetadataIndex(fpDir, buf);
+        } catch(BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new ProvisioningDescriptionException(Errors.readFile(file), e);
+        }
+    }
+
+    private static byte[] readXml(Path xml) throws ProvisioningDescriptionException {
+        try {
+            return Files.readAllBytes(xml);
+        } catch (IOException e) {
+            throw new ProvisioningDescriptionException(Errors.readFile(xml), e);
+        }
+    }
+
+    private static int crc(byte[] bytes) {
+        final CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private static List<Path> listXml(Path dir, String xmlName) throws ProvisioningDescriptionException {
+        final List<Path> xmls = new ArrayList<>();
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for(Path child : stream) {
+                final Path xml = child.resolve(xmlName);
+                if(Files.exists(xml)) {
+                    xmls.add(xml);
+                }
+            }
+        } catch (IOException e) {
+            throw new ProvisioningDescriptionException(Errors.readDirectory(dir), e);
+        }
+        Collections.sort(xmls);
+        return xmls;
+    }
+
+    private static class Writer {
+
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final List<String> stringList = new ArrayList<>();
+        private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        private final DataOutputStream records = new DataOutputStream(recordBytes);
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(body);
+        private final List<int[]> featureSpecs = new ArrayList<>();
+        private final List<int[]> packages = new ArrayList<>();
+
+        void add(String name, FeatureSpec spec, byte[] xml) {
+            try {
+                str(spec.getName());
+                packageDeps(spec);
+
+                out.writeInt(spec.getAnnotations().size());
+                for(FeatureAnnotation annotation : spec.getAnnotations()) {
+                    str(annotation.getName());
+                    strMap(annotation.getAttrs());
+                }
+
+                out.writeInt(spec.getFeatureDeps().size());
+                for(FeatureDependencySpec dep : spec.getFeatureDeps()) {
+                    str(dep.getFeatureId().getSpec().getName());
+                    strMap(dep.getFeatureId().getParams());
+                    str(dep.getDependency());
+                    out.writeBoolean(dep.isInclude());
+                }
+
+                out.writeInt(spec.getFeatureRefs().size());
+                for(FeatureReferenceSpec ref : spec.getFeatureRefs()) {
+                    str(ref.getFeature().getName());
+                    str(ref.getName());
+                    str(ref.getDependency());
+                    out.writeBoolean(ref.isNillable());
+                    out.writeBoolean(ref.isInclude());
+                    strMap(ref.getMappedParams());
+                }
+
+                // the id params go first to preserve their order
+                out.writeInt(spec.getParamsTotal());
+                for(FeatureParameterSpec param : spec.getIdParams()) {
+                    param(param);
+                }
+                for(FeatureParameterSpec param : spec.getParams()) {
+                    if(!param.isFeatureId()) {
+                        param(param);
+                    }
+                }
+
+                caps(spec.getProvidedCapabilities());
+                caps(spec.getRequiredCapabilities());
+                featureSpecs.add(record(name, xml));
+            } catch(IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void add(String name, PackageSpec spec, byte[] xml) {
+            try {
+                str(spec.getName());
+                packageDeps(spec);
+                packages.add(record(name, xml));
+            } catch(IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private int[] record(String name, byte[] xml) throws IOException {
+            final int[] entry = new int[] {index(name), records.size(), xml.length, crc(xml)};
+            records.writeInt(body.size());
+            body.writeTo(records);
+            body.reset();
+            return entry;
+        }
+
+        private void packageDeps(PackageDepsSpec spec) throws IOException {
+            pkgDeps(spec.getLocalPackageDeps());
+            final Collection<String> sources = spec.getExternalPackageSources();
+            out.writeInt(sources.size());
+            for(String fpDep : sources) {
+                str(fpDep);
+                pkgDeps(spec.getExternalPackageDeps(fpDep));
+            }
+        }
+
+        private void pkgDeps(Collection<PackageDependencySpec> deps) throws IOException {
+            out.writeInt(deps.size());
+            for(PackageDependencySpec dep : deps) {
+                str(dep.getName());
+                out.writeBoolean(dep.isOptional());
+            }
+        }
+
+        private void param(FeatureParameterSpec param) throws IOException {
+            str(param.getName());
+            byte flags = 0;
+            if(param.isFeatureId()) {
+                flags |= PARAM_ID;
+            }
+            if(param.isNillable()) {
+                flags |= PARAM_NILLABLE;
+            }
+            if(param.hasDefaultValue()) {
+                flags |= PARAM_DEFAULT;
+            }
+            out.writeByte(flags);
+            if(param.hasDefaultValue()) {
+                str(param.getDefaultValue());
+            }
+        }
+
+        private void caps(Collection<CapabilitySpec> caps) throws IOException {
+            out.writeInt(caps.size());
+            for(CapabilitySpec cap : caps) {
+                str(cap.toString());
+                out.writeBoolean(cap.isOptional());
+            }
+        }
+
+        private void strMap(Map<String, String> map) throws IOException {
+            out.writeInt(map.size());
+            for(Map.Entry<String, String> entry : map.entrySet()) {
+                str(entry.getKey());
+                str(entry.getValue());
+            }
+        }
+
+        private void str(String str) throws IOException {
+            out.writeInt(str == null ? NULL : index(str));
+        }
+
+        private int index(String str) {
+            Integer i = strings.get(str);
+            if(i == null) {
+                i = stringList.size();
+                strings.put(str, i);
+                stringList.add(str);
+            }
+            return i;
+        }
+
+        void writeTo(OutputStream os) throws IOException {
+            final DataOutputStream data = new DataOutputStream(os);
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeInt(stringList.size());
+            for(String str : stringList) {
+                final byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+                data.writeInt(bytes.length);
+                data.write(bytes);
+            }
+            directory(data, featureSpecs);
+            directory(data, packages);
+            data.writeInt(records.size());
+            recordBytes.writeTo(data);
+            data.flush();
+        }
+
+        private static void directory(DataOutputStream data, List<int[]> entries) throws IOException {
+            data.writeInt(entries.size());
+            for(int[] entry : entries) {
+                for(int i : entry) {
+                    data.writeInt(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a record from its own view of the buffer, so the records can be decoded concurrently.
+     */
+    private class RecordReader {
+
+        private final ByteBuffer buf;
+
+        RecordReader(int offset) {
+            buf = data.duplicate();
+            buf.position(recordsOffset + offset);
+            final int length = buf.getInt();
+            buf.limit(buf.position() + length);
+        }
+
+        int nextInt() {
+            return buf.getInt();
+        }
+
+        boolean nextBoolean() {
+            return buf.get() != 0;
+        }
+
+        byte nextByte() {
+            return buf.get();
+        }
+
+        String nextStr() {
+            return string(buf.getInt());
+        }
+
+        Map<String, String> nextStrMap() {
+            final int size = buf.getInt();
+            if(size == 0) {
+                return Collections.emptyMap();
+            }
+            if(size == 1) {
+                return Collections.singletonMap(nextStr(), nextStr());
+            }
+            final Map<String, String> map = new HashMap<>(size);
+            for(int i = 0; i < size; ++i) {
+                map.put(nextStr(), nextStr());
+            }
+            return map;
+        }
+
+        <T extends PackageDepsSpecBuilder<T>> void nextPackageDeps(T builder) {
+            int size = buf.getInt();
+            for(int i = 0; i < size; ++i) {
+                builder.addPackageDep(nextStr(), nextBoolean());
+            }
+            int sources = buf.getInt();
+            while(sources-- > 0) {
+                final String fpDep = nextStr();
+                size = buf.getInt();
+                for(int i = 0; i < size; ++i) {
+                    builder.addPackageDep(fpDep, nextStr(), nextBoolean());
+                }
+            }
+        }
+    }
+
+    private final Path fpDir;
+    private final ByteBuffer data;
+    private final int[] stringOffsets;
+    private final String[] strings;
+    private final Map<String, int[]> featureSpecs;
+    private final Map<String, int[]> packages;
+    private final int recordsOffset;
+
+    private FeaturePackMetadataIndex(Path fpDir, ByteBuffer data) {
+        this.fpDir = fpDir;
+        this.data = data;
+        stringOffsets = new int[data.getInt()];
+        strings = new String[stringOffsets.length];
+        for(int i = 0; i < stringOffsets.length; ++i) {
+            stringOffsets[i] = data.position();
+            data.position(data.position() + 4 + data.getInt());
+        }
+        featureSpecs = readDirectory(data);
+        packages = readDirectory(data);
+        data.getInt();
+        recordsOffset = data.position();
+    }
+
+    private Map<String, int[]> readDirectory(ByteBuffer data) {
+        final int size = data.getInt();
+        if(size == 0) {
+            return Collections.emptyMap();
+        }
+        final Map<String, int[]> dir = new HashMap<>(size);
+        for(int i = 0; i < size; ++i) {
+            dir.put(string(data.getInt()), new int[] {data.getInt(), data.getInt(), data.getInt()});
+        }
+        return dir;
+    }
+
+    private static boolean isUpToDate(Path xml, int[] entry) throws ProvisioningDescriptionException {
+        try {
+            return Files.exists(xml) && Files.size(xml) == entry[XML_SIZE] && crc(Files.readAllBytes(xml)) == entry[XML_CRC];
+        } catch (IOException e) {
+            throw new ProvisioningDescriptionException(Errors.readFile(xml), e);
+        }
+    }
+
+    private String string(int i) {
+        if(i == NULL) {
+            return null;
+        }
+        String str = strings[i];
+        if(str == null) {
+            final ByteBuffer buf = data.duplicate();
+            buf.position(stringOffsets[i]);
+            final byte[] bytes = new byte[buf.getInt()];
+            buf.get(bytes);
+            str = new String(bytes, StandardCharsets.UTF_8);
+            strings[i] = str;
+        }
+        return str;
+    }
+
+    public boolean hasFeatureSpec(String name) {
+        return featureSpecs.containsKey(name);
+    }
+
+    public boolean hasPackage(String name) {
+        return packages.containsKey(name);
+    }
+
+    /**
+     * Decodes the feature spec.
+     *
+     * @param name  the name of the feature spec directory
+     * @return  the spec or null, if the spec is not indexed or its XML has changed since it was indexed
+     */
+    public FeatureSpec getFeatureSpec(String name) throws ProvisioningDescriptionException {
+        final int[] entry = featureSpecs.get(name);
+        if(entry == null || !isUpToDate(fpDir.resolve(Constants.FEATURES).resolve(name).resolve(Constants.SPEC_XML), entry)) {
+            return null;
+        }
+        final RecordReader reader = new RecordReader(entry[OFFSET]);
+        final FeatureSpec.Builder builder = FeatureSpec.builder(reader.nextStr());
+        reader.nextPackageDeps(builder);
+
+        int size = reader.nextInt();
+        for(int i = 0; i < size; ++i) {
+            final FeatureAnnotation annotation = new FeatureAnnotation(reader.nextStr());
+            for(Map.Entry<String, String> attr : reader.nextStrMap().entrySet()) {
+                annotation.setAttr(attr.getKey(), attr.getValue());
+            }
+            builder.addAnnotation(annotation);
+        }
+
+        size = reader.nextInt();
+        for(int i = 0; i < size; ++i) {
+            final FeatureId id = new FeatureId(reader.nextStr(), reader.nextStrMap());
+            builder.addFeatureDep(FeatureDependencySpec.create(id, reader.nextStr(), reader.nextBoolean()));
+        }
+
+        size = reader.nextInt();
+        for(int i = 0; i < size; ++i) {
+            final FeatureReferenceSpec.Builder refBuilder = FeatureReferenceSpec.builder(reader.nextStr())
+                    .setName(reader.nextStr())
+                    .setFpDep(reader.nextStr())
+                    .setNillable(reader.nextBoolean())
+                    .setInclude(reader.nextBoolean());
+            for(Map.Entry<String, String> mapping : reader.nextStrMap().entrySet()) {
+                refBuilder.mapParam(mapping.getKey(), mapping.getValue());
+            }
+            builder.addFeatureRef(refBuilder.build());
+        }
+
+        size = reader.nextInt();
+        for(int i = 0; i < size; ++i) {
+            final String paramName = reader.nextStr();
+            final byte flags = reader.nextByte();
+            builder.addParam(FeatureParameterSpec.create(paramName, (flags & PARAM_ID) != 0, (flags & PARAM_NILLABLE) != 0,
+                    (flags & PARAM_DEFAULT) == 0 ? null : reader.nextStr()));
+        }
+
+        size = reader.nextInt();
+        for(int i = 0; i < size; ++i) {
+            builder.providesCapability(reader.nextStr(), reader.nextBoolean());
+        }
+        size = reader.nextInt();
+        for(int i = 0; i < size; ++i) {
+            builder.requiresCapability(reader.nextStr(), reader.nextBoolean());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Decodes the package spec.
+     *
+     * @param name  the name of the package directory
+     * @return  the spec or null, if the package is not indexed or its XML has changed since it was indexed
+     */
+    public PackageSpec getPackageSpec(String name) throws ProvisioningDescriptionException {
+        final int[] entry = packages.get(name);
+        if(entry == null || !isUpToDate(fpDir.resolve(Constants.PACKAGES).resolve(name).resolve(Constants.PACKAGE_XML), entry)) {
+            return null;
+        }
+        final RecordReader reader = new RecordReader(entry[OFFSET]);
+        final PackageSpec.Builder builder = PackageSpec.builder(reader.nextStr());
+        reader.nextPackageDeps(builder);
+        return builder.build();
+    }
+}
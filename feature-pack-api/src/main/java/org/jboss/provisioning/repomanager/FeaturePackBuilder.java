@@ -36,6 +36,7 @@ import org.jboss.provisioning.ArtifactRepositoryManager;
 import org.jboss.provisioning.ProvisioningDescriptionException;
 import org.jboss.provisioning.Constants;
 import org.jboss.provisioning.config.FeaturePackConfig;
+import org.jboss.provisioning.layout.FeaturePackMetadataIndex;
 import org.jboss.provisioning.plugin.ProvisioningPlugin;
 import org.jboss.provisioning.repomanager.fs.FsTaskContext;
 import org.jboss.provisioning.repomanager.fs.FsTaskList;
@@ -286,6 +287,7 @@ public class FeaturePackBuilder {
             fpSpec = fpBuilder.build();
             final FeaturePackXmlWriter writer = FeaturePackXmlWriter.getInstance();
             writer.write(fpSpec, fpWorkDir.resolve(Constants.FEATURE_PACK_XML));
+            FeaturePackMetadataIndex.write(fpWorkDir);
 
             if(tasks != null && !tasks.isEmpty()) {
                 tasks.execute(FsTaskContext.builder().setTargetRoot(fpWorkDir.resolve(Constants.RESOURCES)).build());
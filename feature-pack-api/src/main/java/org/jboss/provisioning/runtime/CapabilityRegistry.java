@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.provisioning.runtime;
+
+/**
+ * Capability providers of a config registered in a trie keyed by
+ * the dot-separated segments of the capability names.
+ * The parameter values are matched segment by segment in place, so resolving
+ * a capability requirement doesn't involve building and hashing the capability name.
+ *
+ * @author Alexey Loubyansky
+ */
+class CapabilityRegistry {
+
+    private static class Node {
+        CapabilityProviders providers;
+
+        // open addressing table of the child nodes
+        private String[] keys;
+        private int[] hashes;
+        private Node[] children;
+        private int size;
+
+        Node child(String str, int start, int end, boolean add) {
+            int hash = 0;
+            for(int i = start; i < end; ++i) {
+                hash = 31 * hash + str.charAt(i);
+            }
+            if(keys != null) {
+                final int length = end - start;
+                final int mask = keys.length - 1;
+                int i = spread(hash) & mask;
+                while(keys[i] != null) {
+                    if(hashes[i] == hash && keys[i].length() == length && keys[i].regionMatches(0, str, start, length)) {
+                        return children[i];
+                    }
+                    i = (i + 1) & mask;
+                }
+            }
+            if(!add) {
+                return null;
+            }
+            final Node child = new Node();
+            if(keys == null) {
+                keys = new String[2];
+                hashes = new int[2];
+                children = new Node[2];
+            } else if((size + 1) * 4 > keys.length * 3) {
+                rehash();
+            }
+            put(start == 0 && end == str.length() ? str : str.substring(start, end), hash, child);
+            ++size;
+            return child;
+        }
+
+        private void put(String key, int hash, Node child) {
+            final int mask = keys.length - 1;
+            int i = spread(hash) & mask;
+            while(keys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            hashes[i] = hash;
+            children[i] = child;
+        }
+
+        private void rehash() {
+            final String[] oldKeys = keys;
+            final int[] oldHashes = hashes;
+            final Node[] oldChildren = children;
+            keys = new String[oldKeys.length << 1];
+            hashes = new int[keys.length];
+            children = new Node[keys.length];
+            for(int i = 0; i < oldKeys.length; ++i) {
+                if(oldKeys[i] != null) {
+                    put(oldKeys[i], oldHashes[i], oldChildren[i]);
+                }
+            }
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    private final Node root = new Node();
+
+    /**
+     * Returns the providers of the capability resolved with the values.
+     *
+     * @param cap  capability
+     * @param values  the values of the parameter parts of the capability
+     * @param add  whether the providers should be created if they haven't been registered yet
+     * @return  the providers or null if the providers were not found and add is false
+     */
+    CapabilityProviders get(CompiledCapability cap, String[] values, boolean add) {
+        Node node = root;
+        for(int i = 0; i < cap.segments.length; ++i) {
+            final String[] segments = cap.segments[i];
+            if(segments == null) {
+                final String value = values[i];
+                int start = 0;
+                int dot = value.indexOf('.');
+                while(dot >= 0) {
+                    node = node.child(value, start, dot, add);
+                    if(node == null) {
+                        return null;
+                    }
+                    start = dot + 1;
+                    dot = value.indexOf('.', start);
+                }
+                node = node.child(value, start, value.length(), add);
+                if(node == null) {
+                    return null;
+                }
+            } else {
+                for(String segment : segments) {
+                    node = node.child(segment, 0, segment.length(), add);
+                    if(node == null) {
+                        return null;
+                    }
+                }
+            }
+        }
+        if(node.providers == null && add) {
+            node.providers = new CapabilityProviders();
+        }
+        return node.providers;
+    }
+}
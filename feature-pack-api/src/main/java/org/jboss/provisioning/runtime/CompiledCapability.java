@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.provisioning.runtime;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.jboss.provisioning.Errors;
+import org.jboss.provisioning.ProvisioningException;
+import org.jboss.provisioning.spec.CapabilitySpec;
+
+/**
+ * Capability spec prepared for resolving the capabilities of the features
+ * against the {@link CapabilityRegistry}. The static parts are split into
+ * dot-separated segments upfront and the parameter parts are resolved
+ * into values, the complete capability names are never built
+ * (except for the error messages).
+ *
+ * @author Alexey Loubyansky
+ */
+class CompiledCapability {
+
+    private static final String[] NO_VALUES = new String[0];
+
+    static CompiledCapability[] compile(Collection<CapabilitySpec> specs) {
+        final CompiledCapability[] compiled = new CompiledCapability[specs.size()];
+        int i = 0;
+        for(CapabilitySpec spec : specs) {
+            compiled[i++] = new CompiledCapability(spec);
+        }
+        return compiled;
+    }
+
+    final CapabilitySpec spec;
+    // the segments of the static parts, null for the parameter parts
+    final String[][] segments;
+
+    private CompiledCapability(CapabilitySpec spec) {
+        this.spec = spec;
+        segments = new String[spec.getPartsTotal()][];
+        for(int i = 0; i < segments.length; ++i) {
+            if(spec.isStaticPart(i)) {
+                segments[i] = split(spec.getPart(i));
+            }
+        }
+    }
+
+    boolean isStatic() {
+        return spec.isStatic();
+    }
+
+    /**
+     * Resolves the values of the parameter parts of the capability.
+     * The values are indexed by the parts they resolve, the static parts have null values.
+     *
+     * @param feature  the feature providing or requiring the capability
+     * @return  the values or null, if the capability is optional and a parameter is not set
+     * @throws ProvisioningException  in case a parameter is not set for a non-optional capability
+     */
+    String[] resolveValues(ResolvedFeature feature) throws ProvisioningException {
+        if(spec.isStatic()) {
+            return NO_VALUES;
+        }
+        final String[] values = new String[segments.length];
+        for(int i = 0; i < segments.length; ++i) {
+            if(segments[i] != null) {
+                continue;
+            }
+            final String param = spec.getPart(i);
+            final String value = feature.getParamOrDefaultAsString(param);
+            if (value == null) {
+                if (spec.isOptional()) {
+                    return null;
+                }
+                throw new ProvisioningException(Errors.capabilityMissingParameter(spec, param));
+            }
+            if (value.trim().isEmpty()) {
+                throw new ProvisioningException(Errors.capabilityMissingParameter(spec, param));
+            }
+            values[i] = value;
+        }
+        return values;
+    }
+
+    /**
+     * Builds the name of the capability resolved with the values.
+     */
+    String toString(String[] values) {
+        final StringBuilder buf = new StringBuilder();
+        for(int i = 0; i < segments.length; ++i) {
+            if(i > 0) {
+                buf.append('.');
+            }
+            buf.append(segments[i] == null ? values[i] : spec.getPart(i));
+        }
+        return buf.toString();
+    }
+
+    private static String[] split(String str) {
+        int dot = str.indexOf('.');
+        if(dot < 0) {
+            return new String[] {str};
+        }
+        final List<String> segments = new ArrayList<>();
+        int start = 0;
+        while(dot >= 0) {
+            segments.add(str.substring(start, dot));
+            start = dot + 1;
+            dot = str.indexOf('.', start);
+        }
+        segments.add(str.substring(start));
+        return segments.toArray(new String[segments.size()]);
+    }
+}
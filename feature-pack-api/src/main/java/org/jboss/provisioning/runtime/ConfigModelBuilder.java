@@ -19,7 +19,7 @@ package org.jboss.provisioning.runtime;
 
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -31,7 +31,6 @@ import org.jboss.provisioning.Errors;
 import org.jboss.provisioning.ProvisioningDescriptionException;
 import org.jboss.provisioning.ProvisioningException;
 import org.jboss.provisioning.plugin.ProvisionedConfigHandler;
-import org.jboss.provisioning.spec.CapabilitySpec;
 import org.jboss.provisioning.spec.FeatureDependencySpec;
 import org.jboss.provisioning.state.ProvisionedConfig;
 import org.jboss.provisioning.util.PmCollections;
@@ -158,7 +157,7 @@ public class ConfigModelBuilder implements ProvisionedConfig {
     private FeatureGroupScopeStack featureGroupStack = new FeatureGroupScopeStack();
     private Map<ResolvedFeatureId, ResolvedFeature> featuresById = featureGroupStack.peek();
     private Map<ResolvedSpecId, SpecFeatures> featuresBySpec = new LinkedHashMap<>();
-    private Map<String, CapabilityProviders> capProviders = Collections.emptyMap();
+    private final CapabilityRegistry capProviders = new CapabilityRegistry();
 
     // features in the order they should be processed by the provisioning handlers
     private List<ResolvedFeature> orderedFeatures;
@@ -166,7 +165,7 @@ public class ConfigModelBuilder implements ProvisionedConfig {
     private int featureIncludeCount = 0;
     private boolean inBatch;
 
-    private Map<ArtifactCoords.Gav, List<ResolvedFeatureGroupConfig>> fgConfigStacks = new HashMap<>();
+    private Map<ArtifactCoords.Gav, FeatureGroupConfigStack> fgConfigStacks = new HashMap<>();
 
     private ConfigModelBuilder(String model, String name) {
         this.model = model;
@@ -192,16 +191,16 @@ public class ConfigModelBuilder implements ProvisionedConfig {
     }
 
     boolean pushConfig(ArtifactCoords.Gav gav, ResolvedFeatureGroupConfig fgConfig) {
-        List<ResolvedFeatureGroupConfig> fgConfigStack = fgConfigStacks.get(gav);
+        FeatureGroupConfigStack fgConfigStack = fgConfigStacks.get(gav);
         if(fgConfigStack == null) {
-            fgConfigStack = new ArrayList<>();
+            fgConfigStack = new FeatureGroupConfigStack();
             fgConfigStacks.put(gav, fgConfigStack);
-            fgConfigStack.add(fgConfig);
+            fgConfigStack.push(fgConfig);
             return true;
         }
-        int i = fgConfigStack.size() - 1;
+        int i = fgConfigStack.configs.size() - 1;
         while(i >= 0) {
-            final ResolvedFeatureGroupConfig pushedFgConfig = fgConfigStack.get(i--);
+            final ResolvedFeatureGroupConfig pushedFgConfig = fgConfigStack.configs.get(i--);
             if(pushedFgConfig.name == null) {
                 if(fgConfig.name == null) {
                     if(fgConfig.isSubsetOf(pushedFgConfig)) {
@@ -218,19 +217,19 @@ public class ConfigModelBuilder implements ProvisionedConfig {
                 }
             }
         }
-        fgConfigStack.add(fgConfig);
+        fgConfigStack.push(fgConfig);
         return true;
     }
 
     ResolvedFeatureGroupConfig popConfig(ArtifactCoords.Gav gav) {
-        final List<ResolvedFeatureGroupConfig> stack = fgConfigStacks.get(gav);
+        final FeatureGroupConfigStack stack = fgConfigStacks.get(gav);
         if(stack == null) {
             throw new IllegalStateException("Feature group stack is null for " + gav);
         }
         if(stack.isEmpty()) {
             throw new IllegalStateException("Feature group stack is empty for " + gav);
         }
-        return stack.remove(stack.size() - 1);
+        return stack.pop();
     }
 
     ResolvedFeature includeFeature(ResolvedFeatureId id, ResolvedFeatureSpec spec, Map<String, Object> resolvedParams, Map<ResolvedFeatureId, FeatureDependencySpec> resolvedDeps) throws ProvisioningException {
@@ -288,35 +287,8 @@ public class ConfigModelBuilder implements ProvisionedConfig {
     }
 
     boolean isFilteredOut(ResolvedSpecId specId, final ResolvedFeatureId id) {
-        final List<ResolvedFeatureGroupConfig> fgConfigStack = fgConfigStacks.get(specId.gav);
-        if (fgConfigStack == null) {
-            return false;
-        }
-        int i = fgConfigStack.size() - 1;
-        while (i >= 0) {
-            final ResolvedFeatureGroupConfig fgConfig = fgConfigStack.get(i--);
-            if (fgConfig.inheritFeatures) {
-                if (id != null && fgConfig.excludedFeatures.contains(id)) {
-                    return true;
-                }
-                if (fgConfig.excludedSpecs.contains(specId)) {
-                    if (id != null && fgConfig.includedFeatures.containsKey(id)) {
-                        continue;
-                    }
-                    return true;
-                }
-            } else {
-                if (id != null && fgConfig.includedFeatures.containsKey(id)) {
-                    continue;
-                }
-                if (!fgConfig.includedSpecs.contains(specId)) {
-                    return true;
-                } else if (id != null && fgConfig.excludedFeatures.contains(id)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        final FeatureGroupConfigStack fgConfigStack = fgConfigStacks.get(specId.gav);
+        return fgConfigStack != null && fgConfigStack.isFilteredOut(specId, id);
     }
 
     @Override
@@ -382,20 +354,34 @@ public class ConfigModelBuilder implements ProvisionedConfig {
         }
     }
 
-    private ProvisionedConfig doBuild(ProvisioningRuntimeBuilder rt) throws ProvisioningException {
+    /**
+     * Resolves the feature reference mappings of the specs of the features in this config.
+     * The mappings are resolved once per spec and shared by the configs, so when
+     * the configs are built concurrently this should be called for each of them
+     * before the build.
+     *
+     * @param rt  the runtime builder
+     * @throws ProvisioningException  in case of a failure
+     */
+    void resolveRefMappings(ProvisioningRuntimeBuilder rt) throws ProvisioningException {
         for (SpecFeatures features : featuresBySpec.values()) {
-            // resolve references
             features.spec.resolveRefMappings(rt);
+        }
+    }
+
+    private ProvisionedConfig doBuild(ProvisioningRuntimeBuilder rt) throws ProvisioningException {
+        resolveRefMappings(rt);
+        for (SpecFeatures features : featuresBySpec.values()) {
             // resolve and register capability providers
             if(features.spec.xmlSpec.providesCapabilities()) {
-                for(CapabilitySpec cap : features.spec.xmlSpec.getProvidedCapabilities()) {
+                for(CompiledCapability cap : features.spec.providedCaps) {
                     if(cap.isStatic()) {
-                        getProviders(cap.toString(), true).add(features);
+                        capProviders.get(cap, null, true).add(features);
                     } else {
                         for(ResolvedFeature feature : features.list) {
-                            final String resolvedCap = feature.resolveCapability(cap);
-                            if(resolvedCap != null) {
-                                getProviders(resolvedCap, true).add(feature);
+                            final String[] values = feature.resolveCapability(cap);
+                            if(values != null) {
+                                capProviders.get(cap, values, true).add(feature);
                             }
                         }
                     }
@@ -404,7 +390,7 @@ public class ConfigModelBuilder implements ProvisionedConfig {
         }
         orderedFeatures = new ArrayList<>(featuresById.size());
         for(SpecFeatures features : featuresBySpec.values()) {
-            orderFeaturesInSpec(features, false);
+            order(new OrderSpecFeatures(features, false));
         }
 
         featuresById = Collections.emptyMap();
@@ -413,304 +399,423 @@ public class ConfigModelBuilder implements ProvisionedConfig {
         return this;
     }
 
-    private CapabilityProviders getProviders(String cap, boolean add) throws ProvisioningException {
-        CapabilityProviders providers = capProviders.get(cap);
-        if(providers != null) {
-            return providers;
+    /**
+     * Runs the ordering frames using an explicit stack instead of the call stack,
+     * so that the depth of the feature reference chains is not limited by the thread stack size.
+     *
+     * @param root  the frame to start with
+     * @return  the result of the root frame
+     * @throws ProvisioningException  in case of a failure
+     */
+    private List<CircularRefInfo> order(OrderingFrame root) throws ProvisioningException {
+        OrderingFrame[] stack = new OrderingFrame[16];
+        int top = 0;
+        stack[0] = root;
+        List<CircularRefInfo> result = null;
+        while(top >= 0) {
+            final OrderingFrame frame = stack[top];
+            final OrderingFrame next = frame.resume(result);
+            if(next == null) {
+                result = frame.result;
+                stack[top--] = null;
+            } else {
+                result = null;
+                if(++top == stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length << 1);
+                }
+                stack[top] = next;
+            }
         }
-        if(!add) {
-            throw new ProvisioningException(Errors.noCapabilityProvider(cap));
+        return result;
+    }
+
+    private void ordered(ResolvedFeature feature) throws ProvisioningDescriptionException {
+        feature.ordered();
+        orderedFeatures.add(feature);
+        // the capabilities provided by the spec are provided once any of its features has been ordered
+        featuresBySpec.get(feature.spec.id).provided();
+    }
+
+    private static List<CircularRefInfo> addCircularRefs(List<CircularRefInfo> circularRefs, List<CircularRefInfo> added) {
+        if(added == null) {
+            return circularRefs;
         }
-        providers = new CapabilityProviders();
-        if(capProviders.isEmpty()) {
-            capProviders = Collections.singletonMap(cap, providers);
-            return providers;
+        if(circularRefs == null) {
+            return added;
         }
-        if(capProviders.size() == 1) {
-            final Map.Entry<String, CapabilityProviders> first = capProviders.entrySet().iterator().next();
-            capProviders = new HashMap<>(2);
-            capProviders.put(first.getKey(), first.getValue());
+        if(circularRefs.size() == 1) {
+            final CircularRefInfo first = circularRefs.get(0);
+            circularRefs = new ArrayList<>(1 + added.size());
+            circularRefs.add(first);
         }
-        capProviders.put(cap, providers);
-        return providers;
+        circularRefs.addAll(added);
+        return circularRefs;
     }
 
     /**
-     * Attempts to order the features of the spec.
-     * Terminates immediately when a feature reference loop is detected.
-     *
-     * @param features  spec features
-     * @return  returns the feature id on which the feature reference loop was detected,
-     *   returns null if no loop was detected (despite whether any feature was processed or not)
-     * @throws ProvisioningException
+     * A step of the feature ordering, which may have to wait for the result of other steps.
+     * Each of the steps used to be a (recursive) method call.
      */
-    private List<CircularRefInfo> orderFeaturesInSpec(SpecFeatures features, boolean force) throws ProvisioningException {
-        if(!force) {
-            if (!features.isFree()) {
-                return null;
-            }
-            features.schedule();
+    private abstract class OrderingFrame {
+        int pc;
+        List<CircularRefInfo> result;
+
+        /**
+         * Continues the step.
+         *
+         * @param childResult  the result of the last frame returned by this method or null
+         * @return  the frame that has to be completed before this one can continue or null
+         * if this frame completed, in which case its result is in the result field
+         * @throws ProvisioningException  in case of a failure
+         */
+        abstract OrderingFrame resume(List<CircularRefInfo> childResult) throws ProvisioningException;
+
+        OrderingFrame done(List<CircularRefInfo> result) {
+            this.result = result;
+            return null;
         }
+    }
 
-        List<CircularRefInfo> allCircularRefs = null;
-        int i = 0;
-        while(i < features.list.size() && allCircularRefs == null) {
-            allCircularRefs = orderFeature(features.list.get(i++));
-/*            if(circularRefs != null) {
-                if(allCircularRefs == null) {
-                    allCircularRefs = circularRefs;
-                } else {
-                    if(allCircularRefs.size() == 1) {
-                        final CircularRefInfo first = allCircularRefs.get(0);
-                        allCircularRefs = new ArrayList<>(1 + circularRefs.size());
-                        allCircularRefs.add(first);
+    /**
+     * Attempts to order the features of the spec.
+     * Terminates immediately when a feature reference loop is detected.
+     * The result is the loops the features are involved in or null.
+     */
+    private class OrderSpecFeatures extends OrderingFrame {
+        final SpecFeatures features;
+        final boolean force;
+        int i;
+        List<CircularRefInfo> allCircularRefs;
+
+        OrderSpecFeatures(SpecFeatures features, boolean force) {
+            this.features = features;
+            this.force = force;
+        }
+
+        @Override
+        OrderingFrame resume(List<CircularRefInfo> childResult) throws ProvisioningException {
+            if(pc == 0) {
+                if(!force) {
+                    if (!features.isFree()) {
+                        return done(null);
                     }
-                    allCircularRefs.addAll(circularRefs);
+                    features.schedule();
                 }
+                // the features that have already been ordered don't have to be looked at again
+                i = features.firstNotOrdered();
+                pc = 1;
+            } else {
+                allCircularRefs = childResult;
             }
-*/        }
-        if(!force) {
-            features.free();
+            while(i < features.list.size() && allCircularRefs == null) {
+                final ResolvedFeature feature = features.list.get(i++);
+                if(!feature.isOrdered()) {
+                    return new OrderFeature(feature);
+                }
+            }
+            if(!force) {
+                features.free();
+            }
+            return done(allCircularRefs);
         }
-        return allCircularRefs;
     }
 
     /**
      * Attempts to order the feature. If the feature has already been scheduled
      * for ordering but haven't been ordered yet, it means there is a circular feature
-     * reference loop, in which case the feature is not ordered and false is returned.
-     *
-     * @param feature  the feature to put in the ordered list
-     * @return  whether the feature was added to the ordered list or not
-     * @throws ProvisioningException
+     * reference loop, in which case the feature is not ordered and the loop is the result.
      */
-    private List<CircularRefInfo> orderFeature(ResolvedFeature feature) throws ProvisioningException {
-        if(feature.isOrdered()) {
-            return null;
-        }
-        if(!feature.isFree()) {
-            return Collections.singletonList(new CircularRefInfo(feature));
-        }
-        feature.schedule();
-
-        List<CircularRefInfo> circularRefs = null;
-        if(feature.spec.xmlSpec.requiresCapabilities()) {
-            circularRefs = orderCapabilityProviders(feature, circularRefs);
-        }
-        if(!feature.deps.isEmpty()) {
-            circularRefs = orderReferencedFeatures(feature, feature.deps.keySet(), false, circularRefs);
-        }
-        List<ResolvedFeatureId> refIds = feature.resolveRefs();
-        if(!refIds.isEmpty()) {
-            circularRefs = orderReferencedFeatures(feature, refIds, true, circularRefs);
+    private class OrderFeature extends OrderingFrame {
+        private static final int CAPS = 1;
+        private static final int CAP_PROVIDERS = 2;
+        private static final int DEPS = 3;
+        private static final int DEP = 4;
+        private static final int REFS = 5;
+        private static final int REF = 6;
+        private static final int LOOPS = 7;
+        private static final int FIRST_IN_CONFIG = 8;
+        private static final int NEXT_ON_PATH = 9;
+
+        final ResolvedFeature feature;
+        List<CircularRefInfo> circularRefs;
+        int cap;
+        Iterator<ResolvedFeatureId> refs;
+        List<CircularRefInfo> initiatedCircularRefs;
+        int loop;
+        boolean prevOrderRefSpec;
+        boolean endBatch;
+
+        OrderFeature(ResolvedFeature feature) {
+            this.feature = feature;
+        }
+
+        @Override
+        OrderingFrame resume(List<CircularRefInfo> childResult) throws ProvisioningException {
+            while(true) {
+                switch(pc) {
+                    case 0: {
+                        if(feature.isOrdered()) {
+                            return done(null);
+                        }
+                        if(!feature.isFree()) {
+                            return done(Collections.singletonList(new CircularRefInfo(feature)));
+                        }
+                        feature.schedule();
+                        if(feature.spec.requiredCaps.length > 0) {
+                            pc = CAPS;
+                        } else {
+                            pc = DEPS;
+                        }
+                        break;
+                    }
+                    case CAP_PROVIDERS:
+                        circularRefs = addCircularRefs(circularRefs, childResult);
+                    case CAPS: {
+                        while(cap < feature.spec.requiredCaps.length) {
+                            final CompiledCapability capSpec = feature.spec.requiredCaps[cap++];
+                            final String[] values = feature.resolveCapability(capSpec);
+                            if(values == null) {
+                                continue;
+                            }
+                            final CapabilityProviders providers = capProviders.get(capSpec, values, false);
+                            if(providers == null) {
+                                throw new ProvisioningException(Errors.noCapabilityProvider(feature, capSpec.spec, capSpec.toString(values)));
+                            }
+                            pc = CAP_PROVIDERS;
+                            return new OrderProviders(providers);
+                        }
+                        pc = DEPS;
+                        break;
+                    }
+                    case DEPS: {
+                        if(!feature.deps.isEmpty()) {
+                            refs = feature.deps.keySet().iterator();
+                        } else {
+                            refs = Collections.emptyIterator();
+                        }
+                        pc = DEP;
+                        childResult = null;
+                    }
+                    case DEP: {
+                        circularRefs = addCircularRefs(circularRefs, childResult);
+                        if(refs.hasNext()) {
+                            return new OrderReferencedFeature(feature, refs.next(), false);
+                        }
+                        pc = REFS;
+                        break;
+                    }
+                    case REFS: {
+                        refs = feature.resolveRefs().iterator();
+                        pc = REF;
+                        childResult = null;
+                    }
+                    case REF: {
+                        circularRefs = addCircularRefs(circularRefs, childResult);
+                        if(refs.hasNext()) {
+                            return new OrderReferencedFeature(feature, refs.next(), true);
+                        }
+                        pc = LOOPS;
+                        break;
+                    }
+                    case LOOPS: {
+                        return orderLoops();
+                    }
+                    case FIRST_IN_CONFIG: {
+                        if(childResult != null) {
+                            throw new IllegalStateException();
+                        }
+                        if(loop < initiatedCircularRefs.size()) {
+                            return new OrderFeature(initiatedCircularRefs.get(loop++).firstInConfig);
+                        }
+                        orderReferencedSpec = prevOrderRefSpec;
+                        return done(null);
+                    }
+                    case NEXT_ON_PATH: {
+                        if(childResult != null) {
+                            throw new IllegalStateException();
+                        }
+                        if(loop < initiatedCircularRefs.size()) {
+                            return new OrderFeature(initiatedCircularRefs.get(loop++).nextOnPath);
+                        }
+                        if(endBatch) {
+                            inBatch = false;
+                            orderedFeatures.get(orderedFeatures.size() - 1).endBatch();
+                        }
+                        orderReferencedSpec = prevOrderRefSpec;
+                        return done(null);
+                    }
+                    default:
+                        throw new IllegalStateException("Unexpected state " + pc);
+                }
+            }
         }
 
-        List<CircularRefInfo> initiatedCircularRefs = Collections.emptyList();
-        if(circularRefs != null) {
-            // there is a one or more circular feature reference loop(s)
+        private OrderingFrame orderLoops() throws ProvisioningException {
+            initiatedCircularRefs = Collections.emptyList();
+            if(circularRefs != null) {
+                // there is a one or more circular feature reference loop(s)
 
-            // check whether there is a loop that this feature didn't initiate
-            // if there is such a loop then propagate the loops this feature didn't start to their origins
-            if(circularRefs.size() == 1) {
-                final CircularRefInfo next = circularRefs.get(0);
-                if (next.loopedOn.id.equals(feature.id)) { // this feature initiated the loop
-                    circularRefs = Collections.emptyList();
-                    initiatedCircularRefs = Collections.singletonList(next);
-                } else {
-                    next.setNext(feature);
-                    feature.free();
-                }
-            } else {
-                final Iterator<CircularRefInfo> i = circularRefs.iterator();
-                while (i.hasNext()) {
-                    final CircularRefInfo next = i.next();
-                    if (next.loopedOn.id.equals(feature.id)) {
-                        // this feature initiated the loop
-                        i.remove();
-                        initiatedCircularRefs = PmCollections.add(initiatedCircularRefs, next);
+                // check whether there is a loop that this feature didn't initiate
+                // if there is such a loop then propagate the loops this feature didn't start to their origins
+                if(circularRefs.size() == 1) {
+                    final CircularRefInfo next = circularRefs.get(0);
+                    if (next.loopedOn.id.equals(feature.id)) { // this feature initiated the loop
+                        circularRefs = Collections.emptyList();
+                        initiatedCircularRefs = Collections.singletonList(next);
                     } else {
-                        // the feature is in the middle of the loop
                         next.setNext(feature);
                         feature.free();
                     }
+                } else {
+                    final Iterator<CircularRefInfo> i = circularRefs.iterator();
+                    while (i.hasNext()) {
+                        final CircularRefInfo next = i.next();
+                        if (next.loopedOn.id.equals(feature.id)) {
+                            // this feature initiated the loop
+                            i.remove();
+                            initiatedCircularRefs = PmCollections.add(initiatedCircularRefs, next);
+                        } else {
+                            // the feature is in the middle of the loop
+                            next.setNext(feature);
+                            feature.free();
+                        }
+                    }
+                }
+                if(!circularRefs.isEmpty()) {
+                    return done(circularRefs);
                 }
+                // all the loops were initiated by this feature
             }
-            if(!circularRefs.isEmpty()) {
-                return circularRefs;
+
+            if (initiatedCircularRefs.isEmpty()) {
+                ordered(feature);
+                return done(null);
             }
-            // all the loops were initiated by this feature
-        }
 
-        if (!initiatedCircularRefs.isEmpty()) {
-            final boolean prevOrderRefSpec = orderReferencedSpec;
+            prevOrderRefSpec = orderReferencedSpec;
             orderReferencedSpec = false;
             // sort according to the appearance in the config
             initiatedCircularRefs.sort((o1, o2) -> o1.firstInConfig.includeNo - o2.firstInConfig.includeNo);
+            loop = 0;
             if(initiatedCircularRefs.get(0).firstInConfig.includeNo < feature.includeNo) {
                 feature.free();
-                for(CircularRefInfo ref : initiatedCircularRefs) {
-                    if(orderFeature(ref.firstInConfig) != null) {
-                        throw new IllegalStateException();
-                    }
-                }
+                pc = FIRST_IN_CONFIG;
+                return new OrderFeature(initiatedCircularRefs.get(loop++).firstInConfig);
+            }
+            if(inBatch) {
+                endBatch = false;
             } else {
-                final boolean endBatch;
-                if(inBatch) {
-                    endBatch = false;
-                } else {
-                    inBatch = true;
-                    feature.startBatch();
-                    endBatch = true;
-                }
-                feature.ordered();
-                orderedFeatures.add(feature);
-                initiatedCircularRefs.sort((o1, o2) -> o1.nextOnPath.includeNo - o2.nextOnPath.includeNo);
-                for(CircularRefInfo ref : initiatedCircularRefs) {
-                    if(orderFeature(ref.nextOnPath) != null) {
-                        throw new IllegalStateException();
-                    }
-                }
-                if(endBatch) {
-                    inBatch = false;
-                    this.orderedFeatures.get(orderedFeatures.size() - 1).endBatch();
-                }
+                inBatch = true;
+                feature.startBatch();
+                endBatch = true;
             }
-            orderReferencedSpec = prevOrderRefSpec;
-        } else {
-            feature.ordered();
-            orderedFeatures.add(feature);
+            ordered(feature);
+            initiatedCircularRefs.sort((o1, o2) -> o1.nextOnPath.includeNo - o2.nextOnPath.includeNo);
+            pc = NEXT_ON_PATH;
+            return new OrderFeature(initiatedCircularRefs.get(loop++).nextOnPath);
         }
-        return null;
     }
 
-    private List<CircularRefInfo> orderCapabilityProviders(ResolvedFeature feature, List<CircularRefInfo> circularRefs)
-            throws ProvisioningException {
-        for(CapabilitySpec capSpec : feature.spec.xmlSpec.getRequiredCapabilities()) {
-            final String resolvedCap = feature.resolveCapability(capSpec);
-            if(resolvedCap == null) {
-                continue;
-            }
-            final CapabilityProviders providers;
-            try {
-                providers = getProviders(resolvedCap, false);
-            } catch(ProvisioningException e) {
-                throw new ProvisioningException(Errors.noCapabilityProvider(feature, capSpec, resolvedCap));
-            }
-            final List<CircularRefInfo> circles = orderProviders(providers);
-            if(circularRefs == null) {
-                circularRefs = circles;
-            } else {
-                if(circularRefs.size() == 1) {
-                    final CircularRefInfo first = circularRefs.get(0);
-                    circularRefs = new ArrayList<>(1 + circles.size());
-                    circularRefs.add(first);
-                }
-                circularRefs.addAll(circles);
-            }
+    /**
+     * Attempts to order the providers of a capability until the capability is provided.
+     * The result is the first loop encountered if the capability could not be provided.
+     */
+    private class OrderProviders extends OrderingFrame {
+        final CapabilityProviders providers;
+        List<CircularRefInfo> firstLoop;
+        int i;
+
+        OrderProviders(CapabilityProviders providers) {
+            this.providers = providers;
         }
-        return circularRefs;
-    }
 
-    private List<CircularRefInfo> orderProviders(CapabilityProviders providers) throws ProvisioningException {
-        if(!providers.isProvided()) {
-            List<CircularRefInfo> firstLoop = null;
-            if(!providers.specs.isEmpty()) {
-                for(SpecFeatures specFeatures : providers.specs) {
-                    final List<CircularRefInfo> loop = orderFeaturesInSpec(specFeatures, !specFeatures.isFree());
-                    if(providers.isProvided()) {
-                        return null;
-                    }
-                    if(firstLoop == null) {
-                        firstLoop = loop;
-                    }
+        @Override
+        OrderingFrame resume(List<CircularRefInfo> childResult) throws ProvisioningException {
+            if(pc == 0) {
+                if(providers.isProvided()) {
+                    return done(null);
                 }
-            }
-            if (!providers.features.isEmpty()) {
-                for (ResolvedFeature provider : providers.features) {
-                    final List<CircularRefInfo> loop = orderFeature(provider);
-                    if(providers.isProvided()) {
-                        return null;
-                    }
-                    if(firstLoop == null) {
-                        firstLoop = loop;
-                    }
+                pc = 1;
+            } else {
+                if(providers.isProvided()) {
+                    return done(null);
+                }
+                if(firstLoop == null) {
+                    firstLoop = childResult;
                 }
             }
-            return firstLoop;
-        }
-        return null;
-    }
-
-    /**
-     * Attempts to order the referenced features.
-     *
-     * @param feature  parent feature
-     * @param refIds  referenced features ids
-     * @param specRefs  whether these referenced features represent actual spec references or feature dependencies
-     * @return  feature ids that form circular dependency loops
-     * @throws ProvisioningException
-     */
-    private List<CircularRefInfo> orderReferencedFeatures(ResolvedFeature feature, Collection<ResolvedFeatureId> refIds, boolean specRefs, List<CircularRefInfo> circularRefs) throws ProvisioningException {
-        for(ResolvedFeatureId refId : refIds) {
-            final List<CircularRefInfo> loopedOnFeature = orderReferencedFeature(feature, refId, specRefs);
-            if(loopedOnFeature != null) {
-                if(circularRefs == null) {
-                    circularRefs = loopedOnFeature;
-                } else {
-                    if(circularRefs.size() == 1) {
-                        final CircularRefInfo first = circularRefs.get(0);
-                        circularRefs = new ArrayList<>(1 + loopedOnFeature.size());
-                        circularRefs.add(first);
-                    }
-                    circularRefs.addAll(loopedOnFeature);
+            if(pc == 1) {
+                if(i < providers.specs.size()) {
+                    final SpecFeatures specFeatures = providers.specs.get(i++);
+                    return new OrderSpecFeatures(specFeatures, !specFeatures.isFree());
                 }
+                pc = 2;
+                i = 0;
             }
+            if(i < providers.features.size()) {
+                return new OrderFeature(providers.features.get(i++));
+            }
+            return done(firstLoop);
         }
-        return circularRefs;
     }
 
     /**
      * Attempts to order a feature reference.
-     *
-     * @param feature  parent feature
-     * @param refId  referenced feature id
-     * @param specRef  whether the referenced feature represents a spec reference or a feature dependency
-     * @return  true if the referenced feature was ordered, false if the feature was not ordered because of the circular reference loop
-     * @throws ProvisioningException
+     * The result is the loops the referenced feature is involved in or null.
      */
-    private List<CircularRefInfo> orderReferencedFeature(ResolvedFeature feature, ResolvedFeatureId refId, boolean specRef) throws ProvisioningException {
-        if(orderReferencedSpec && specRef && !feature.spec.id.equals(refId.specId)) {
-            final SpecFeatures targetSpecFeatures = featuresBySpec.get(refId.specId);
-            if (targetSpecFeatures == null) {
-                throw new ProvisioningDescriptionException(Errors.unresolvedFeatureDep(feature, refId));
-            }
-            final List<CircularRefInfo> specLoops = orderFeaturesInSpec(targetSpecFeatures, false);
-            if (specLoops != null) {
-                List<CircularRefInfo> featureLoops = null;
-                for (int i = 0; i < specLoops.size(); ++i) {
-                    final CircularRefInfo specLoop = specLoops.get(i);
-                    if (specLoop.nextOnPath.id.equals(refId)) {
-                        if (featureLoops == null) {
-                            featureLoops = Collections.singletonList(specLoop);
-                        } else {
-                            if (featureLoops.size() == 1) {
-                                final CircularRefInfo first = featureLoops.get(0);
-                                featureLoops = new ArrayList<>(2);
-                                featureLoops.add(first);
-                            }
-                            featureLoops.add(specLoop);
+    private class OrderReferencedFeature extends OrderingFrame {
+        final ResolvedFeature feature;
+        final ResolvedFeatureId refId;
+        // whether the referenced feature represents a spec reference or a feature dependency
+        final boolean specRef;
+
+        OrderReferencedFeature(ResolvedFeature feature, ResolvedFeatureId refId, boolean specRef) {
+            this.feature = feature;
+            this.refId = refId;
+            this.specRef = specRef;
+        }
+
+        @Override
+        OrderingFrame resume(List<CircularRefInfo> childResult) throws ProvisioningException {
+            switch(pc) {
+                case 0: {
+                    if(orderReferencedSpec && specRef && !feature.spec.id.equals(refId.specId)) {
+                        final SpecFeatures targetSpecFeatures = featuresBySpec.get(refId.specId);
+                        if (targetSpecFeatures == null) {
+                            throw new ProvisioningDescriptionException(Errors.unresolvedFeatureDep(feature, refId));
                         }
+                        pc = 1;
+                        return new OrderSpecFeatures(targetSpecFeatures, false);
                     }
+                    return orderDep();
                 }
-                if (featureLoops != null) {
-                    return featureLoops;
+                case 1: {
+                    if (childResult != null) {
+                        List<CircularRefInfo> featureLoops = null;
+                        for (int i = 0; i < childResult.size(); ++i) {
+                            final CircularRefInfo specLoop = childResult.get(i);
+                            if (specLoop.nextOnPath.id.equals(refId)) {
+                                featureLoops = addCircularRefs(featureLoops, Collections.singletonList(specLoop));
+                            }
+                        }
+                        if (featureLoops != null) {
+                            return done(featureLoops);
+                        }
+                    }
+                    return orderDep();
                 }
+                default:
+                    return done(childResult);
             }
         }
-        final ResolvedFeature dep = featuresById.get(refId);
-        if (dep == null) {
-            throw new ProvisioningDescriptionException(Errors.unresolvedFeatureDep(feature, refId));
+
+        private OrderingFrame orderDep() throws ProvisioningException {
+            final ResolvedFeature dep = featuresById.get(refId);
+            if (dep == null) {
+                throw new ProvisioningDescriptionException(Errors.unresolvedFeatureDep(feature, refId));
+            }
+            pc = 2;
+            return new OrderFeature(dep);
         }
-        return orderFeature(dep);
     }
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.provisioning.runtime;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The stack of the feature group configs pushed for a feature-pack
+ * together with an index of their includes and excludes.
+ *
+ * A feature is filtered out if any of the configs on the stack filters it out,
+ * so instead of evaluating each config on the stack, the index counts the configs
+ * that exclude or include a spec or a feature. The counts are updated when
+ * a config is pushed or popped, which makes the filtering check independent
+ * of the depth of the stack.
+ *
+ * @author Alexey Loubyansky
+ */
+class FeatureGroupConfigStack {
+
+    private static <K> void add(Map<K, Integer> counts, K key, int delta) {
+        final Integer count = counts.get(key);
+        if(count == null) {
+            counts.put(key, delta);
+        } else if(count + delta == 0) {
+            counts.remove(key);
+        } else {
+            counts.put(key, count + delta);
+        }
+    }
+
+    private static <K> int count(Map<K, Integer> counts, K key) {
+        final Integer count = counts.get(key);
+        return count == null ? 0 : count;
+    }
+
+    final List<ResolvedFeatureGroupConfig> configs = new ArrayList<>();
+
+    // configs inheriting features
+    private final Map<ResolvedFeatureId, Integer> excludedFeatures = new HashMap<>();
+    private final Map<ResolvedSpecId, Integer> excludedSpecs = new HashMap<>();
+    // features included by the configs that exclude their specs
+    private final Map<ResolvedFeatureId, Integer> includedFromExcludedSpecs = new HashMap<>();
+
+    // configs not inheriting features
+    private int notInheriting;
+    private final Map<ResolvedSpecId, Integer> includedSpecs = new HashMap<>();
+    private final Map<ResolvedFeatureId, Integer> includedFeatures = new HashMap<>();
+    // features excluded by the configs that include their specs
+    private final Map<ResolvedFeatureId, Integer> excludedFromIncludedSpecs = new HashMap<>();
+    // features included by the configs that include their specs and don't exclude the features
+    private final Map<ResolvedFeatureId, Integer> includedFromIncludedSpecs = new HashMap<>();
+
+    void push(ResolvedFeatureGroupConfig fgConfig) {
+        configs.add(fgConfig);
+        index(fgConfig, 1);
+    }
+
+    ResolvedFeatureGroupConfig pop() {
+        final ResolvedFeatureGroupConfig fgConfig = configs.remove(configs.size() - 1);
+        index(fgConfig, -1);
+        return fgConfig;
+    }
+
+    boolean isEmpty() {
+        return configs.isEmpty();
+    }
+
+    private void index(ResolvedFeatureGroupConfig fgConfig, int delta) {
+        if(fgConfig.inheritFeatures) {
+            for(ResolvedFeatureId id : fgConfig.excludedFeatures) {
+                add(excludedFeatures, id, delta);
+            }
+            if(!fgConfig.excludedSpecs.isEmpty()) {
+                for(ResolvedSpecId specId : fgConfig.excludedSpecs) {
+                    add(excludedSpecs, specId, delta);
+                }
+                for(ResolvedFeatureId id : fgConfig.includedFeatures.keySet()) {
+                    if(fgConfig.excludedSpecs.contains(id.specId)) {
+                        add(includedFromExcludedSpecs, id, delta);
+                    }
+                }
+            }
+            return;
+        }
+        notInheriting += delta;
+        for(ResolvedSpecId specId : fgConfig.includedSpecs) {
+            add(includedSpecs, specId, delta);
+        }
+        for(ResolvedFeatureId id : fgConfig.includedFeatures.keySet()) {
+            add(includedFeatures, id, delta);
+            if(fgConfig.includedSpecs.contains(id.specId) && !fgConfig.excludedFeatures.contains(id)) {
+                add(includedFromIncludedSpecs, id, delta);
+            }
+        }
+        for(ResolvedFeatureId id : fgConfig.excludedFeatures) {
+            if(fgConfig.includedSpecs.contains(id.specId)) {
+                add(excludedFromIncludedSpecs, id, delta);
+            }
+        }
+    }
+
+    boolean isFilteredOut(ResolvedSpecId specId, ResolvedFeatureId id) {
+        if(id != null && excludedFeatures.containsKey(id)) {
+            return true;
+        }
+        // each config excluding the spec has to explicitly include the feature
+        final int specExclusions = count(excludedSpecs, specId);
+        if(specExclusions > 0 && (id == null || count(includedFromExcludedSpecs, id) < specExclusions)) {
+            return true;
+        }
+        if(notInheriting == 0) {
+            return false;
+        }
+        // each config not inheriting features has to either include the feature
+        // or include its spec without excluding the feature
+        int including = count(includedSpecs, specId);
+        if(id != null) {
+            including += count(includedFeatures, id) - count(excludedFromIncludedSpecs, id) - count(includedFromIncludedSpecs, id);
+        }
+        return including < notInheriting;
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.provisioning.runtime;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.jboss.provisioning.ArtifactCoords;
+import org.jboss.provisioning.Errors;
+import org.jboss.provisioning.ProvisioningException;
+import org.jboss.provisioning.util.HashUtils;
+import org.jboss.provisioning.util.IoUtils;
+import org.jboss.provisioning.util.ZipUtils;
+
+/**
+ * Persistent cache of the extracted feature-pack layouts which can be shared
+ * by provisioning runs in the same and in different JVMs.
+ *
+ * Each feature-pack is extracted once into groupId/artifactId/version/checksum
+ * directory, where checksum is the SHA-1 of the feature-pack artifact.
+ * An entry is complete when its checksum.entry marker file exists, the marker
+ * contains the size of the entry in bytes and its last modified time is the time
+ * the entry was last used. The entries in use are protected with shared locks on the
+ * checksum.lock files. When the total size of the cache exceeds the configured maximum,
+ * the least recently used entries that are not in use are removed.
+ *
+ * @author Alexey Loubyansky
+ */
+public class FeaturePackLayoutCache {
+
+    private static final String ENTRY = ".entry";
+    private static final String LOCK = ".lock";
+    private static final String EVICTION_LOCK = "eviction.lock";
+
+    /**
+     * The entries used in this JVM. File locks are held on behalf of the whole JVM,
+     * so they are shared by all the cache instances.
+     */
+    private static final Map<Path, Entry> ENTRIES = new HashMap<>();
+
+    private static class Entry {
+        final Path dir;
+        int refs;
+        FileChannel channel;
+        FileLock lock;
+
+        Entry(Path dir) {
+            this.dir = dir;
+        }
+    }
+
+    public static FeaturePackLayoutCache newInstance(Path dir, long maxSize) {
+        return new FeaturePackLayoutCache(dir.toAbsolutePath().normalize(), maxSize);
+    }
+
+    private final Path dir;
+    private final long maxSize;
+
+    private FeaturePackLayoutCache(Path dir, long maxSize) {
+        this.dir = dir;
+        this.maxSize = maxSize;
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the directory the feature-pack artifact is extracted into, extracting it first
+     * if it is not in the cache yet. The entry is protected from the eviction until it is
+     * released with {@link #release(Path)}.
+     *
+     * @param gav  feature-pack GAV
+     * @param artifact  feature-pack artifact
+     * @return  the layout directory of the feature-pack
+     * @throws ProvisioningException  in case of a failure
+     */
+    public Path acquire(ArtifactCoords.Gav gav, Path artifact) throws ProvisioningException {
+        final String checksum;
+        try {
+            checksum = HashUtils.hashFile(artifact);
+        } catch (IOException e) {
+            throw new ProvisioningException(Errors.hashCalculation(artifact), e);
+        }
+        final Path entryDir = dir.resolve(gav.getGroupId()).resolve(gav.getArtifactId()).resolve(gav.getVersion()).resolve(checksum);
+
+        final Entry entry;
+        synchronized (ENTRIES) {
+            entry = ENTRIES.computeIfAbsent(entryDir, Entry::new);
+            ++entry.refs;
+        }
+        boolean extracted = false;
+        try {
+            synchronized (entry) {
+                if (entry.lock == null) {
+                    extracted = lockEntry(entry, artifact);
+                }
+            }
+            Files.setLastModifiedTime(getMarker(entryDir), FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException | RuntimeException e) {
+            release(entryDir);
+            throw new ProvisioningException("Failed to cache the layout of " + gav + " in " + entryDir, e);
+        }
+        if (extracted) {
+            evict();
+        }
+        return entryDir;
+    }
+
+    /**
+     * Releases the entry acquired with {@link #acquire(ArtifactCoords.Gav, Path)}.
+     *
+     * @param entryDir  the layout directory of the feature-pack
+     */
+    public void release(Path entryDir) {
+        synchronized (ENTRIES) {
+            final Entry entry = ENTRIES.get(entryDir);
+            if (entry == null || --entry.refs > 0) {
+                return;
+            }
+            ENTRIES.remove(entryDir);
+            if (entry.channel != null) {
+                try {
+                    entry.channel.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes the shared lock on the entry extracting the artifact first
+     * under the exclusive lock if the entry is not complete.
+     *
+     * @return  true if the artifact had to be extracted
+     */
+    private boolean lockEntry(Entry entry, Path artifact) throws IOException {
+        Files.createDirectories(entry.dir.getParent());
+        final FileChannel channel = FileChannel.open(getLockFile(entry.dir), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean extracted = false;
+        try {
+            while (true) {
+                final FileLock shared = channel.lock(0L, Long.MAX_VALUE, true);
+                if (Files.exists(getMarker(entry.dir))) {
+                    entry.channel = channel;
+                    entry.lock = shared;
+                    return extracted;
+                }
+                shared.release();
+                // the marker may be gone again after the exclusive lock is released
+                // if the entry was evicted by another process, in which case it is extracted again
+                try (FileLock exclusive = channel.lock()) {
+                    if (!Files.exists(getMarker(entry.dir))) {
+                        IoUtils.recursiveDelete(entry.dir);
+                        ZipUtils.unzip(artifact, entry.dir);
+                        IoUtils.writeFile(getMarker(entry.dir), String.valueOf(sizeOf(entry.dir)));
+                        extracted = true;
+                    }
+                }
+            }
+        } finally {
+            if (entry.channel == null) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Removes the least recently used entries that are not in use until the total size
+     * of the cache is within the limit. If another process is already evicting the entries
+     * the method returns immediately.
+     */
+    private void evict() {
+        synchronized (ENTRIES) {
+            try (FileChannel channel = FileChannel.open(dir.resolve(EVICTION_LOCK), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                    FileLock lock = channel.tryLock()) {
+                if (lock == null) {
+                    return;
+                }
+                final List<Path> markers = listMarkers();
+                final Map<Path, Long> sizes = new HashMap<>(markers.size());
+                final Map<Path, FileTime> times = new HashMap<>(markers.size());
+                long total = 0;
+                for (Path marker : markers) {
+                    long size;
+                    try {
+                        size = Long.parseLong(IoUtils.readFile(marker).trim());
+                        times.put(marker, Files.getLastModifiedTime(marker));
+                    } catch (IOException | NumberFormatException e) {
+                        continue;
+                    }
+                    sizes.put(marker, size);
+                    total += size;
+                }
+                if (total <= maxSize) {
+                    return;
+                }
+                final List<Path> lru = new ArrayList<>(sizes.keySet());
+                Collections.sort(lru, Comparator.comparing(times::get));
+                for (Path marker : lru) {
+                    if (total <= maxSize) {
+                        break;
+                    }
+                    final String markerName = marker.getFileName().toString();
+                    final Path entryDir = marker.resolveSibling(markerName.substring(0, markerName.length() - ENTRY.length()));
+                    if (ENTRIES.containsKey(entryDir) || !tryDelete(entryDir)) {
+                        continue;
+                    }
+                    total -= sizes.get(marker);
+                }
+            } catch (IOException | OverlappingFileLockException e) {
+                // the eviction will be attempted next time
+            }
+        }
+    }
+
+    private boolean tryDelete(Path entryDir) throws IOException {
+        try (FileChannel channel = FileChannel.open(getLockFile(entryDir), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                FileLock lock = channel.tryLock()) {
+            if (lock == null) {
+                return false;
+            }
+            Files.deleteIfExists(getMarker(entryDir));
+            IoUtils.recursiveDelete(entryDir);
+            return true;
+        }
+    }
+
+    private List<Path> listMarkers() throws IOException {
+        if (!Files.exists(dir)) {
+            return Collections.emptyList();
+        }
+        try (Stream<Path> stream = Files.find(dir, 4, (p, attrs) -> attrs.isRegularFile() && p.getFileName().toString().endsWith(ENTRY))) {
+            final List<Path> markers = new ArrayList<>();
+            stream.forEach(markers::add);
+            return markers;
+        }
+    }
+
+    private static long sizeOf(Path dir) throws IOException {
+        try (Stream<Path> stream = Files.walk(dir)) {
+            return stream.filter(Files::isRegularFile).mapToLong(p -> p.toFile().length()).sum();
+        }
+    }
+
+    private static Path getMarker(Path entryDir) {
+        return entryDir.resolveSibling(entryDir.getFileName() + ENTRY);
+    }
+
+    private static Path getLockFile(Path entryDir) {
+        return entryDir.resolveSibling(entryDir.getFileName() + LOCK);
+    }
+}
@@ -17,7 +17,8 @@
 
 package org.jboss.provisioning.runtime;
 
-import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -28,6 +29,8 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.jboss.provisioning.ArtifactCoords;
 import org.jboss.provisioning.ArtifactCoords.Gav;
@@ -36,6 +39,7 @@ import org.jboss.provisioning.Errors;
 import org.jboss.provisioning.ProvisioningDescriptionException;
 import org.jboss.provisioning.ProvisioningException;
 import org.jboss.provisioning.config.FeaturePackConfig;
+import org.jboss.provisioning.layout.FeaturePackMetadataIndex;
 import org.jboss.provisioning.spec.ConfigId;
 import org.jboss.provisioning.spec.FeatureGroupSpec;
 import org.jboss.provisioning.spec.FeaturePackSpec;
@@ -44,6 +48,7 @@ import org.jboss.provisioning.state.FeaturePack;
 import org.jboss.provisioning.type.ParameterTypeProvider;
 import org.jboss.provisioning.type.builtin.BuiltInParameterTypeProvider;
 import org.jboss.provisioning.util.PmCollections;
+import org.jboss.provisioning.util.ZipUtils;
 import org.jboss.provisioning.xml.FeatureGroupXmlParser;
 import org.jboss.provisioning.xml.FeatureSpecXmlParser;
 
@@ -55,11 +60,17 @@ public class FeaturePackRuntime implements FeaturePack<PackageRuntime> {
 
     static class Builder {
         final ArtifactCoords.Gav gav;
+        // the layout directory on the file system into which the content of the feature-pack is extracted
         final Path dir;
+        // the root of the feature-pack zip the metadata is read from
+        final Path zipRoot;
+        private final FileSystem zipfs;
         final FeaturePackSpec spec;
         boolean ordered;
         private Map<String, ResolvedFeatureSpec> featureSpecs = null;
         private Map<String, FeatureGroupSpec> fgSpecs = null;
+        private FeaturePackMetadataIndex metadataIndex;
+        private boolean metadataIndexRead;
 
         Map<String, PackageRuntime.Builder> pkgBuilders = Collections.emptyMap();
         private List<String> pkgOrder = new ArrayList<>();
@@ -70,10 +81,15 @@ public class FeaturePackRuntime implements FeaturePack<PackageRuntime> {
         private FeaturePackConfig blockedConfigInheritance;
 
         ParameterTypeProvider featureParamTypeProvider = BuiltInParameterTypeProvider.getInstance();
+        final ResolvedIds ids;
 
-        private Builder(ArtifactCoords.Gav gav, FeaturePackSpec spec, Path dir) {
-            this.gav = gav;
+        private Builder(ArtifactCoords.Gav gav, FeaturePackSpec spec, Path dir, FileSystem zipfs, ResolvedIds ids) {
+            this.ids = ids;
+            this.gav = ids.intern(gav);
             this.dir = dir;
+            this.zipfs = zipfs;
+            // without the zip the feature-pack has already been extracted into the layout directory (e.g. by the layout cache)
+            this.zipRoot = zipfs == null ? dir : zipfs.getRootDirectories().iterator().next();
             this.spec = spec;
         }
 
@@ -95,12 +111,12 @@ public class FeaturePackRuntime implements FeaturePack<PackageRuntime> {
                 fgSpec = fgSpecs.get(name);
             }
             if(fgSpec == null) {
-                final Path specXml = dir.resolve(Constants.FEATURE_GROUPS).resolve(name + ".xml");
+                final Path specXml = zipRoot.resolve(Constants.FEATURE_GROUPS).resolve(name + ".xml");
                 if(!Files.exists(specXml)) {
                     throw new ProvisioningDescriptionException(Errors.pathDoesNotExist(specXml));
                 }
-                try(BufferedReader reader = Files.newBufferedReader(specXml)) {
-                    fgSpec = FeatureGroupXmlParser.getInstance().parse(reader);
+                try {
+                    fgSpec = ParsedSpecCache.parse(FeatureGroupSpec.class, specXml, FeatureGroupXmlParser.getInstance()::parse);
                 } catch (Exception e) {
                     throw new ProvisioningException(Errors.parseXml(specXml), e);
                 }
@@ -117,23 +133,38 @@ public class FeaturePackRuntime implements FeaturePack<PackageRuntime> {
                 resolvedSpec = featureSpecs.get(name);
             }
             if(resolvedSpec == null) {
-                final Path specXml = dir.resolve(Constants.FEATURES).resolve(name).resolve(Constants.SPEC_XML);
-                if(!Files.exists(specXml)) {
-                    throw new ProvisioningDescriptionException("Failed to locate feature spec '" + name + "' in " + gav);
-                }
-                final FeatureSpec xmlSpec;
-                try(BufferedReader reader = Files.newBufferedReader(specXml)) {
-                    xmlSpec = FeatureSpecXmlParser.getInstance().parse(reader);
-                } catch (Exception e) {
-                    throw new ProvisioningDescriptionException(Errors.parseXml(specXml), e);
+                final FeaturePackMetadataIndex index = getMetadataIndex();
+                FeatureSpec xmlSpec = index == null ? null : index.getFeatureSpec(name);
+                if(xmlSpec == null) {
+                    final Path specXml = zipRoot.resolve(Constants.FEATURES).resolve(name).resolve(Constants.SPEC_XML);
+                    if(!Files.exists(specXml)) {
+                        throw new ProvisioningDescriptionException("Failed to locate feature spec '" + name + "' in " + gav);
+                    }
+                    try {
+                        xmlSpec = ParsedSpecCache.parse(FeatureSpec.class, specXml, FeatureSpecXmlParser.getInstance()::parse);
+                    } catch (Exception e) {
+                        throw new ProvisioningDescriptionException(Errors.parseXml(specXml), e);
+                    }
                 }
 
-                resolvedSpec = new ResolvedFeatureSpec(new ResolvedSpecId(gav, xmlSpec.getName()), featureParamTypeProvider, xmlSpec);
+                resolvedSpec = new ResolvedFeatureSpec(ids.specId(gav, xmlSpec.getName()), featureParamTypeProvider, xmlSpec, ids);
                 featureSpecs.put(name, resolvedSpec);
             }
             return resolvedSpec;
         }
 
+        /**
+         * The precompiled metadata of the feature-pack or null, if the feature-pack
+         * does not include it, in which case the specs are parsed from XML.
+         */
+        FeaturePackMetadataIndex getMetadataIndex() throws ProvisioningDescriptionException {
+            if(!metadataIndexRead) {
+                metadataIndex = FeaturePackMetadataIndex.read(zipRoot);
+                metadataIndexRead = true;
+            }
+            return metadataIndex;
+        }
+
         boolean isInheritPackages() {
             return blockedPackageInheritance == null;
         }
@@ -286,13 +317,75 @@ public class FeaturePackRuntime implements FeaturePack<PackageRuntime> {
             return false;
         }
 
+        /**
+         * Extracts the resources, the plugins and the content of the resolved packages
+         * of the feature-pack into the layout directory.
+         */
+        void extractLayout() throws ProvisioningException {
+            extract(Constants.RESOURCES);
+            extract(Constants.PLUGINS);
+            for(String pkgName : pkgOrder) {
+                extract(Constants.PACKAGES, pkgName);
+            }
+        }
+
+        /**
+         * Submits the extraction of the resources, the plugins and the content of the
+         * resolved packages of the feature-pack to the executor, one task per package.
+         */
+        void extractLayout(ExecutorService executor, List<Future<Void>> tasks) {
+            tasks.add(executor.submit(() -> {
+                extract(Constants.RESOURCES);
+                extract(Constants.PLUGINS);
+                return null;
+            }));
+            for(String pkgName : pkgOrder) {
+                tasks.add(executor.submit(() -> {
+                    extract(Constants.PACKAGES, pkgName);
+                    return null;
+                }));
+            }
+        }
+
+        private void extract(String... path) throws ProvisioningException {
+            if(zipfs == null) {
+                return;
+            }
+            Path src = zipRoot;
+            Path target = dir;
+            for(String name : path) {
+                src = src.resolve(name);
+                target = target.resolve(name);
+            }
+            if(!Files.exists(src)) {
+                return;
+            }
+            try {
+                Files.createDirectories(target);
+                ZipUtils.copyFromZip(src, target);
+            } catch (IOException e) {
+                throw new ProvisioningException(Errors.copyFile(src, target), e);
+            }
+        }
+
+        void closeLayout() throws ProvisioningException {
+            if(zipfs == null) {
+                return;
+            }
+            try {
+                zipfs.close();
+            } catch (IOException e) {
+                throw new ProvisioningException("Failed to close feature-pack " + gav, e);
+            }
+        }
+
         FeaturePackRuntime build() throws ProvisioningException {
             return new FeaturePackRuntime(this);
         }
     }
 
-    static Builder builder(ArtifactCoords.Gav gav, FeaturePackSpec spec, Path dir) {
-        return new Builder(gav, spec, dir);
+    static Builder builder(ArtifactCoords.Gav gav, FeaturePackSpec spec, Path dir, FileSystem zipfs, ResolvedIds ids) {
+        return new Builder(gav, spec, dir, zipfs, ids);
     }
 
     private final FeaturePackSpec spec;
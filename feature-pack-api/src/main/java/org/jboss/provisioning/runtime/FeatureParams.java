@@ -0,0 +1,188 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.provisioning.runtime;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.jboss.provisioning.spec.FeatureParameterSpec;
+
+/**
+ * Parameters of a resolved feature stored as a row in the parameter columns of its spec.
+ *
+ * The row is sparse, it contains only the positions of the parameters that have been set
+ * and their values, ordered by position. The positions of the columns follow the iteration
+ * order of {@link org.jboss.provisioning.spec.FeatureSpec#getParams()}, which is not
+ * necessarily the order in which the parameters were declared.
+ * The copies of the feature (e.g. when a model-only config is merged into named configs)
+ * share the row until one of them is modified.
+ *
+ * @author Alexey Loubyansky
+ */
+class FeatureParams extends AbstractMap<String, Object> {
+
+    /**
+     * Parameter columns of a feature spec.
+     */
+    static class Columns {
+
+        final String[] names;
+        private final Map<String, Integer> positions;
+
+        Columns(Collection<FeatureParameterSpec> params) {
+            names = new String[params.size()];
+            positions = new HashMap<>(params.size());
+            int i = 0;
+            for(FeatureParameterSpec param : params) {
+                names[i] = param.getName();
+                positions.put(param.getName(), i++);
+            }
+        }
+
+        int position(Object name) {
+            final Integer i = positions.get(name);
+            return i == null ? -1 : i;
+        }
+    }
+
+    private static final int[] NO_POSITIONS = new int[0];
+    private static final Object[] NO_VALUES = new Object[0];
+
+    private final Columns columns;
+    private int[] positions = NO_POSITIONS;
+    private Object[] values = NO_VALUES;
+    private int size;
+    // whether the row is shared with a copy
+    private boolean shared;
+
+    FeatureParams(Columns columns) {
+        this.columns = columns;
+    }
+
+    /**
+     * Creates a copy of the parameters which shares the row with this instance until either of them is modified.
+     */
+    FeatureParams share() {
+        final FeatureParams copy = new FeatureParams(columns);
+        if(size > 0) {
+            copy.positions = positions;
+            copy.values = values;
+            copy.size = size;
+            copy.shared = true;
+            shared = true;
+        }
+        return copy;
+    }
+
+    private int indexOf(Object name) {
+        final int position = columns.position(name);
+        return position < 0 ? -1 : Arrays.binarySearch(positions, 0, size, position);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object name) {
+        return indexOf(name) >= 0;
+    }
+
+    @Override
+    public Object get(Object name) {
+        final int i = indexOf(name);
+        return i < 0 ? null : values[i];
+    }
+
+    @Override
+    public Object put(String name, Object value) {
+        final int position = columns.position(name);
+        if(position < 0) {
+            throw new IllegalArgumentException("Unknown parameter " + name);
+        }
+        int i = Arrays.binarySearch(positions, 0, size, position);
+        if(i >= 0) {
+            final Object prev = values[i];
+            if(prev != value) {
+                copyOnWrite(size);
+                values[i] = value;
+            }
+            return prev;
+        }
+        i = -i - 1;
+        copyOnWrite(size + 1);
+        System.arraycopy(positions, i, positions, i + 1, size - i);
+        System.arraycopy(values, i, values, i + 1, size - i);
+        positions[i] = position;
+        values[i] = value;
+        ++size;
+        return null;
+    }
+
+    private void copyOnWrite(int capacity) {
+        if(!shared && capacity <= positions.length) {
+            return;
+        }
+        final int length = Math.max(capacity, positions.length);
+        positions = Arrays.copyOf(positions, length);
+        values = Arrays.copyOf(values, length);
+        shared = false;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                return new Iterator<Map.Entry<String, Object>>() {
+                    int i;
+                    @Override
+                    public boolean hasNext() {
+                        return i < size;
+                    }
+                    @Override
+                    public Map.Entry<String, Object> next() {
+                        if(i >= size) {
+                            throw new NoSuchElementException();
+                        }
+                        final Map.Entry<String, Object> entry = new SimpleImmutableEntry<>(columns.names[positions[i]], values[i]);
+                        ++i;
+                        return entry;
+                    }
+                };
+            }
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+}
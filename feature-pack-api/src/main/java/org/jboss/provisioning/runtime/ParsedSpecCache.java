@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.provisioning.runtime;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.jboss.provisioning.util.HashUtils;
+import org.jboss.provisioning.util.PropertyUtils;
+
+/**
+ * Process-wide cache of the specs parsed from the feature-pack XML files.
+ *
+ * The specs are keyed by their type and the SHA-1 of the XML content, so the same
+ * content is parsed once no matter how many times (or from which copies of a feature-pack)
+ * it is read. Changed content gets a new key, so it is always parsed again.
+ * The cached specs are shared by the provisioning runtimes and must not be modified.
+ *
+ * The maximum number of the cached specs is configured with the {@link #SIZE_PROPERTY}
+ * system property, 0 disables the cache. The least recently used specs are evicted first.
+ *
+ * The cache lives in memory only. The parsed form of the specs is not persisted by the cache,
+ * the specs reused across processes come from the {@link org.jboss.provisioning.layout.FeaturePackMetadataIndex}
+ * stored in the feature-pack instead.
+ *
+ * @author Alexey Loubyansky
+ */
+class ParsedSpecCache {
+
+    static final String SIZE_PROPERTY = "pm.spec-cache.size";
+
+    static final int DEFAULT_SIZE = 10000;
+
+    interface Parser<T> {
+        T parse(Reader reader) throws XMLStreamException;
+    }
+
+    private static class Key {
+        final Class<?> type;
+        final byte[] hash;
+
+        Key(Class<?> type, byte[] hash) {
+            this.type = type;
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + Arrays.hashCode(hash);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (obj == null || getClass() != obj.getClass())
+                return false;
+            final Key other = (Key) obj;
+            return type.equals(other.type) && Arrays.equals(hash, other.hash);
+        }
+    }
+
+    private static final ParsedSpecCache INSTANCE = new ParsedSpecCache(getConfiguredSize());
+
+    static int getConfiguredSize() {
+        final String size = PropertyUtils.getSystemProperty(SIZE_PROPERTY);
+        if(size == null) {
+            return DEFAULT_SIZE;
+        }
+        try {
+            return Integer.parseInt(size.trim());
+        } catch(NumberFormatException e) {
+            // the cache is an optimization, an invalid value must not break the provisioning
+            return DEFAULT_SIZE;
+        }
+    }
+
+    /**
+     * Returns the spec parsed from the XML file either from the process-wide cache
+     * or by parsing the file and caching the result.
+     *
+     * @param type  the type of the spec
+     * @param xml  the XML file
+     * @param parser  the parser for the spec
+     * @return  parsed spec
+     * @throws IOException  in case the file could not be read
+     * @throws XMLStreamException  in case the file could not be parsed
+     */
+    static <T> T parse(Class<T> type, Path xml, Parser<T> parser) throws IOException, XMLStreamException {
+        return INSTANCE.get(type, xml, parser);
+    }
+
+    private final int maxSize;
+    private final Map<Key, Object> specs;
+
+    ParsedSpecCache(int maxSize) {
+        this.maxSize = maxSize;
+        specs = new LinkedHashMap<Key, Object>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+                return size() > ParsedSpecCache.this.maxSize;
+            }
+        };
+    }
+
+    <T> T get(Class<T> type, Path xml, Parser<T> parser) throws IOException, XMLStreamException {
+        if(maxSize <= 0) {
+            try(Reader reader = Files.newBufferedReader(xml)) {
+                return parser.parse(reader);
+            }
+        }
+        final byte[] content = Files.readAllBytes(xml);
+        final Key key = new Key(type, HashUtils.hash(content));
+        synchronized(specs) {
+            final Object spec = specs.get(key);
+            if(spec != null) {
+                return type.cast(spec);
+            }
+        }
+        final T spec;
+        try(Reader reader = new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8)) {
+            spec = parser.parse(reader);
+        }
+        synchronized(specs) {
+            specs.put(key, spec);
+        }
+        return spec;
+    }
+
+    int size() {
+        synchronized(specs) {
+            return specs.size();
+        }
+    }
+}
@@ -21,14 +21,19 @@ import java.io.IOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
 
 import javax.xml.stream.XMLStreamException;
@@ -47,8 +52,10 @@ import org.jboss.provisioning.repomanager.FeaturePackBuilder;
 import org.jboss.provisioning.repomanager.FeaturePackRepositoryManager;
 import org.jboss.provisioning.state.FeaturePackSet;
 import org.jboss.provisioning.state.ProvisionedConfig;
+import org.jboss.provisioning.util.ContentHashIndex;
 import org.jboss.provisioning.util.FeaturePackInstallException;
 import org.jboss.provisioning.util.IoUtils;
+import org.jboss.provisioning.util.PathFilter;
 import org.jboss.provisioning.util.PathsUtils;
 import org.jboss.provisioning.util.PmCollections;
 import org.jboss.provisioning.xml.ProvisionedStateXmlWriter;
@@ -75,7 +82,13 @@ public class ProvisioningRuntime implements FeaturePackSet<FeaturePackRuntime>,
                 final Path pkgSrcDir = pkg.getContentDir();
                 if (Files.exists(pkgSrcDir)) {
                     try {
-                        IoUtils.copy(pkgSrcDir, runtime.stagedDir);
+                        if(runtime.isLayoutShared()) {
+                            // the content shared through the layout cache is not linked, otherwise changes
+                            // made to the installed files in place would modify the cache
+                            IoUtils.copy(pkgSrcDir, runtime.stagedDir);
+                        } else {
+                            IoUtils.linkOrCopy(pkgSrcDir, runtime.stagedDir);
+                        }
                     } catch (IOException e) {
                         throw new FeaturePackInstallException(Errors.packageContentCopyFailed(pkg.getName()), e);
                     }
@@ -100,14 +113,24 @@ public class ProvisioningRuntime implements FeaturePackSet<FeaturePackRuntime>,
             throw new FeaturePackInstallException(Errors.writeFile(PathsUtils.getProvisionedStateXml(runtime.stagedDir)), e);
         }
         runtime.messageWriter.verbose("Moving the provisioned installation from the staged directory to %s", runtime.installDir);
-        // copy from the staged to the target installation directory
-        if (Files.exists(runtime.installDir)) {
-            IoUtils.recursiveDelete(runtime.installDir);
+        final ContentHashIndex index = ContentHashIndex.load(PathsUtils.getContentHashes(runtime.installDir));
+        if(!runtime.moveStagedDir()) {
+            // copy from the staged to the target installation directory only what has changed
+            try {
+                IoUtils.mirror(runtime.stagedDir, runtime.installDir, ForkJoinPool.commonPool(), index);
+            } catch (IOException e) {
+                throw new ProvisioningException(Errors.copyFile(runtime.stagedDir, runtime.installDir), e);
+            }
         }
+
+        // record the content hashes of the installation, the following diffs will re-hash only the files that changed
+        final Path contentHashes = PathsUtils.getContentHashes(runtime.installDir);
         try {
-            IoUtils.copy(runtime.stagedDir, runtime.installDir);
+            final Map<Path, String> contents = IoUtils.listContents(runtime.installDir, PathFilter.DEFAULT, ForkJoinPool.commonPool(), index);
+            index.retain(contents.keySet());
+            index.store(contentHashes);
         } catch (IOException e) {
-            throw new ProvisioningException(Errors.copyFile(runtime.stagedDir, runtime.installDir));
+            throw new FeaturePackInstallException(Errors.writeFile(contentHashes), e);
         }
     }
 
@@ -153,12 +176,15 @@ public class ProvisioningRuntime implements FeaturePackSet<FeaturePackRuntime>,
 
     private final long startTime;
     private final ArtifactRepositoryManager artifactResolver;
+    private final Map<ArtifactCoords, Path> resolvedArtifacts = new ConcurrentHashMap<>();
     private ProvisioningConfig config;
     private Path installDir;
     private final Path stagedDir;
     private final Path workDir;
     private final Path tmpDir;
     private final Path pluginsDir;
+    private final FeaturePackLayoutCache layoutCache;
+    private final List<Path> cachedLayouts;
     private final Map<ArtifactCoords.Gav, FeaturePackRuntime> fpRuntimes;
     private final Map<String, String> parameters;
     private final MessageWriter messageWriter;
@@ -172,6 +198,8 @@ public class ProvisioningRuntime implements FeaturePackSet<FeaturePackRuntime>,
         this.artifactResolver = builder.artifactResolver;
         this.config = builder.config;
         this.pluginsDir = builder.pluginsDir;
+        this.layoutCache = builder.layoutCache;
+        this.cachedLayouts = builder.cachedLayouts;
         this.fpRuntimes = builder.fpRuntimes;
         this.operation = builder.operation;
 
@@ -216,6 +244,53 @@ public class ProvisioningRuntime implements FeaturePackSet<FeaturePackRuntime>,
         this.messageWriter = messageWriter;
     }
 
+    /**
+     * Replaces the installation directory with the staged one by renaming the directories,
+     * which is possible only if both are located on the same file store.
+     *
+     * @return  true if the staged directory was moved, false if it has to be copied instead
+     */
+    private boolean moveStagedDir() throws ProvisioningException {
+        final Path installParent = installDir.toAbsolutePath().getParent();
+        if(installParent == null) {
+            return false;
+        }
+        try {
+            Files.createDirectories(installParent);
+            if(!Files.getFileStore(stagedDir).equals(Files.getFileStore(installParent))) {
+                return false;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+
+        Path replaced = null;
+        if(Files.exists(installDir)) {
+            replaced = installParent.resolve('.' + installDir.getFileName().toString() + '-' + UUID.randomUUID());
+            try {
+                Files.move(installDir, replaced, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                return false;
+            }
+        }
+        try {
+            Files.move(stagedDir, installDir, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            if(replaced != null) {
+                try {
+                    Files.move(replaced, installDir, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e1) {
+                    throw new ProvisioningException(Errors.moveFile(replaced, installDir), e1);
+                }
+            }
+            return false;
+        }
+        if(replaced != null) {
+            IoUtils.recursiveDelete(replaced);
+        }
+        return true;
+    }
+
     private ClassLoader getPluginClassloader() throws ProvisioningException {
         if(pluginsClassLoader != null) {
             return pluginsClassLoader;
@@ -277,6 +352,17 @@ public class ProvisioningRuntime implements FeaturePackSet<FeaturePackRuntime>,
         this.installDir = installDir;
     }
 
+    /**
+     * Whether the feature-pack layouts are shared through a persistent layout cache.
+     * In that case the files from the layouts must be copied into the installation
+     * instead of being hard-linked.
+     *
+     * @return  true if the layouts are shared, otherwise false
+     */
+    public boolean isLayoutShared() {
+        return layoutCache != null;
+    }
+
     /**
      * Configuration of the installation to be provisioned.
      *
@@ -414,7 +500,42 @@ public class ProvisioningRuntime implements FeaturePackSet<FeaturePackRuntime>,
      * resolved for any reason
      */
     public Path resolveArtifact(ArtifactCoords coords) throws ArtifactException {
-        return artifactResolver.resolve(coords);
+        Path path = resolvedArtifacts.get(coords);
+        if(path == null) {
+            path = artifactResolver.resolve(coords);
+            resolvedArtifacts.put(coords, path);
+        }
+        return path;
+    }
+
+    /**
+     * Resolves the locations of the artifacts in one request to the repository manager,
+     * which allows the artifacts to be fetched concurrently. The resolved locations are
+     * remembered by the runtime, so the following {@link #resolveArtifact(ArtifactCoords)}
+     * calls for these artifacts don't reach the repository manager.
+     *
+     * @param coords  artifact coordinates
+     * @return  locations of the artifacts keyed by their coordinates
+     * @throws ArtifactException  in case any of the artifacts could not be
+     * resolved for any reason
+     */
+    public Map<ArtifactCoords, Path> resolveArtifacts(Collection<ArtifactCoords> coords) throws ArtifactException {
+        final Map<ArtifactCoords, Path> result = new HashMap<>(coords.size());
+        List<ArtifactCoords> unresolved = Collections.emptyList();
+        for(ArtifactCoords artifact : coords) {
+            final Path path = resolvedArtifacts.get(artifact);
+            if(path == null) {
+                unresolved = PmCollections.add(unresolved, artifact);
+            } else {
+                result.put(artifact, path);
+            }
+        }
+        if(!unresolved.isEmpty()) {
+            final Map<ArtifactCoords, Path> resolved = artifactResolver.resolveAll(unresolved);
+            resolvedArtifacts.putAll(resolved);
+            result.putAll(resolved);
+        }
+        return result;
     }
 
     @Override
@@ -452,6 +573,11 @@ public class ProvisioningRuntime implements FeaturePackSet<FeaturePackRuntime>,
     @Override
     public void close() throws IOException {
         IoUtils.recursiveDelete(workDir);
+        if(layoutCache != null) {
+            for(Path fpDir : cachedLayouts) {
+                layoutCache.release(fpDir);
+            }
+        }
         if (messageWriter.isVerboseEnabled()) {
             final long time = System.currentTimeMillis() - startTime;
             final long seconds = time / 1000;
@@ -17,8 +17,9 @@
 
 package org.jboss.provisioning.runtime;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -31,6 +32,13 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.stream.XMLStreamException;
 
@@ -49,6 +57,7 @@ import org.jboss.provisioning.config.FeaturePackConfig;
 import org.jboss.provisioning.config.IncludedConfig;
 import org.jboss.provisioning.config.PackageConfig;
 import org.jboss.provisioning.config.ProvisioningConfig;
+import org.jboss.provisioning.layout.FeaturePackMetadataIndex;
 import org.jboss.provisioning.spec.ConfigId;
 import org.jboss.provisioning.spec.ConfigSpec;
 import org.jboss.provisioning.spec.FeatureDependencySpec;
@@ -57,14 +66,16 @@ import org.jboss.provisioning.spec.ConfigItemContainer;
 import org.jboss.provisioning.spec.ConfigItem;
 import org.jboss.provisioning.spec.FeatureId;
 import org.jboss.provisioning.spec.FeaturePackDependencySpec;
+import org.jboss.provisioning.spec.FeaturePackSpec;
 import org.jboss.provisioning.spec.FeatureReferenceSpec;
 import org.jboss.provisioning.spec.PackageDepsSpec;
 import org.jboss.provisioning.spec.PackageDependencySpec;
+import org.jboss.provisioning.spec.PackageSpec;
 import org.jboss.provisioning.spec.SpecId;
+import org.jboss.provisioning.state.ProvisionedConfig;
 import org.jboss.provisioning.util.IoUtils;
 import org.jboss.provisioning.util.LayoutUtils;
 import org.jboss.provisioning.util.PmCollections;
-import org.jboss.provisioning.util.ZipUtils;
 import org.jboss.provisioning.xml.FeaturePackXmlParser;
 import org.jboss.provisioning.xml.PackageXmlParser;
 import org.jboss.provisioning.ArtifactRepositoryManager;
@@ -84,6 +95,8 @@ public class ProvisioningRuntimeBuilder {
         return new ProvisioningRuntimeBuilder(messageWriter);
     }
 
+    private static final int DEFAULT_LAYOUT_THREADS = Math.min(Runtime.getRuntime().availableProcessors(), 8);
+
     private static void mkdirs(final Path path) throws ProvisioningException {
         try {
             Files.createDirectories(path);
@@ -101,8 +114,17 @@ public class ProvisioningRuntimeBuilder {
     final Path workDir;
     final Path layoutDir;
     Path pluginsDir = null;
+    private int layoutThreads = DEFAULT_LAYOUT_THREADS;
+    private ExecutorService layoutExecutor;
+    FeaturePackLayoutCache layoutCache;
+    // layout cache entries acquired by this runtime
+    final List<Path> cachedLayouts = new ArrayList<>();
+    // canonical instances of the resolved ids
+    private final ResolvedIds ids = new ResolvedIds();
 
     private final Map<ArtifactCoords.Ga, FeaturePackRuntime.Builder> fpRtBuilders = new HashMap<>();
+    // feature-packs that have been resolved and opened ahead of time but haven't been requested yet
+    private Map<ArtifactCoords.Gav, FeaturePackRuntime.Builder> prefetchedFps = Collections.emptyMap();
     private final MessageWriter messageWriter;
     private List<FeaturePackRuntime.Builder> fpRtBuildersOrdered = new ArrayList<>();
     List<ConfigModelBuilder> anonymousConfigs = Collections.emptyList();
@@ -149,14 +171,75 @@ public class ProvisioningRuntimeBuilder {
         return this;
     }
 
+    /**
+     * The maximum number of threads used to resolve the feature-pack artifacts
+     * and to extract their content into the layout directory.
+     * A value less than 2 means the feature-packs will be resolved and extracted
+     * sequentially by the calling thread.
+     *
+     * @param layoutThreads  the maximum number of threads
+     * @return  this builder
+     */
+    public ProvisioningRuntimeBuilder setLayoutThreads(int layoutThreads) {
+        this.layoutThreads = layoutThreads;
+        return this;
+    }
+
+    /**
+     * Feature-pack layout cache. If set, the feature-packs are extracted into
+     * and shared from the cache instead of being extracted into the work directory
+     * of every provisioning runtime.
+     *
+     * @param layoutCache  the layout cache
+     * @return  this builder
+     */
+    public ProvisioningRuntimeBuilder setLayoutCache(FeaturePackLayoutCache layoutCache) {
+        this.layoutCache = layoutCache;
+        return this;
+    }
+
    public ProvisioningRuntimeBuilder setOperation(String operation) {
         this.operation = operation;
         return this;
     }
 
     public ProvisioningRuntime build() throws ProvisioningException {
+        if(layoutThreads > 1) {
+            layoutExecutor = Executors.newFixedThreadPool(layoutThreads, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread t = new Thread(r, "pm-layout-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        boolean built = false;
+        try {
+            doBuild();
+            built = true;
+        } finally {
+            if(layoutExecutor != null) {
+                layoutExecutor.shutdownNow();
+                layoutExecutor = null;
+            }
+            try {
+                closeLayouts();
+            } finally {
+                if(!built) {
+                    releaseCachedLayouts();
+                }
+            }
+        }
+        return new ProvisioningRuntime(this, messageWriter);
+    }
 
+    private void doBuild() throws ProvisioningException {
         final Collection<FeaturePackConfig> fpConfigs = config.getFeaturePacks();
+        if(layoutExecutor != null) {
+            prefetchFeaturePacks(fpConfigs);
+        }
         for (FeaturePackConfig fpConfig : fpConfigs) {
             loadFpBuilder(fpConfig.getGav()).push(fpConfig);
         }
@@ -172,11 +255,13 @@ public class ProvisioningRuntimeBuilder {
             }
             case 1: {
                 final FeaturePackRuntime.Builder builder = fpRtBuildersOrdered.get(0);
+                extractLayouts();
                 copyResources(builder);
                 fpRuntimes = Collections.singletonMap(builder.gav, builder.build());
                 break;
             }
             default: {
+                extractLayouts();
                 fpRuntimes = new LinkedHashMap<>(fpRtBuildersOrdered.size());
                 for(FeaturePackRuntime.Builder builder : fpRtBuildersOrdered) {
                     copyResources(builder);
@@ -185,21 +270,115 @@ public class ProvisioningRuntimeBuilder {
                 fpRuntimes = Collections.unmodifiableMap(fpRuntimes);
             }
         }
+    }
 
-        return new ProvisioningRuntime(this, messageWriter);
+    /**
+     * Walks the feature-pack dependency graph resolving the artifacts and reading
+     * the feature-pack specs in parallel. Failures are ignored here, the failed feature-packs
+     * will be loaded again and the errors reported during the (deterministic) resolution.
+     */
+    private void prefetchFeaturePacks(Collection<FeaturePackConfig> fpConfigs) {
+        final ExecutorCompletionService<FeaturePackRuntime.Builder> completion = new ExecutorCompletionService<>(layoutExecutor);
+        final Set<ArtifactCoords.Gav> submitted = new HashSet<>();
+        prefetchedFps = new HashMap<>();
+        int pending = 0;
+        for(FeaturePackConfig fpConfig : fpConfigs) {
+            if(submitted.add(fpConfig.getGav())) {
+                final ArtifactCoords.Gav gav = fpConfig.getGav();
+                completion.submit(() -> openFpBuilder(gav));
+                ++pending;
+            }
+        }
+        while(pending > 0) {
+            final FeaturePackRuntime.Builder fp;
+            try {
+                fp = completion.take().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                continue;
+            } finally {
+                --pending;
+            }
+            prefetchedFps.put(fp.gav, fp);
+            if(fp.spec.hasDependencies()) {
+                for(FeaturePackDependencySpec fpDep : fp.spec.getDependencies()) {
+                    final ArtifactCoords.Gav depGav = fpDep.getTarget().getGav();
+                    if(submitted.add(depGav)) {
+                        completion.submit(() -> openFpBuilder(depGav));
+                        ++pending;
+                    }
+                }
+            }
+        }
     }
 
-    private void buildConfigs() throws ProvisioningException {
-        if(!anonymousConfigs.isEmpty()) {
-            for(ConfigModelBuilder config : anonymousConfigs) {
-                config.build(this);
+    private void extractLayouts() throws ProvisioningException {
+        if(layoutExecutor == null) {
+            for(FeaturePackRuntime.Builder builder : fpRtBuildersOrdered) {
+                builder.extractLayout();
             }
+            return;
         }
-        if(!nameOnlyConfigs.isEmpty()) {
-            for(Map.Entry<String, ConfigModelBuilder> entry : nameOnlyConfigs.entrySet()) {
-                entry.getValue().build(this);
+        final List<Future<Void>> tasks = new ArrayList<>();
+        for(FeaturePackRuntime.Builder builder : fpRtBuildersOrdered) {
+            builder.extractLayout(layoutExecutor, tasks);
+        }
+        ProvisioningException error = null;
+        for(Future<Void> task : tasks) {
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ProvisioningException("Interrupted while extracting the feature-packs", e);
+            } catch (ExecutionException e) {
+                if(error == null) {
+                    error = e.getCause() instanceof ProvisioningException ? (ProvisioningException) e.getCause()
+                            : new ProvisioningException("Failed to extract the feature-packs", e.getCause());
+                }
             }
         }
+        if(error != null) {
+            throw error;
+        }
+    }
+
+    private void closeLayouts() throws ProvisioningException {
+        ProvisioningException error = null;
+        final List<FeaturePackRuntime.Builder> opened = new ArrayList<>(fpRtBuilders.values());
+        opened.addAll(prefetchedFps.values());
+        prefetchedFps = Collections.emptyMap();
+        for(FeaturePackRuntime.Builder fp : opened) {
+            try {
+                fp.closeLayout();
+            } catch(ProvisioningException e) {
+                if(error == null) {
+                    error = e;
+                }
+            }
+        }
+        if(error != null) {
+            throw error;
+        }
+    }
+
+    private void releaseCachedLayouts() {
+        synchronized(cachedLayouts) {
+            for(Path fpDir : cachedLayouts) {
+                layoutCache.release(fpDir);
+            }
+            cachedLayouts.clear();
+        }
+    }
+
+    private void buildConfigs() throws ProvisioningException {
+        if(!anonymousConfigs.isEmpty() || !nameOnlyConfigs.isEmpty()) {
+            final List<ConfigModelBuilder> configs = new ArrayList<>(anonymousConfigs.size() + nameOnlyConfigs.size());
+            configs.addAll(anonymousConfigs);
+            configs.addAll(nameOnlyConfigs.values());
+            buildConfigs(configs);
+        }
 
         if(!modelOnlyConfigSpecs.isEmpty()) {
             for(int i = 0; i < modelOnlyConfigSpecs.size(); ++i) {
@@ -241,10 +420,51 @@ public class ProvisioningRuntimeBuilder {
             modelOnlyConfigs = Collections.emptyMap();
         }
 
-        for(Map<String, ConfigModelBuilder> configMap : namedModelConfigs.values()) {
-            for(Map.Entry<String, ConfigModelBuilder> configEntry : configMap.entrySet()) {
-                configEntry.getValue().build(this);
+        if(!namedModelConfigs.isEmpty()) {
+            final List<ConfigModelBuilder> configs = new ArrayList<>();
+            for(Map<String, ConfigModelBuilder> configMap : namedModelConfigs.values()) {
+                configs.addAll(configMap.values());
             }
+            buildConfigs(configs);
+        }
+    }
+
+    /**
+     * Builds the configs using the layout executor, if there is one.
+     * The configs don't share any mutable state once the feature reference mappings
+     * of their specs have been resolved, which is done sequentially before the build.
+     * In case of failures, the failure of the first config (in the original order) is reported.
+     */
+    private void buildConfigs(List<ConfigModelBuilder> configs) throws ProvisioningException {
+        if(layoutExecutor == null || configs.size() == 1) {
+            for(ConfigModelBuilder config : configs) {
+                config.build(this);
+            }
+            return;
+        }
+        for(ConfigModelBuilder config : configs) {
+            config.resolveRefMappings(this);
+        }
+        final List<Future<ProvisionedConfig>> tasks = new ArrayList<>(configs.size());
+        for(ConfigModelBuilder config : configs) {
+            tasks.add(layoutExecutor.submit(() -> config.build(this)));
+        }
+        ProvisioningException error = null;
+        for(Future<ProvisionedConfig> task : tasks) {
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ProvisioningException("Interrupted while building the configs", e);
+            } catch (ExecutionException e) {
+                if(error == null) {
+                    error = e.getCause() instanceof ProvisioningException ? (ProvisioningException) e.getCause()
+                            : new ProvisioningException("Failed to build the configs", e.getCause());
+                }
+            }
+        }
+        if(error != null) {
+            throw error;
         }
     }
 
@@ -523,11 +743,11 @@ public class ProvisioningRuntimeBuilder {
     private Set<ResolvedSpecId> resolveSpecIds(FeaturePackRuntime.Builder fp, Set<SpecId> specs) throws ProvisioningException {
         if(specs.size() == 1) {
             final SpecId specId = specs.iterator().next();
-            return Collections.singleton(new ResolvedSpecId(fp.gav, specId.getName()));
+            return Collections.singleton(ids.specId(fp.gav, specId.getName()));
         }
         final Set<ResolvedSpecId> tmp = new HashSet<>(specs.size());
         for (SpecId specId : specs) {
-            tmp.add(new ResolvedSpecId(fp.gav, specId.getName()));
+            tmp.add(ids.specId(fp.gav, specId.getName()));
         }
         return tmp;
     }
@@ -701,33 +921,66 @@ public class ProvisioningRuntimeBuilder {
     private FeaturePackRuntime.Builder loadFpBuilder(ArtifactCoords.Gav gav) throws ProvisioningException {
         FeaturePackRuntime.Builder fp = fpRtBuilders.get(gav.toGa());
         if(fp == null) {
-            final Path fpDir = LayoutUtils.getFeaturePackDir(layoutDir, gav, false);
-            mkdirs(fpDir);
-
-            final Path artifactPath = artifactResolver.resolve(gav.toArtifactCoords());
-            try {
-                ZipUtils.unzip(artifactPath, fpDir);
-            } catch (IOException e) {
-                throw new ProvisioningException("Failed to unzip " + artifactPath + " to " + layoutDir, e);
+            fp = prefetchedFps.remove(gav);
+            if(fp == null) {
+                fp = openFpBuilder(gav);
             }
+            fpRtBuilders.put(gav.toGa(), fp);
+        } else if(!fp.gav.equals(gav)) {
+            throw new ProvisioningException(Errors.featurePackVersionConflict(fp.gav, gav));
+        }
+        return fp;
+    }
 
-            final Path fpXml = fpDir.resolve(Constants.FEATURE_PACK_XML);
-            if(!Files.exists(fpXml)) {
-                throw new ProvisioningDescriptionException(Errors.pathDoesNotExist(fpXml));
+    private FeaturePackRuntime.Builder openFpBuilder(ArtifactCoords.Gav gav) throws ProvisioningException {
+        final Path artifactPath = artifactResolver.resolve(gav.toArtifactCoords());
+        if(layoutCache != null) {
+            // the feature-pack is extracted into the cache once and then shared by the provisioning runs
+            final Path fpDir = layoutCache.acquire(gav, artifactPath);
+            synchronized(cachedLayouts) {
+                cachedLayouts.add(fpDir);
             }
+            return FeaturePackRuntime.builder(gav, readFeaturePackSpec(fpDir, fpDir), fpDir, null, ids);
+        }
 
-            try(BufferedReader reader = Files.newBufferedReader(fpXml)) {
-                fp = FeaturePackRuntime.builder(gav, FeaturePackXmlParser.getInstance().parse(reader), fpDir);
-            } catch (IOException | XMLStreamException e) {
-                throw new ProvisioningException(Errors.parseXml(fpXml), e);
+        final Path fpDir = LayoutUtils.getFeaturePackDir(layoutDir, gav, false);
+        mkdirs(fpDir);
+
+        // the content of the feature-pack is extracted only for the packages that are going to be installed,
+        // the metadata is read directly from the zip
+        final FileSystem zipfs;
+        try {
+            zipfs = FileSystems.newFileSystem(artifactPath, null);
+        } catch (IOException e) {
+            throw new ProvisioningException(Errors.openFile(artifactPath), e);
+        }
+
+        FeaturePackRuntime.Builder fp = null;
+        try {
+            fp = FeaturePackRuntime.builder(gav, readFeaturePackSpec(zipfs.getRootDirectories().iterator().next(), artifactPath), fpDir, zipfs, ids);
+        } finally {
+            if(fp == null) {
+                try {
+                    zipfs.close();
+                } catch (IOException e) {
+                }
             }
-            fpRtBuilders.put(gav.toGa(), fp);
-        } else if(!fp.gav.equals(gav)) {
-            throw new ProvisioningException(Errors.featurePackVersionConflict(fp.gav, gav));
         }
         return fp;
     }
 
+    private static FeaturePackSpec readFeaturePackSpec(Path fpRoot, Path fpLocation) throws ProvisioningException {
+        final Path fpXml = fpRoot.resolve(Constants.FEATURE_PACK_XML);
+        if(!Files.exists(fpXml)) {
+            throw new ProvisioningDescriptionException(Errors.pathDoesNotExist(fpLocation.resolve(Constants.FEATURE_PACK_XML)));
+        }
+        try {
+            return ParsedSpecCache.parse(FeaturePackSpec.class, fpXml, FeaturePackXmlParser.getInstance()::parse);
+        } catch (IOException | XMLStreamException e) {
+            throw new ProvisioningException(Errors.parseXml(fpLocation.resolve(Constants.FEATURE_PACK_XML)), e);
+        }
+    }
+
     private void resolvePackage(FeaturePackRuntime.Builder fp, final String pkgName)
             throws ProvisioningException {
         final PackageRuntime.Builder pkgRt = fp.pkgBuilders.get(pkgName);
@@ -736,17 +989,22 @@ public class ProvisioningRuntimeBuilder {
         }
 
         final PackageRuntime.Builder pkg = fp.newPackage(pkgName, LayoutUtils.getPackageDir(fp.dir, pkgName, false));
-        if(!Files.exists(pkg.dir)) {
+        final Path pkgZipDir = LayoutUtils.getPackageDir(fp.zipRoot, pkgName, false);
+        if(!Files.exists(pkgZipDir)) {
             throw new ProvisioningDescriptionException(Errors.packageNotFound(fp.gav, pkgName));
         }
-        final Path pkgXml = pkg.dir.resolve(Constants.PACKAGE_XML);
-        if(!Files.exists(pkgXml)) {
-            throw new ProvisioningDescriptionException(Errors.pathDoesNotExist(pkgXml));
-        }
-        try(BufferedReader reader = Files.newBufferedReader(pkgXml)) {
-            pkg.spec = PackageXmlParser.getInstance().parse(reader);
-        } catch (IOException | XMLStreamException e) {
-            throw new ProvisioningException(Errors.parseXml(pkgXml), e);
+        final FeaturePackMetadataIndex index = fp.getMetadataIndex();
+        pkg.spec = index == null ? null : index.getPackageSpec(pkgName);
+        if(pkg.spec == null) {
+            final Path pkgXml = pkgZipDir.resolve(Constants.PACKAGE_XML);
+            if(!Files.exists(pkgXml)) {
+                throw new ProvisioningDescriptionException(Errors.pathDoesNotExist(pkg.dir.resolve(Constants.PACKAGE_XML)));
+            }
+            try {
+                pkg.spec = ParsedSpecCache.parse(PackageSpec.class, pkgXml, PackageXmlParser.getInstance()::parse);
+            } catch (IOException | XMLStreamException e) {
+                throw new ProvisioningException(Errors.parseXml(pkg.dir.resolve(Constants.PACKAGE_XML)), e);
+            }
         }
 
         if(pkg.spec.hasPackageDeps()) {
@@ -17,15 +17,12 @@
 package org.jboss.provisioning.runtime;
 
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import org.jboss.provisioning.Errors;
 import org.jboss.provisioning.ProvisioningDescriptionException;
 import org.jboss.provisioning.ProvisioningException;
-import org.jboss.provisioning.spec.CapabilitySpec;
 import org.jboss.provisioning.spec.FeatureDependencySpec;
 import org.jboss.provisioning.spec.FeatureParameterSpec;
 import org.jboss.provisioning.state.ProvisionedFeature;
@@ -51,7 +48,7 @@ public class ResolvedFeature extends CapabilityProvider implements ProvisionedFe
     final int includeNo;
     final ResolvedFeatureId id;
     final ResolvedFeatureSpec spec;
-    Map<String, Object> params;
+    FeatureParams params;
     Map<ResolvedFeatureId, FeatureDependencySpec> deps;
 
     private byte orderingState = FREE;
@@ -74,19 +71,22 @@ public class ResolvedFeature extends CapabilityProvider implements ProvisionedFe
         setParams(params);
     }
 
+    private ResolvedFeature(ResolvedFeature other, int includeNo) {
+        this.includeNo = includeNo;
+        this.id = other.id;
+        this.spec = other.spec;
+        this.params = other.params.share();
+        this.deps = other.deps.size() > 1 ? new LinkedHashMap<>(other.deps) : other.deps;
+    }
+
     ResolvedFeature copy(int includeNo) throws ProvisioningException {
-        return new ResolvedFeature(id, spec, params.size() > 1 ? new HashMap<>(params) : params, deps.size() > 1 ? new LinkedHashMap<>(deps) : deps, includeNo);
+        return new ResolvedFeature(this, includeNo);
     }
 
     private void initParamsFromId() {
+        this.params = new FeatureParams(spec.paramColumns);
         if(id != null) {
-            if(id.params.size() == 1) {
-                this.params = id.params;
-            } else {
-                this.params = new HashMap<>(id.params);
-            }
-        } else {
-            this.params = Collections.emptyMap();
+            this.params.putAll(id.params);
         }
     }
 
@@ -95,7 +95,7 @@ public class ResolvedFeature extends CapabilityProvider implements ProvisionedFe
             if(!param.isNillable()) {
                 if(!params.containsKey(param.getName())) {
                     if(param.hasDefaultValue()) {
-                        params = PmCollections.put(params, param.getName(), param.getDefaultValue());
+                        params.put(param.getName(), param.getDefaultValue());
                     } else if(id == null) {
                         throw new ProvisioningDescriptionException(Errors.nonNillableParameterIsNull(spec.id, param.getName()));
                     } else {
@@ -103,7 +103,7 @@ public class ResolvedFeature extends CapabilityProvider implements ProvisionedFe
                     }
                 }
             } else if(param.hasDefaultValue() && !params.containsKey(param.getName())) {
-                params = PmCollections.put(params, param.getName(), param.getDefaultValue());
+                params.put(param.getName(), param.getDefaultValue());
             }
         }
     }
@@ -130,7 +130,6 @@ public class ResolvedFeature extends CapabilityProvider implements ProvisionedFe
         }
         orderingState = ORDERED;
         provided();
-        spec.provided();
     }
 
     void free() {
@@ -248,7 +247,7 @@ public class ResolvedFeature extends CapabilityProvider implements ProvisionedFe
         if(!spec.xmlSpec.hasParam(name)) {
             throw new ProvisioningDescriptionException(Errors.unknownFeatureParameter(this, name));
         }
-        params = PmCollections.put(params, name, value);
+        params.put(name, value);
     }
 
     void setParams(Map<String, Object> params) throws ProvisioningDescriptionException {
@@ -277,11 +276,11 @@ public class ResolvedFeature extends CapabilityProvider implements ProvisionedFe
         return spec.resolveRefs(this);
     }
 
-    String resolveCapability(CapabilitySpec cap) throws ProvisioningException {
+    String[] resolveCapability(CompiledCapability cap) throws ProvisioningException {
         try {
-            return cap.resolve(this);
+            return cap.resolveValues(this);
         } catch (ProvisioningException e) {
-            throw new ProvisioningException(Errors.failedToResolveCapability(this, cap), e);
+            throw new ProvisioningException(Errors.failedToResolveCapability(this, cap.spec), e);
         }
     }
 }
\ No newline at end of file
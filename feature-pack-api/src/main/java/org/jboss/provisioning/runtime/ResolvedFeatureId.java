@@ -154,6 +154,7 @@ public class ResolvedFeatureId {
 
     final ResolvedSpecId specId;
     final Map<String, Object> params;
+    private final int hash;
 
     ResolvedFeatureId(ResolvedSpecId specId, Map<String, Object> params) {
         this.specId = specId;
@@ -167,6 +168,11 @@ public class ResolvedFeatureId {
             filtered = params;
         }
         this.params = PmCollections.unmodifiable(filtered);
+        final int prime = 31;
+        int hash = 1;
+        hash = prime * hash + this.params.hashCode();
+        hash = prime * hash + ((specId == null) ? 0 : specId.hashCode());
+        this.hash = hash;
     }
 
     public ResolvedSpecId getSpecId() {
@@ -179,11 +185,7 @@ public class ResolvedFeatureId {
 
     @Override
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + ((params == null) ? 0 : params.hashCode());
-        result = prime * result + ((specId == null) ? 0 : specId.hashCode());
-        return result;
+        return hash;
     }
 
     @Override
@@ -195,6 +197,8 @@ public class ResolvedFeatureId {
         if (getClass() != obj.getClass())
             return false;
         ResolvedFeatureId other = (ResolvedFeatureId) obj;
+        if (hash != other.hash)
+            return false;
         if (params == null) {
             if (other.params != null)
                 return false;
@@ -48,19 +48,36 @@ import org.jboss.provisioning.util.StringUtils;
  *
  * @author Alexey Loubyansky
  */
-public class ResolvedFeatureSpec extends CapabilityProvider {
+public class ResolvedFeatureSpec {
 
     final ResolvedSpecId id;
     final FeatureSpec xmlSpec;
     private final ParameterTypeProvider typeProvider;
+    private final ResolvedIds ids;
+    final CompiledCapability[] providedCaps;
+    final CompiledCapability[] requiredCaps;
+    final FeatureParams.Columns paramColumns;
     private Map<String, ResolvedFeatureSpec> resolvedRefTargets;
     private Map<ResolvedFeatureId, FeatureDependencySpec> resolvedDeps;
 
 
     public ResolvedFeatureSpec(ResolvedSpecId specId, ParameterTypeProvider typeProvider, FeatureSpec spec) {
+        this(specId, typeProvider, spec, null);
+    }
+
+    ResolvedFeatureSpec(ResolvedSpecId specId, ParameterTypeProvider typeProvider, FeatureSpec spec, ResolvedIds ids) {
         this.id = specId;
         this.typeProvider = typeProvider;
         this.xmlSpec = spec;
+        this.ids = ids;
+        providedCaps = CompiledCapability.compile(spec.getProvidedCapabilities());
+        requiredCaps = CompiledCapability.compile(spec.getRequiredCapabilities());
+        paramColumns = new FeatureParams.Columns(spec.getParams());
+    }
+
+    private ResolvedFeatureId newFeatureId(ResolvedSpecId specId, Map<String, Object> params) {
+        final ResolvedFeatureId featureId = new ResolvedFeatureId(specId, params);
+        return ids == null ? featureId : ids.intern(featureId);
     }
 
     public ResolvedSpecId getId() {
@@ -211,7 +228,7 @@ public class ResolvedFeatureSpec extends CapabilityProvider {
                 }
             }
 
-            return new ResolvedFeatureId(id, resolvedParams);
+            return newFeatureId(id, resolvedParams);
         } catch(ProvisioningException e) {
             final StringBuilder buf = new StringBuilder();
             buf.append("Failed to initialize foreign key parameters of ").append(id).append(" spec referencing feature ").append(parentId).append(" with parameters ");
@@ -227,13 +244,13 @@ public class ResolvedFeatureSpec extends CapabilityProvider {
         final List<FeatureParameterSpec> idSpecs = xmlSpec.getIdParams();
         if(idSpecs.size() == 1) {
             final FeatureParameterSpec idSpec = idSpecs.get(0);
-            return new ResolvedFeatureId(id, Collections.singletonMap(idSpec.getName(), resolveIdParamValue(params, idSpec)));
+            return newFeatureId(id, Collections.singletonMap(idSpec.getName(), resolveIdParamValue(params, idSpec)));
         }
         final Map<String, Object> resolvedParams = new HashMap<>(idSpecs.size());
         for(FeatureParameterSpec param : idSpecs) {
             resolvedParams.put(param.getName(), resolveIdParamValue(params, param));
         }
-        return new ResolvedFeatureId(id, resolvedParams);
+        return newFeatureId(id, resolvedParams);
     }
 
     private Object resolveIdParamValue(Map<String, String> params, final FeatureParameterSpec param) throws ProvisioningException {
@@ -306,6 +323,10 @@ public class ResolvedFeatureSpec extends CapabilityProvider {
     }
 
     void resolveRefMappings(ProvisioningRuntimeBuilder rt) throws ProvisioningDescriptionException {
+        if(resolvedRefTargets != null) {
+            // the spec is shared by the configs and its feature-pack dependencies don't change
+            return;
+        }
         if(!xmlSpec.hasFeatureRefs()) {
             resolvedRefTargets = Collections.emptyMap();
             return;
@@ -412,7 +433,7 @@ public class ResolvedFeatureSpec extends CapabilityProvider {
                     assertRefNotNillable(feature, refSpec);
                     return null;
                 }
-                return new ResolvedFeatureId(targetSpec.id, Collections.singletonMap(paramName, paramValue));
+                return newFeatureId(targetSpec.id, Collections.singletonMap(paramName, paramValue));
             }
             final Map<String, Object> params = new HashMap<>(targetIdParams.size());
             for(FeatureParameterSpec targetIdParam : targetIdParams) {
@@ -428,7 +449,7 @@ public class ResolvedFeatureSpec extends CapabilityProvider {
                 assertRefNotNillable(feature, refSpec);
                 return null;
             }
-            return new ResolvedFeatureId(targetSpec.id, params);
+            return newFeatureId(targetSpec.id, params);
         }
 
         final Iterator<Map.Entry<String, String>> i = refSpec.getMappedParams().entrySet().iterator();
@@ -445,7 +466,7 @@ public class ResolvedFeatureSpec extends CapabilityProvider {
                 assertRefNotNillable(feature, refSpec);
                 return null;
             }
-            return new ResolvedFeatureId(targetSpec.id, Collections.singletonMap(mapping.getValue(), paramValue));
+            return newFeatureId(targetSpec.id, Collections.singletonMap(mapping.getValue(), paramValue));
         }
 
         Map<String, Object> params = new HashMap<>(refSpec.getParamsMapped());
@@ -466,7 +487,7 @@ public class ResolvedFeatureSpec extends CapabilityProvider {
             assertRefNotNillable(feature, refSpec);
             return null;
         }
-        return new ResolvedFeatureId(targetSpec.id, params);
+        return newFeatureId(targetSpec.id, params);
     }
 
     private void assertRefNotNillable(final ResolvedFeature feature, final FeatureReferenceSpec refSpec)
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.provisioning.runtime;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jboss.provisioning.ArtifactCoords;
+
+/**
+ * Canonical instances of the ids resolved while building a provisioning runtime.
+ * Equal ids resolved through the same instance of this class are represented
+ * by the same object, which makes their comparison mostly a reference check.
+ *
+ * @author Alexey Loubyansky
+ */
+class ResolvedIds {
+
+    private final Map<ArtifactCoords.Gav, ArtifactCoords.Gav> gavs = new ConcurrentHashMap<>();
+    private final Map<ResolvedSpecId, ResolvedSpecId> specIds = new ConcurrentHashMap<>();
+    private final Map<ResolvedFeatureId, ResolvedFeatureId> featureIds = new ConcurrentHashMap<>();
+
+    ArtifactCoords.Gav intern(ArtifactCoords.Gav gav) {
+        final ArtifactCoords.Gav existing = gavs.putIfAbsent(gav, gav);
+        return existing == null ? gav : existing;
+    }
+
+    ResolvedSpecId intern(ResolvedSpecId specId) {
+        final ResolvedSpecId existing = specIds.putIfAbsent(specId, specId);
+        return existing == null ? specId : existing;
+    }
+
+    ResolvedSpecId specId(ArtifactCoords.Gav gav, String name) {
+        return intern(new ResolvedSpecId(intern(gav), name));
+    }
+
+    ResolvedFeatureId intern(ResolvedFeatureId featureId) {
+        final ResolvedFeatureId existing = featureIds.putIfAbsent(featureId, featureId);
+        return existing == null ? featureId : existing;
+    }
+}
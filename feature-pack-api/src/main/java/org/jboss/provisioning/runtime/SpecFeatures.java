@@ -24,7 +24,7 @@ import java.util.List;
  *
  * @author Alexey Loubyansky
  */
-class SpecFeatures {
+class SpecFeatures extends CapabilityProvider {
 
     private static final byte FREE = 0;
     private static final byte PROCESSING = 1;
@@ -32,11 +32,24 @@ class SpecFeatures {
     final ResolvedFeatureSpec spec;
     List<ResolvedFeature> list = new ArrayList<>();
     private byte state = FREE;
+    // the number of the leading features in the list that have been ordered
+    private int orderedPrefix;
 
     SpecFeatures(ResolvedFeatureSpec spec) {
         this.spec = spec;
     }
 
+    /**
+     * The index of the first feature in the list which hasn't been ordered yet.
+     * The ordered features remain ordered, so the index never decreases.
+     */
+    int firstNotOrdered() {
+        while(orderedPrefix < list.size() && list.get(orderedPrefix).isOrdered()) {
+            ++orderedPrefix;
+        }
+        return orderedPrefix;
+    }
+
     boolean isFree() {
         return state == FREE;
     }
@@ -118,6 +118,25 @@ public class CapabilitySpec {
         return parts.length == 1 && partTypes[0];
     }
 
+    /**
+     * The number of the dot-separated parts of the capability expression.
+     * A static part may include dots itself.
+     */
+    public int getPartsTotal() {
+        return parts.length;
+    }
+
+    /**
+     * The value of the static part or the name of the parameter for the parameter part.
+     */
+    public String getPart(int i) {
+        return parts[i];
+    }
+
+    public boolean isStaticPart(int i) {
+        return partTypes[i];
+    }
+
     public String resolve(ResolvedFeature feature) throws ProvisioningException {
         if(isStatic()) {
             return toString();
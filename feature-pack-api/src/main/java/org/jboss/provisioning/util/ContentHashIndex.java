@@ -0,0 +1,206 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.provisioning.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Content hashes of the files of an installation recorded together with
+ * the size and the last modification time of each file.
+ *
+ * When a tree is listed with {@link IoUtils#listContents(Path, PathFilter, java.util.concurrent.ForkJoinPool, ContentHashIndex)}
+ * a file whose size and last modification time match the recorded ones is not
+ * read again, its recorded hash is used instead. The files that had to be hashed
+ * are recorded in the index.
+ *
+ * The index is stored as a text file, one line per file: size, last modification
+ * time in milliseconds, SHA-1 hash and the relative path separated by tabs.
+ *
+ * A file modified not strictly before the index was stored could have been changed
+ * after it was hashed within the granularity of the file system timestamps
+ * without changing its size. The recorded hashes of such files are not trusted
+ * when the index is loaded, the files are hashed again.
+ *
+ * @author Alexey Loubyansky
+ */
+public class ContentHashIndex {
+
+    private static final char SEPARATOR = '\t';
+
+    public static ContentHashIndex newInstance() {
+        return new ContentHashIndex();
+    }
+
+    /**
+     * Loads the index from the file. If the file does not exist
+     * or could not be parsed, an empty index is returned.
+     *
+     * @param file  index file
+     * @return  the index
+     */
+    public static ContentHashIndex load(Path file) {
+        final ContentHashIndex index = new ContentHashIndex();
+        if(!Files.exists(file)) {
+            return index;
+        }
+        final long storedAt;
+        try {
+            storedAt = Files.getLastModifiedTime(file).toMillis();
+        } catch(IOException e) {
+            return index;
+        }
+        try(BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            while(line != null) {
+                final int sizeEnd = line.indexOf(SEPARATOR);
+                final int timeEnd = line.indexOf(SEPARATOR, sizeEnd + 1);
+                final int hashEnd = line.indexOf(SEPARATOR, timeEnd + 1);
+                if(sizeEnd < 0 || timeEnd < 0 || hashEnd < 0) {
+                    return new ContentHashIndex();
+                }
+                final long lastModified = Long.parseLong(line.substring(sizeEnd + 1, timeEnd));
+                if(lastModified < storedAt) {
+                    index.entries.put(Paths.get(line.substring(hashEnd + 1)),
+                            new Entry(Long.parseLong(line.substring(0, sizeEnd)), lastModified,
+                                    line.substring(timeEnd + 1, hashEnd)));
+                }
+                line = reader.readLine();
+            }
+        } catch(IOException | NumberFormatException e) {
+            // the index is only an optimization, the content will be re-hashed
+            return new ContentHashIndex();
+        }
+        return index;
+    }
+
+    private static class Entry {
+        final long size;
+        final long lastModified;
+        final String hash;
+
+        Entry(long size, long lastModified, String hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+
+    private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean modified;
+
+    private ContentHashIndex() {
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Whether any hash was recorded since the index was created or loaded.
+     *
+     * @return  true if the index has new hashes that have not been stored
+     */
+    public boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * Returns the recorded hash for the file if its size and last modification
+     * time did not change, otherwise null.
+     *
+     * @param relativePath  path of the file relative to the root of the installation
+     * @param attrs  current attributes of the file
+     * @return  recorded hash or null
+     */
+    public String getHash(Path relativePath, BasicFileAttributes attrs) {
+        final Entry entry = entries.get(relativePath);
+        if(entry == null || entry.size != attrs.size() || entry.lastModified != attrs.lastModifiedTime().toMillis()) {
+            return null;
+        }
+        return entry.hash;
+    }
+
+    public void putHash(Path relativePath, BasicFileAttributes attrs, String hash) {
+        entries.put(relativePath, new Entry(attrs.size(), attrs.lastModifiedTime().toMillis(), hash));
+        modified = true;
+    }
+
+    /**
+     * Returns the hash of the file either from the index or, if the file has changed
+     * since it was indexed, computed from its content. In the latter case the new hash
+     * is recorded in the index.
+     *
+     * @param file  the file
+     * @param relativePath  path of the file relative to the root of the installation
+     * @return  hash of the file
+     * @throws IOException  in case the file could not be read
+     */
+    public String hashFile(Path file, Path relativePath) throws IOException {
+        final BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        String hash = getHash(relativePath, attrs);
+        if(hash == null) {
+            hash = HashUtils.hashFile(file);
+            putHash(relativePath, attrs, hash);
+        }
+        return hash;
+    }
+
+    /**
+     * Removes the entries for the paths that are not in the collection.
+     *
+     * @param paths  the paths to keep
+     */
+    public void retain(Collection<Path> paths) {
+        entries.keySet().retainAll(paths);
+    }
+
+    public void store(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        try(BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for(Map.Entry<Path, Entry> e : entries.entrySet()) {
+                final String path = e.getKey().toString();
+                if(path.indexOf('\n') >= 0 || path.indexOf('\r') >= 0) {
+                    continue;
+                }
+                final Entry entry = e.getValue();
+                writer.write(Long.toString(entry.size));
+                writer.write(SEPARATOR);
+                writer.write(Long.toString(entry.lastModified));
+                writer.write(SEPARATOR);
+                writer.write(entry.hash);
+                writer.write(SEPARATOR);
+                writer.write(path);
+                writer.newLine();
+            }
+        }
+        modified = false;
+    }
+}
@@ -18,18 +18,25 @@ package org.jboss.provisioning.util;
 
 import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Map;
 import java.util.TreeMap;
 
 /**
+ * SHA-1 hashing of files, directory trees and strings.
+ *
+ * Each thread uses its own digest instance, so the methods can be called
+ * concurrently without contention, e.g. from {@link IoUtils#listContents(Path, PathFilter, java.util.concurrent.ForkJoinPool)}.
  *
  * @author Alexey Loubyansky
  */
@@ -37,37 +44,51 @@ public class HashUtils {
 
     private static final char[] TABLE = "0123456789abcdef".toCharArray();
 
-    private static final MessageDigest DIGEST;
-    static {
-        try {
-            DIGEST = MessageDigest.getInstance("SHA-1");
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
+    /**
+     * Files of this size and bigger are memory-mapped instead of being read through a stream.
+     */
+    private static final long MMAP_THRESHOLD = 1024 * 1024;
+    private static final long MMAP_CHUNK = 64 * 1024 * 1024;
+
+    private static final ThreadLocal<MessageDigest> DIGEST = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
         }
+    };
+
+    private static MessageDigest getDigest() {
+        final MessageDigest digest = DIGEST.get();
+        digest.reset();
+        return digest;
     }
 
     public static byte[] hashPath(Path path) throws IOException {
-        synchronized (DIGEST) {
-            DIGEST.reset();
-            updateDigest(DIGEST, path);
-            return DIGEST.digest();
-        }
+        final MessageDigest digest = getDigest();
+        updateDigest(digest, path);
+        return digest.digest();
     }
 
     public static String hashFile(Path path) throws IOException {
-        synchronized (DIGEST) {
-            DIGEST.reset();
-            updateDigest(DIGEST, path);
-            return bytesToHexString(DIGEST.digest());
-        }
+        final MessageDigest digest = getDigest();
+        updateDigest(digest, path);
+        return bytesToHexString(digest.digest());
+    }
+
+    public static byte[] hash(byte[] content) {
+        final MessageDigest digest = getDigest();
+        digest.update(content);
+        return digest.digest();
     }
 
     public static String hash(String content) throws IOException {
-        synchronized (DIGEST) {
-            DIGEST.reset();
-            DIGEST.update(content.getBytes(StandardCharsets.UTF_8));
-            return bytesToHexString(DIGEST.digest());
-        }
+        final MessageDigest digest = getDigest();
+        digest.update(content.getBytes(StandardCharsets.UTF_8));
+        return bytesToHexString(digest.digest());
     }
 
     private static void updateDigest(MessageDigest digest, Path path) throws IOException {
@@ -81,6 +102,16 @@ public class HashUtils {
                     updateDigest(digest, child);
                 }
             }
+        } else if(path.getFileSystem() == FileSystems.getDefault() && Files.size(path) >= MMAP_THRESHOLD) {
+            try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                final long size = channel.size();
+                long position = 0;
+                while(position < size) {
+                    final MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MMAP_CHUNK, size - position));
+                    position += buf.remaining();
+                    digest.update(buf);
+                }
+            }
         } else {
             try (BufferedInputStream bis = new BufferedInputStream(Files.newInputStream(path))){
                 byte[] bytes = new byte[8192];
@@ -93,27 +124,25 @@ public class HashUtils {
     }
 
     public static byte[] hashJar(Path jarFile, boolean ignoreManifest) throws IOException {
-        synchronized (DIGEST) {
-            DIGEST.reset();
-            try (FileSystem zipfs = FileSystems.newFileSystem(jarFile, null)) {
-                for (Path zipRoot : zipfs.getRootDirectories()) {
-                    final Map<String, Path> sortedChildren = new TreeMap<String, Path>();
-                    try(DirectoryStream<Path> stream = Files.newDirectoryStream(zipRoot)) {
-                        for(Path p : stream) {
-                            final String fileName = p.getFileName().toString();
-                            if(ignoreManifest && fileName.equals("META-INF/")) {
-                                continue;
-                            }
-                            sortedChildren.put(fileName, p);
+        final MessageDigest digest = getDigest();
+        try (FileSystem zipfs = FileSystems.newFileSystem(jarFile, null)) {
+            for (Path zipRoot : zipfs.getRootDirectories()) {
+                final Map<String, Path> sortedChildren = new TreeMap<String, Path>();
+                try(DirectoryStream<Path> stream = Files.newDirectoryStream(zipRoot)) {
+                    for(Path p : stream) {
+                        final String fileName = p.getFileName().toString();
+                        if(ignoreManifest && fileName.equals("META-INF/")) {
+                            continue;
                         }
+                        sortedChildren.put(fileName, p);
                     }
-                    for (Path child : sortedChildren.values()) {
-                        updateDigest(DIGEST, child);
-                    }
+                }
+                for (Path child : sortedChildren.values()) {
+                    updateDigest(digest, child);
                 }
             }
-            return DIGEST.digest();
         }
+        return digest.digest();
     }
 
     /**
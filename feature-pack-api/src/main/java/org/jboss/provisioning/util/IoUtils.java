@@ -19,23 +19,32 @@ package org.jboss.provisioning.util;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
 import java.nio.file.FileVisitOption;
 import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  *
@@ -117,6 +126,97 @@ public class IoUtils {
                 });
     }
 
+    /**
+     * Materializes the source file or directory at the target location the same way
+     * {@link #copy(Path, Path)} does except that regular files are hard-linked to the source
+     * when both are located on the same file store. If a link can't be created the file is copied.
+     * Linked files share their content with the source, so they must be replaced rather than
+     * modified in place.
+     *
+     * @param source  the source file or directory
+     * @param target  the target file or directory
+     * @throws IOException  in case of a failure
+     */
+    public static void linkOrCopy(Path source, Path target) throws IOException {
+        if(!Files.isDirectory(source)) {
+            Files.createDirectories(target.getParent());
+            linkOrCopyFile(source, target);
+            return;
+        }
+        Files.createDirectories(target);
+        Files.walkFileTree(source, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+                new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+                        throws IOException {
+                        final Path targetDir = target.resolve(source.relativize(dir));
+                        try {
+                            Files.copy(dir, targetDir);
+                        } catch (FileAlreadyExistsException e) {
+                             if (!Files.isDirectory(targetDir)) {
+                                 throw e;
+                             }
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                        throws IOException {
+                        linkOrCopyFile(file, target.resolve(source.relativize(file)));
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+    }
+
+    private static void linkOrCopyFile(Path source, Path target) throws IOException {
+        if(!link(source, target)) {
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Replaces the target file with a hard link to the source file.
+     *
+     * @param source  the source file
+     * @param target  the target file
+     * @return  true if the link was created, false if the file has to be copied instead
+     * @throws IOException  in case of a failure
+     */
+    public static boolean link(Path source, Path target) throws IOException {
+        if(source.getFileSystem() != target.getFileSystem() || Files.isSymbolicLink(source)) {
+            return false;
+        }
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, source);
+            return true;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            // different file stores or links are not supported
+            return false;
+        }
+    }
+
+    /**
+     * Makes the target directory a copy of the source directory. Unlike {@link #copy(Path, Path)}
+     * only the files that are missing in the target or which content differs are copied
+     * (or hard-linked, see {@link #linkOrCopy(Path, Path)}),
+     * the files and directories that are not present in the source are removed from the target.
+     * Each directory is processed as a separate fork/join task.
+     *
+     * @param source  the source directory
+     * @param target  the target directory
+     * @param pool  fork/join pool to use
+     * @param targetIndex  content hash index of the target directory or null
+     * @throws IOException  in case of a failure
+     */
+    public static void mirror(Path source, Path target, ForkJoinPool pool, ContentHashIndex targetIndex) throws IOException {
+        try {
+            pool.invoke(new MirrorTask(source, target, target, targetIndex));
+        } catch(UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
     public static String readFile(Path file) throws IOException {
         final StringWriter buf = new StringWriter();
         try (BufferedWriter bw = new BufferedWriter(buf)) {
@@ -135,13 +235,74 @@ public class IoUtils {
         Files.write(file, content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE);
     }
 
-     public static Map<Path, String> listContents(Path root, PathFilter filter) throws IOException {
+    /**
+     * Hashes the content of the directory tree walking it in parallel using the common fork/join pool.
+     * The result is the same as the one of {@link #listContents(Path, PathFilter, ForkJoinPool)}.
+     *
+     * @param root  the root of the tree
+     * @param filter  filter for the paths relative to the root
+     * @return  hashes of the files and empty directories by their paths relative to the root
+     * @throws IOException  in case a file could not be read
+     */
+    public static Map<Path, String> listContentsParallel(Path root, PathFilter filter) throws IOException {
+        return listContents(root, filter, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Hashes the content of the directory tree using the provided fork/join pool.
+     * Each directory is processed as a separate task.
+     * If the pool is null, the tree is walked and hashed by the calling thread.
+     *
+     * @param root  the root of the tree
+     * @param filter  filter for the paths relative to the root
+     * @param pool  the pool to hash the tree with or null
+     * @return  hashes of the files and empty directories by their paths relative to the root
+     * @throws IOException  in case a file could not be read
+     */
+    public static Map<Path, String> listContents(Path root, PathFilter filter, ForkJoinPool pool) throws IOException {
+        return listContents(root, filter, pool, null);
+    }
+
+    /**
+     * Hashes the content of the directory tree using the provided fork/join pool.
+     * If the index is not null, only the files which size or last modification time
+     * differ from the ones recorded in the index are read, the index is updated with their new hashes.
+     *
+     * @param root  the root of the tree
+     * @param filter  filter for the paths relative to the root
+     * @param pool  the pool to hash the tree with or null
+     * @param index  content hash index of the tree or null
+     * @return  hashes of the files and empty directories by their paths relative to the root
+     * @throws IOException  in case a file could not be read
+     */
+    public static Map<Path, String> listContents(Path root, PathFilter filter, ForkJoinPool pool, ContentHashIndex index) throws IOException {
         if (root == null || !Files.exists(root)) {
             return Collections.emptyMap();
         }
         if(Files.isRegularFile(root)) {
-            return Collections.singletonMap(root.relativize(root), HashUtils.hashFile(root));
+            return Collections.singletonMap(root.relativize(root), hashFile(root, root.relativize(root), index));
+        }
+        if(pool == null) {
+            return walkContents(root, filter, index);
         }
+        final Map<Path, String> contents = new ConcurrentHashMap<>();
+        try {
+            pool.invoke(new ListContentsTask(root, root, filter, index, contents));
+        } catch(UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return contents;
+    }
+
+    public static Map<Path, String> listContents(Path root, PathFilter filter) throws IOException {
+        return listContents(root, filter, null, null);
+    }
+
+    private static String hashFile(Path file, Path relativePath, ContentHashIndex index) throws IOException {
+        return index == null ? HashUtils.hashFile(file) : index.hashFile(file, relativePath);
+    }
+
+    private static Map<Path, String> walkContents(Path root, PathFilter filter, ContentHashIndex index) throws IOException {
         Map<Path, String> contents = new HashMap<>();
         Files.walkFileTree(root, new FileVisitor<Path>() {
             @Override
@@ -158,8 +319,9 @@ public class IoUtils {
 
             @Override
             public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                if(filter.accept(root.relativize(file))) {
-                    contents.put(root.relativize(file), HashUtils.hashFile(file));
+                final Path relativeFile = root.relativize(file);
+                if(filter.accept(relativeFile)) {
+                    contents.put(relativeFile, hashFile(file, relativeFile, index));
                 }
                 return FileVisitResult.CONTINUE;
             }
@@ -176,4 +338,130 @@ public class IoUtils {
         });
         return contents;
     }
+
+    private static class ListContentsTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path root;
+        private final Path dir;
+        private final PathFilter filter;
+        private final ContentHashIndex index;
+        private final Map<Path, String> contents;
+
+        ListContentsTask(Path root, Path dir, PathFilter filter, ContentHashIndex index, Map<Path, String> contents) {
+            this.root = root;
+            this.dir = dir;
+            this.filter = filter;
+            this.index = index;
+            this.contents = contents;
+        }
+
+        @Override
+        protected void compute() {
+            final Path relativeDir = root.relativize(dir);
+            if(!filter.accept(relativeDir)) {
+                return;
+            }
+            final List<Path> files = new ArrayList<>();
+            final List<ListContentsTask> subdirs = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path child : stream) {
+                    if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                        subdirs.add(new ListContentsTask(root, child, filter, index, contents));
+                    } else {
+                        files.add(child);
+                    }
+                }
+            } catch (IOException e) {
+                // same as the sequential walk, directories that can't be read are skipped
+                return;
+            }
+            try {
+                if (files.isEmpty() && subdirs.isEmpty()) {
+                    contents.put(relativeDir, HashUtils.hash(relativeDir.toString()));
+                    return;
+                }
+                for (Path file : files) {
+                    final Path relativeFile = root.relativize(file);
+                    if (filter.accept(relativeFile)) {
+                        contents.put(relativeFile, hashFile(file, relativeFile, index));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (!subdirs.isEmpty()) {
+                invokeAll(subdirs);
+            }
+        }
+    }
+
+    private static class MirrorTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path srcDir;
+        private final Path targetDir;
+        private final Path targetRoot;
+        private final ContentHashIndex targetIndex;
+
+        MirrorTask(Path srcDir, Path targetDir, Path targetRoot, ContentHashIndex targetIndex) {
+            this.srcDir = srcDir;
+            this.targetDir = targetDir;
+            this.targetRoot = targetRoot;
+            this.targetIndex = targetIndex;
+        }
+
+        @Override
+        protected void compute() {
+            final List<MirrorTask> subdirs = new ArrayList<>();
+            try {
+                final Map<String, Path> srcChildren = new HashMap<>();
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(srcDir)) {
+                    for (Path child : stream) {
+                        srcChildren.put(child.getFileName().toString(), child);
+                    }
+                }
+                if (Files.isDirectory(targetDir)) {
+                    try (DirectoryStream<Path> stream = Files.newDirectoryStream(targetDir)) {
+                        for (Path child : stream) {
+                            final Path srcChild = srcChildren.get(child.getFileName().toString());
+                            if (srcChild == null || Files.isDirectory(srcChild) != Files.isDirectory(child)) {
+                                if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                                    recursiveDelete(child);
+                                } else {
+                                    Files.delete(child);
+                                }
+                            }
+                        }
+                    }
+                } else {
+                    Files.deleteIfExists(targetDir);
+                    Files.createDirectories(targetDir);
+                }
+                for (Path srcChild : srcChildren.values()) {
+                    final Path targetChild = targetDir.resolve(srcChild.getFileName().toString());
+                    if (Files.isDirectory(srcChild)) {
+                        subdirs.add(new MirrorTask(srcChild, targetChild, targetRoot, targetIndex));
+                    } else if (!isSameContent(srcChild, targetChild)) {
+                        linkOrCopyFile(srcChild, targetChild);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (!subdirs.isEmpty()) {
+                invokeAll(subdirs);
+            }
+        }
+
+        private boolean isSameContent(Path src, Path target) throws IOException {
+            if (!Files.exists(target) || Files.size(src) != Files.size(target)) {
+                return false;
+            }
+            final String targetHash = hashFile(target, targetRoot.relativize(target), targetIndex);
+            return targetHash.equals(HashUtils.hashFile(src));
+        }
+    }
 }
@@ -41,6 +41,10 @@ public class PathsUtils {
         return getProvisionedStateDir(installationDir).resolve(Constants.PROVISIONED_STATE_XML);
     }
 
+    public static Path getContentHashes(Path installationDir) {
+        return getProvisionedStateDir(installationDir).resolve(Constants.CONTENT_HASHES);
+    }
+
     public static Path getFeaturePackXml(Path installationDir, ArtifactCoords.Gav fpGav) {
         return getProvisionedStateDir(installationDir)
                 .resolve(Constants.FEATURE_PACKS)
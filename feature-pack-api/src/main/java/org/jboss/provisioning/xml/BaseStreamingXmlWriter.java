@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.provisioning.xml;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.jboss.provisioning.xml.util.ElementWriter;
+import org.jboss.provisioning.xml.util.FormattingXmlStreamWriter;
+
+/**
+ * Base class of the writers which write the document content directly to the stream
+ * (e.g. through an {@link ElementWriter}) instead of building the element tree first,
+ * which is meant for potentially large documents.
+ *
+ * @author Alexey Loubyansky
+ */
+abstract class BaseStreamingXmlWriter<T> {
+
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    protected static void ensureParentDir(Path p) throws IOException {
+        if(!Files.exists(p.getParent())) {
+            Files.createDirectories(p.getParent());
+        }
+    }
+
+    protected static void startElement(ElementWriter writer, XmlNameProvider e) throws XMLStreamException {
+        writer.startElement(e.getLocalName(), e.getNamespace());
+    }
+
+    protected static void addAttribute(ElementWriter writer, XmlNameProvider name, String value) {
+        writer.addAttribute(name.getLocalName(), value);
+    }
+
+    public void write(T t, Path outputFile) throws XMLStreamException, IOException {
+        ensureParentDir(outputFile);
+        try (FormattingXmlStreamWriter writer = new FormattingXmlStreamWriter(OUTPUT_FACTORY
+                .createXMLStreamWriter(Files.newBufferedWriter(outputFile, StandardOpenOption.CREATE)))) {
+            writer.writeStartDocument();
+            marshall(t, writer);
+            writer.writeEndDocument();
+        }
+    }
+
+    protected abstract void marshall(T t, XMLStreamWriter writer) throws XMLStreamException;
+}
@@ -16,29 +16,17 @@
  */
 package org.jboss.provisioning.xml;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
-
-import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
 import org.jboss.provisioning.xml.util.AttributeValue;
 import org.jboss.provisioning.xml.util.ElementNode;
-import org.jboss.provisioning.xml.util.FormattingXmlStreamWriter;
 
 /**
  *
  * @author Alexey Loubyansky
  */
-abstract class BaseXmlWriter<T> {
-
-    protected static void ensureParentDir(Path p) throws IOException {
-        if(!Files.exists(p.getParent())) {
-            Files.createDirectories(p.getParent());
-        }
-    }
+abstract class BaseXmlWriter<T> extends BaseStreamingXmlWriter<T> {
 
     protected static ElementNode addElement(ElementNode parent, XmlNameProvider e) {
         return addElement(parent, e.getLocalName(), e.getNamespace());
@@ -60,15 +48,9 @@ abstract class BaseXmlWriter<T> {
         e.addAttribute(name, new AttributeValue(value));
     }
 
-    public void write(T t, Path outputFile) throws XMLStreamException, IOException {
-        final ElementNode root = toElement(t);
-        ensureParentDir(outputFile);
-        try (FormattingXmlStreamWriter writer = new FormattingXmlStreamWriter(XMLOutputFactory.newInstance()
-                .createXMLStreamWriter(Files.newBufferedWriter(outputFile, StandardOpenOption.CREATE)))) {
-            writer.writeStartDocument();
-            root.marshall(writer);
-            writer.writeEndDocument();
-        }
+    @Override
+    protected final void marshall(T t, XMLStreamWriter writer) throws XMLStreamException {
+        toElement(t).marshall(writer);
     }
 
     protected abstract ElementNode toElement(T type) throws XMLStreamException;
@@ -0,0 +1,406 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.provisioning.xml;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.jboss.provisioning.Errors;
+import org.jboss.provisioning.ProvisioningException;
+import org.jboss.provisioning.plugin.ProvisionedConfigHandler;
+import org.jboss.provisioning.state.ProvisionedConfig;
+import org.jboss.provisioning.state.ProvisionedFeaturePack;
+import org.jboss.provisioning.state.ProvisionedState;
+
+/**
+ * Reads the provisioned state deferring the parsing of the configs.
+ *
+ * The first pass over the XML only locates the top level elements of the document without
+ * building any objects. The feature-pack elements and the config start tags are then parsed
+ * as usual, while the properties and the features of a config are parsed from the recorded
+ * location in the file the first time they are accessed. The structure of the installation
+ * is thus available without paying for the configs, which make up most of the document.
+ *
+ * @author Alexey Loubyansky
+ */
+public class LazyProvisionedStateReader {
+
+    public static ProvisionedState read(Path xml) throws IOException, XMLStreamException {
+        return new LazyProvisionedStateReader(xml).read();
+    }
+
+    private static class Child {
+        final boolean config;
+        final long start;
+        long end;
+        final byte[] startTag;
+
+        Child(boolean config, long start, byte[] startTag) {
+            this.config = config;
+            this.start = start;
+            this.startTag = startTag;
+        }
+    }
+
+    private class LazyConfig implements ProvisionedConfig {
+
+        private final String name;
+        private final String model;
+        private final Child child;
+        private ProvisionedConfig config;
+
+        LazyConfig(ProvisionedConfig header, Child child) {
+            this.name = header.getName();
+            this.model = header.getModel();
+            this.child = child;
+        }
+
+        synchronized ProvisionedConfig getConfig() throws ProvisioningException {
+            if(config == null) {
+                try {
+                    if(!Files.getLastModifiedTime(xml).equals(lastModified) || Files.size(xml) != size) {
+                        throw new ProvisioningException(Errors.fileChanged(xml));
+                    }
+                    final ByteArrayOutputStream doc = new ByteArrayOutputStream();
+                    doc.write(rootStartTag);
+                    doc.write(readRange(child.start, child.end));
+                    writeRootEnd(doc);
+                    config = parse(doc).getConfigs().get(0);
+                } catch (IOException | XMLStreamException e) {
+                    throw new ProvisioningException(Errors.parseXml(xml), e);
+                }
+            }
+            return config;
+        }
+
+        private ProvisionedConfig getConfigOrFail() {
+            try {
+                return getConfig();
+            } catch (ProvisioningException e) {
+                throw new IllegalStateException(e.getLocalizedMessage(), e);
+            }
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getModel() {
+            return model;
+        }
+
+        @Override
+        public boolean hasProperties() {
+            return getConfigOrFail().hasProperties();
+        }
+
+        @Override
+        public Map<String, String> getProperties() {
+            return getConfigOrFail().getProperties();
+        }
+
+        @Override
+        public boolean hasFeatures() {
+            return getConfigOrFail().hasFeatures();
+        }
+
+        @Override
+        public void handle(ProvisionedConfigHandler handler) throws ProvisioningException {
+            getConfig().handle(handler);
+        }
+
+        @Override
+        public int hashCode() {
+            return getConfigOrFail().hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (obj == null)
+                return false;
+            if (obj instanceof LazyConfig) {
+                obj = ((LazyConfig) obj).getConfigOrFail();
+            }
+            return getConfigOrFail().equals(obj);
+        }
+
+        @Override
+        public String toString() {
+            return getConfigOrFail().toString();
+        }
+    }
+
+    private final Path xml;
+    private FileTime lastModified;
+    private long size;
+    private InputStream in;
+    private long pos;
+    private byte[] rootStartTag;
+    private String rootName;
+    private final List<Child> children = new ArrayList<>();
+
+    private LazyProvisionedStateReader(Path xml) {
+        this.xml = xml;
+    }
+
+    private ProvisionedState read() throws IOException, XMLStreamException {
+        lastModified = Files.getLastModifiedTime(xml);
+        size = Files.size(xml);
+        try(InputStream is = new BufferedInputStream(Files.newInputStream(xml), 65536)) {
+            in = is;
+            scan();
+        } finally {
+            in = null;
+        }
+
+        // the feature-packs and the config start tags turned into empty elements
+        final ByteArrayOutputStream doc = new ByteArrayOutputStream();
+        doc.write(rootStartTag);
+        if(!children.isEmpty()) {
+            try(InputStream is = new BufferedInputStream(Files.newInputStream(xml))) {
+                long offset = 0;
+                for(Child child : children) {
+                    if(child.config) {
+                        if(child.startTag[child.startTag.length - 2] == '/') {
+                            doc.write(child.startTag);
+                        } else {
+                            doc.write(child.startTag, 0, child.startTag.length - 1);
+                            doc.write('/');
+                            doc.write('>');
+                        }
+                        continue;
+                    }
+                    skipFully(is, child.start - offset);
+                    final byte[] bytes = new byte[(int) (child.end - child.start)];
+                    readFully(is, bytes);
+                    doc.write(bytes);
+                    offset = child.end;
+                }
+            }
+        }
+        writeRootEnd(doc);
+
+        final ProvisionedState headers = parse(doc);
+        final ProvisionedState.Builder builder = ProvisionedState.builder();
+        for(ProvisionedFeaturePack fp : headers.getFeaturePacks()) {
+            builder.addFeaturePack(fp);
+        }
+        int configI = 0;
+        for(Child child : children) {
+            if(child.config) {
+                builder.addConfig(new LazyConfig(headers.getConfigs().get(configI++), child));
+            }
+        }
+        return builder.build();
+    }
+
+    private void scan() throws IOException, XMLStreamException {
+        final ByteArrayOutputStream tag = new ByteArrayOutputStream();
+        Child child = null;
+        int depth = 0;
+        int b = nextByte();
+        while(b >= 0) {
+            if(b != '<') {
+                b = nextByte();
+                continue;
+            }
+            final long tagStart = pos - 1;
+            b = nextRequiredByte();
+            if(b == '?') {
+                skipTo('?', '>');
+            } else if(b == '!') {
+                b = nextRequiredByte();
+                if(b == '-') {
+                    skipTo('-', '-', '>');
+                } else if(b == '[') {
+                    skipTo(']', ']', '>');
+                } else {
+                    skipTo('>');
+                }
+            } else if(b == '/') {
+                skipTo('>');
+                if(--depth == 1) {
+                    child.end = pos;
+                    child = null;
+                } else if(depth == 0) {
+                    return;
+                }
+            } else {
+                tag.reset();
+                tag.write('<');
+                tag.write(b);
+                final boolean empty = readStartTag(tag);
+                if(depth == 0) {
+                    rootStartTag = tag.toByteArray();
+                    rootName = elementName(rootStartTag);
+                    if(empty) {
+                        rootStartTag = Arrays.copyOf(rootStartTag, rootStartTag.length - 1);
+                        rootStartTag[rootStartTag.length - 1] = '>';
+                        return;
+                    }
+                } else if(depth == 1) {
+                    final byte[] startTag = tag.toByteArray();
+                    final String name = elementName(startTag);
+                    final boolean config = ProvisionedStateXmlParser10.Element.CONFIG.getLocalName().equals(name.substring(name.indexOf(':') + 1));
+                    child = new Child(config, tagStart, startTag);
+                    children.add(child);
+                    if(empty) {
+                        child.end = pos;
+                        child = null;
+                    }
+                }
+                if(!empty) {
+                    ++depth;
+                }
+            }
+            b = nextByte();
+        }
+        throw new XMLStreamException("Unexpected end of " + xml);
+    }
+
+    private boolean readStartTag(ByteArrayOutputStream tag) throws IOException, XMLStreamException {
+        int quote = 0;
+        int prev = 0;
+        while(true) {
+            final int b = nextRequiredByte();
+            tag.write(b);
+            if(quote != 0) {
+                if(b == quote) {
+                    quote = 0;
+                }
+            } else if(b == '"' || b == '\'') {
+                quote = b;
+            } else if(b == '>') {
+                return prev == '/';
+            }
+            prev = b;
+        }
+    }
+
+    private void skipTo(int... terminator) throws IOException, XMLStreamException {
+        final int[] last = new int[terminator.length];
+        int i = 0;
+        while(true) {
+            last[i++ % last.length] = nextRequiredByte();
+            if(i < last.length) {
+                continue;
+            }
+            int j = 0;
+            while(j < last.length && last[(i + j) % last.length] == terminator[j]) {
+                ++j;
+            }
+            if(j == last.length) {
+                return;
+            }
+        }
+    }
+
+    private int nextByte() throws IOException {
+        final int b = in.read();
+        if(b >= 0) {
+            ++pos;
+        }
+        return b;
+    }
+
+    private int nextRequiredByte() throws IOException, XMLStreamException {
+        final int b = nextByte();
+        if(b < 0) {
+            throw new XMLStreamException("Unexpected end of " + xml);
+        }
+        return b;
+    }
+
+    private byte[] readRange(long start, long end) throws IOException {
+        final ByteBuffer buf = ByteBuffer.allocate((int) (end - start));
+        try(FileChannel channel = FileChannel.open(xml, StandardOpenOption.READ)) {
+            while(buf.hasRemaining()) {
+                if(channel.read(buf, start + buf.position()) < 0) {
+                    throw new IOException("Unexpected end of " + xml);
+                }
+            }
+        }
+        return buf.array();
+    }
+
+    private void writeRootEnd(ByteArrayOutputStream doc) {
+        final byte[] name = rootName.getBytes(StandardCharsets.UTF_8);
+        doc.write('<');
+        doc.write('/');
+        doc.write(name, 0, name.length);
+        doc.write('>');
+    }
+
+    private static ProvisionedState parse(ByteArrayOutputStream doc) throws XMLStreamException {
+        final ProvisionedState.Builder builder = ProvisionedState.builder();
+        XmlParsers.parse(new StringReader(new String(doc.toByteArray(), StandardCharsets.UTF_8)), builder);
+        return builder.build();
+    }
+
+    private static String elementName(byte[] startTag) {
+        int i = 1;
+        while(i < startTag.length) {
+            final byte b = startTag[i];
+            if(b == '>' || b == '/' || Character.isWhitespace(b)) {
+                break;
+            }
+            ++i;
+        }
+        return new String(startTag, 1, i - 1, StandardCharsets.UTF_8);
+    }
+
+    private void skipFully(InputStream is, long n) throws IOException {
+        while(n > 0) {
+            final long skipped = is.skip(n);
+            if(skipped <= 0) {
+                throw new IOException("Unexpected end of " + xml);
+            }
+            n -= skipped;
+        }
+    }
+
+    private void readFully(InputStream is, byte[] bytes) throws IOException {
+        int off = 0;
+        while(off < bytes.length) {
+            final int read = is.read(bytes, off, bytes.length - off);
+            if(read < 0) {
+                throw new IOException("Unexpected end of " + xml);
+            }
+            off += read;
+        }
+    }
+}
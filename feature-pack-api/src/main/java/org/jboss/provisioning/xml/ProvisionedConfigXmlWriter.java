@@ -19,6 +19,7 @@ package org.jboss.provisioning.xml;
 import java.util.Map;
 
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
 import org.jboss.provisioning.ArtifactCoords;
 import org.jboss.provisioning.ProvisioningException;
@@ -28,50 +29,83 @@ import org.jboss.provisioning.state.ProvisionedConfig;
 import org.jboss.provisioning.state.ProvisionedFeature;
 import org.jboss.provisioning.xml.ProvisionedStateXmlParser10.Attribute;
 import org.jboss.provisioning.xml.ProvisionedStateXmlParser10.Element;
-import org.jboss.provisioning.xml.util.ElementNode;
+import org.jboss.provisioning.xml.util.ElementWriter;
 
 /**
  *
  * @author Alexey Loubyansky
  */
-public class ProvisionedConfigXmlWriter extends BaseXmlWriter<ProvisionedConfig> {
+public class ProvisionedConfigXmlWriter extends BaseStreamingXmlWriter<ProvisionedConfig> {
 
     private static class XmlConfigHandler implements ProvisionedConfigHandler {
 
-        private final ElementNode parent;
-        private ElementNode fpElement;
-        private ElementNode specElement;
+        private final ElementWriter writer;
+        private boolean fpStarted;
+        private boolean specStarted;
 
-        XmlConfigHandler(ElementNode parent) {
-            this.parent = parent;
+        XmlConfigHandler(ElementWriter writer) {
+            this.writer = writer;
         }
 
         @Override
-        public void nextFeaturePack(ArtifactCoords.Gav fpGav) {
-            fpElement = addElement(parent, Element.FEATURE_PACK);
-            addAttribute(fpElement, Attribute.GROUP_ID, fpGav.getGroupId());
-            addAttribute(fpElement, Attribute.ARTIFACT_ID, fpGav.getArtifactId());
-            addAttribute(fpElement, Attribute.VERSION, fpGav.getVersion());
+        public void nextFeaturePack(ArtifactCoords.Gav fpGav) throws ProvisioningException {
+            try {
+                endFeaturePack();
+                startElement(writer, Element.FEATURE_PACK);
+                addAttribute(writer, Attribute.GROUP_ID, fpGav.getGroupId());
+                addAttribute(writer, Attribute.ARTIFACT_ID, fpGav.getArtifactId());
+                addAttribute(writer, Attribute.VERSION, fpGav.getVersion());
+                fpStarted = true;
+            } catch (XMLStreamException e) {
+                throw new ProvisioningException(e);
+            }
         }
 
         @Override
-        public void nextSpec(ResolvedFeatureSpec spec) {
-            specElement = addElement(fpElement, Element.SPEC);
-            addAttribute(specElement, Attribute.NAME, spec.getId().getName());
+        public void nextSpec(ResolvedFeatureSpec spec) throws ProvisioningException {
+            try {
+                endSpec();
+                startElement(writer, Element.SPEC);
+                addAttribute(writer, Attribute.NAME, spec.getId().getName());
+                specStarted = true;
+            } catch (XMLStreamException e) {
+                throw new ProvisioningException(e);
+            }
         }
 
         @Override
-        public void nextFeature(ProvisionedFeature feature) {
-            final ElementNode featureE = addElement(specElement, Element.FEATURE);
-            if(feature.hasId()) {
-                addAttribute(featureE, Attribute.ID, feature.getId().toString());
-            }
-            if(feature.hasParams()) {
-                for(Map.Entry<String, Object> entry : feature.getResolvedParams().entrySet()) {
-                    final ElementNode paramE = addElement(featureE, Element.PARAM);
-                    addAttribute(paramE, Attribute.NAME, entry.getKey());
-                    addAttribute(paramE, Attribute.VALUE, entry.getValue().toString());
+        public void nextFeature(ProvisionedFeature feature) throws ProvisioningException {
+            try {
+                startElement(writer, Element.FEATURE);
+                if(feature.hasId()) {
+                    addAttribute(writer, Attribute.ID, feature.getId().toString());
                 }
+                if(feature.hasParams()) {
+                    for(Map.Entry<String, Object> entry : feature.getResolvedParams().entrySet()) {
+                        startElement(writer, Element.PARAM);
+                        addAttribute(writer, Attribute.NAME, entry.getKey());
+                        addAttribute(writer, Attribute.VALUE, entry.getValue().toString());
+                        writer.endElement();
+                    }
+                }
+                writer.endElement();
+            } catch (XMLStreamException e) {
+                throw new ProvisioningException(e);
+            }
+        }
+
+        void endFeaturePack() throws XMLStreamException {
+            endSpec();
+            if(fpStarted) {
+                writer.endElement();
+                fpStarted = false;
+            }
+        }
+
+        private void endSpec() throws XMLStreamException {
+            if(specStarted) {
+                writer.endElement();
+                specStarted = false;
             }
         }
     }
@@ -85,31 +119,40 @@ public class ProvisionedConfigXmlWriter extends BaseXmlWriter<ProvisionedConfig>
     private ProvisionedConfigXmlWriter() {
     }
 
-    protected ElementNode toElement(ProvisionedConfig config) throws XMLStreamException {
-        final ElementNode configE = addElement(null, Element.CONFIG);
+    @Override
+    protected void marshall(ProvisionedConfig config, XMLStreamWriter writer) throws XMLStreamException {
+        writeConfig(new ElementWriter(writer), config);
+    }
+
+    void writeConfig(ElementWriter writer, ProvisionedConfig config) throws XMLStreamException {
+        startElement(writer, Element.CONFIG);
         if(config.getName() != null) {
-            addAttribute(configE, Attribute.NAME, config.getName());
+            addAttribute(writer, Attribute.NAME, config.getName());
         }
         if(config.getModel() != null) {
-            addAttribute(configE, Attribute.MODEL, config.getModel());
+            addAttribute(writer, Attribute.MODEL, config.getModel());
         }
 
         if(config.hasProperties()) {
-            final ElementNode propsE = addElement(configE, Element.PROPS);
+            startElement(writer, Element.PROPS);
             for(Map.Entry<String, String> entry : config.getProperties().entrySet()) {
-                final ElementNode propE = addElement(propsE, Element.PROP);
-                addAttribute(propE, Attribute.NAME, entry.getKey());
-                addAttribute(propE, Attribute.VALUE, entry.getValue());
+                startElement(writer, Element.PROP);
+                addAttribute(writer, Attribute.NAME, entry.getKey());
+                addAttribute(writer, Attribute.VALUE, entry.getValue());
+                writer.endElement();
             }
+            writer.endElement();
         }
 
         if(config.hasFeatures()) {
+            final XmlConfigHandler handler = new XmlConfigHandler(writer);
             try {
-                config.handle(new XmlConfigHandler(configE));
+                config.handle(handler);
             } catch (ProvisioningException e) {
                 throw new XMLStreamException("Failed to marshal ProvisionedConfig", e);
             }
+            handler.endFeaturePack();
         }
-        return configE;
+        writer.endElement();
     }
 }
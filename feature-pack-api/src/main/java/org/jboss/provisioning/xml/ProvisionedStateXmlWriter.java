@@ -17,6 +17,7 @@
 package org.jboss.provisioning.xml;
 
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
 import org.jboss.provisioning.state.FeaturePack;
 import org.jboss.provisioning.state.FeaturePackPackage;
@@ -24,13 +25,13 @@ import org.jboss.provisioning.state.FeaturePackSet;
 import org.jboss.provisioning.state.ProvisionedConfig;
 import org.jboss.provisioning.xml.ProvisionedStateXmlParser10.Attribute;
 import org.jboss.provisioning.xml.ProvisionedStateXmlParser10.Element;
-import org.jboss.provisioning.xml.util.ElementNode;
+import org.jboss.provisioning.xml.util.ElementWriter;
 
 /**
  *
  * @author Alexey Loubyansky
  */
-public class ProvisionedStateXmlWriter extends BaseXmlWriter<FeaturePackSet<?>> {
+public class ProvisionedStateXmlWriter extends BaseStreamingXmlWriter<FeaturePackSet<?>> {
 
     private static final ProvisionedStateXmlWriter INSTANCE = new ProvisionedStateXmlWriter();
 
@@ -42,39 +43,42 @@ public class ProvisionedStateXmlWriter extends BaseXmlWriter<FeaturePackSet<?>>
     }
 
     @Override
-    protected ElementNode toElement(FeaturePackSet<?> provisionedState) throws XMLStreamException {
-
-        final ElementNode pkg = addElement(null, Element.INSTALLATION);
+    protected void marshall(FeaturePackSet<?> provisionedState, XMLStreamWriter xmlWriter) throws XMLStreamException {
+        final ElementWriter writer = new ElementWriter(xmlWriter);
+        startElement(writer, Element.INSTALLATION);
 
         if (provisionedState.hasFeaturePacks()) {
             for(FeaturePack<?> fp : provisionedState.getFeaturePacks()) {
-                final ElementNode fpElement = addElement(pkg, Element.FEATURE_PACK);
-                writeFeaturePack(fpElement, fp);
+                writeFeaturePack(writer, fp);
             }
         }
 
         if(provisionedState.hasConfigs()) {
             for(ProvisionedConfig config : provisionedState.getConfigs()) {
-                pkg.addChild(ProvisionedConfigXmlWriter.getInstance().toElement(config));
+                ProvisionedConfigXmlWriter.getInstance().writeConfig(writer, config);
             }
         }
 
-        return pkg;
+        writer.endElement();
     }
 
-    private void writeFeaturePack(ElementNode fp, FeaturePack<?> featurePack) {
-        addAttribute(fp, Attribute.GROUP_ID, featurePack.getGav().getGroupId());
-        addAttribute(fp, Attribute.ARTIFACT_ID, featurePack.getGav().getArtifactId());
+    private void writeFeaturePack(ElementWriter writer, FeaturePack<?> featurePack) throws XMLStreamException {
+        startElement(writer, Element.FEATURE_PACK);
+        addAttribute(writer, Attribute.GROUP_ID, featurePack.getGav().getGroupId());
+        addAttribute(writer, Attribute.ARTIFACT_ID, featurePack.getGav().getArtifactId());
         if (featurePack.getGav().getVersion() != null) {
-            addAttribute(fp, Attribute.VERSION, featurePack.getGav().getVersion());
+            addAttribute(writer, Attribute.VERSION, featurePack.getGav().getVersion());
         }
 
         if (featurePack.hasPackages()) {
-            final ElementNode packages = addElement(fp, Element.PACKAGES);
+            startElement(writer, Element.PACKAGES);
             for (FeaturePackPackage pkg : featurePack.getPackages()) {
-                final ElementNode pkgElement = addElement(packages, Element.PACKAGE);
-                addAttribute(pkgElement, Attribute.NAME, pkg.getName());
+                startElement(writer, Element.PACKAGE);
+                addAttribute(writer, Attribute.NAME, pkg.getName());
+                writer.endElement();
             }
+            writer.endElement();
         }
+        writer.endElement();
     }
 }
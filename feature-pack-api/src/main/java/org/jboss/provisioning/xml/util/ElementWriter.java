@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.provisioning.xml.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Writes elements straight to an {@link XMLStreamWriter} producing the same output
+ * {@link ElementNode#marshall(XMLStreamWriter)} would for the equivalent element tree.
+ *
+ * Whether an element is written as an empty element is known only once the next element
+ * is started or the element is ended, so the start of the last element is held back until then.
+ * Apart from the attributes of that one element nothing is buffered.
+ *
+ * @author Alexey Loubyansky
+ */
+public class ElementWriter {
+
+    private final XMLStreamWriter writer;
+    private String pendingName;
+    private String pendingNs;
+    private final List<String> attrNames = new ArrayList<>();
+    private final List<String> attrValues = new ArrayList<>();
+
+    public ElementWriter(XMLStreamWriter writer) {
+        this.writer = writer;
+    }
+
+    public void startElement(String name, String namespace) throws XMLStreamException {
+        if(pendingName != null) {
+            writePending(false);
+        }
+        pendingName = name;
+        pendingNs = namespace == null || namespace.isEmpty() ? null : namespace;
+    }
+
+    public void addAttribute(String name, String value) {
+        if(pendingName == null) {
+            throw new IllegalStateException("Attribute " + name + " is written after the content of the element");
+        }
+        final int i = attrNames.indexOf(name);
+        if(i >= 0) {
+            attrValues.set(i, value);
+            return;
+        }
+        attrNames.add(name);
+        attrValues.add(value);
+    }
+
+    public void endElement() throws XMLStreamException {
+        if(pendingName != null) {
+            writePending(true);
+        } else {
+            writer.writeEndElement();
+        }
+    }
+
+    private void writePending(boolean empty) throws XMLStreamException {
+        final String prefix = writer.getNamespaceContext().getPrefix(pendingNs);
+        if (prefix == null) {
+            // Unknown namespace; it becomes default
+            writer.setDefaultNamespace(pendingNs);
+            if (empty) {
+                writer.writeEmptyElement(pendingName);
+            } else {
+                writer.writeStartElement(pendingName);
+            }
+            writer.writeNamespace(null, pendingNs);
+        } else if (empty) {
+            writer.writeEmptyElement(pendingNs, pendingName);
+        } else {
+            writer.writeStartElement(pendingNs, pendingName);
+        }
+        for(int i = 0; i < attrNames.size(); ++i) {
+            writer.writeAttribute(attrNames.get(i), attrValues.get(i));
+        }
+        attrNames.clear();
+        attrValues.clear();
+        pendingName = null;
+        pendingNs = null;
+    }
+}
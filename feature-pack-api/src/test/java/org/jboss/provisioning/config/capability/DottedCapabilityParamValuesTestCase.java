@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.provisioning.config.capability;
+
+import org.jboss.provisioning.ArtifactCoords;
+import org.jboss.provisioning.ArtifactCoords.Gav;
+import org.jboss.provisioning.ProvisioningDescriptionException;
+import org.jboss.provisioning.ProvisioningException;
+import org.jboss.provisioning.config.FeatureConfig;
+import org.jboss.provisioning.config.FeaturePackConfig;
+import org.jboss.provisioning.repomanager.FeaturePackRepositoryManager;
+import org.jboss.provisioning.runtime.ResolvedFeatureId;
+import org.jboss.provisioning.spec.ConfigSpec;
+import org.jboss.provisioning.spec.FeatureParameterSpec;
+import org.jboss.provisioning.spec.FeatureSpec;
+import org.jboss.provisioning.state.ProvisionedFeaturePack;
+import org.jboss.provisioning.state.ProvisionedState;
+import org.jboss.provisioning.test.PmInstallFeaturePackTestBase;
+import org.jboss.provisioning.xml.ProvisionedConfigBuilder;
+import org.jboss.provisioning.xml.ProvisionedFeatureBuilder;
+
+/**
+ *
+ * @author Alexey Loubyansky
+ */
+public class DottedCapabilityParamValuesTestCase extends PmInstallFeaturePackTestBase {
+
+    private static final Gav FP_GAV = ArtifactCoords.newGav("org.jboss.pm.test", "fp1", "1.0.0.Final");
+
+    @Override
+    protected void setupRepo(FeaturePackRepositoryManager repoManager) throws ProvisioningDescriptionException {
+        repoManager.installer()
+        .newFeaturePack(FP_GAV)
+            .addSpec(FeatureSpec.builder("specA")
+                    .providesCapability("cap.$a")
+                    .addParam(FeatureParameterSpec.createId("a"))
+                    .build())
+            .addSpec(FeatureSpec.builder("specB")
+                    .requiresCapability("cap.x.$b")
+                    .addParam(FeatureParameterSpec.createId("b"))
+                    .build())
+            .addSpec(FeatureSpec.builder("specC")
+                    .providesCapability("cap.z.w")
+                    .addParam(FeatureParameterSpec.createId("c"))
+                    .build())
+            .addSpec(FeatureSpec.builder("specD")
+                    .requiresCapability("$d")
+                    .addParam(FeatureParameterSpec.createId("d"))
+                    .build())
+            .addConfig(ConfigSpec.builder()
+                    .addFeature(
+                            new FeatureConfig("specB")
+                            .setParam("b", "y"))
+                    .addFeature(
+                            new FeatureConfig("specD")
+                            .setParam("d", "cap.z.w"))
+                    .addFeature(
+                            new FeatureConfig("specA")
+                            .setParam("a", "x.y"))
+                    .addFeature(
+                            new FeatureConfig("specC")
+                            .setParam("c", "c1"))
+                    .build())
+            .getInstaller()
+        .install();
+    }
+
+    @Override
+    protected FeaturePackConfig featurePackConfig() {
+        return FeaturePackConfig.forGav(FP_GAV);
+    }
+
+    @Override
+    protected ProvisionedState provisionedState() throws ProvisioningException {
+        return ProvisionedState.builder()
+                .addFeaturePack(ProvisionedFeaturePack.forGav(FP_GAV))
+                .addConfig(ProvisionedConfigBuilder.builder()
+                        .addFeature(ProvisionedFeatureBuilder.builder(ResolvedFeatureId.create(FP_GAV, "specA", "a", "x.y")).build())
+                        .addFeature(ProvisionedFeatureBuilder.builder(ResolvedFeatureId.create(FP_GAV, "specB", "b", "y")).build())
+                        .addFeature(ProvisionedFeatureBuilder.builder(ResolvedFeatureId.create(FP_GAV, "specC", "c", "c1")).build())
+                        .addFeature(ProvisionedFeatureBuilder.builder(ResolvedFeatureId.create(FP_GAV, "specD", "d", "cap.z.w")).build())
+                        .build())
+                .build();
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.provisioning.config.feature.group;
+
+import org.jboss.provisioning.ArtifactCoords;
+import org.jboss.provisioning.ArtifactCoords.Gav;
+import org.jboss.provisioning.ProvisioningDescriptionException;
+import org.jboss.provisioning.ProvisioningException;
+import org.jboss.provisioning.config.FeatureConfig;
+import org.jboss.provisioning.config.FeatureGroupConfig;
+import org.jboss.provisioning.config.FeaturePackConfig;
+import org.jboss.provisioning.runtime.ResolvedFeatureId;
+import org.jboss.provisioning.spec.ConfigSpec;
+import org.jboss.provisioning.spec.FeatureGroupSpec;
+import org.jboss.provisioning.spec.FeatureId;
+import org.jboss.provisioning.spec.FeatureParameterSpec;
+import org.jboss.provisioning.spec.FeatureSpec;
+import org.jboss.provisioning.state.ProvisionedFeaturePack;
+import org.jboss.provisioning.state.ProvisionedState;
+import org.jboss.provisioning.test.PmInstallFeaturePackTestBase;
+import org.jboss.provisioning.repomanager.FeaturePackRepositoryManager;
+import org.jboss.provisioning.xml.ProvisionedConfigBuilder;
+import org.jboss.provisioning.xml.ProvisionedFeatureBuilder;
+
+/**
+ * The exclusions of the config are inherited by the feature groups nested at any depth,
+ * while the exclusions of a nested feature group config apply only to that group.
+ *
+ * @author Alexey Loubyansky
+ */
+public class NestedFeatureGroupInheritedExclusionsTestCase extends PmInstallFeaturePackTestBase {
+
+    private static final Gav FP_GAV = ArtifactCoords.newGav("org.jboss.pm.test", "fp1", "1.0.0.Final");
+
+    @Override
+    protected void setupRepo(FeaturePackRepositoryManager repoManager) throws ProvisioningDescriptionException {
+        repoManager.installer()
+        .newFeaturePack(FP_GAV)
+            .addSpec(FeatureSpec.builder("specA")
+                    .addParam(FeatureParameterSpec.createId("name"))
+                    .addParam(FeatureParameterSpec.create("a", true))
+                    .build())
+            .addSpec(FeatureSpec.builder("specB")
+                    .addParam(FeatureParameterSpec.createId("name"))
+                    .addParam(FeatureParameterSpec.create("b", true))
+                    .build())
+            .addFeatureGroup(FeatureGroupSpec.builder("fg1")
+                    .addFeatureGroup(FeatureGroupConfig.builder("fg2")
+                            .excludeFeature(FeatureId.create("specA", "name", "aTwo"))
+                            .excludeSpec("specB")
+                            .build())
+                    .addFeatureGroup(FeatureGroupConfig.forGroup("fg3"))
+                    .build())
+            .addFeatureGroup(FeatureGroupSpec.builder("fg2")
+                    .addFeature(
+                            new FeatureConfig("specA")
+                            .setParam("name", "aOne")
+                            .setParam("a", "aOne"))
+                    .addFeature(
+                            new FeatureConfig("specA")
+                            .setParam("name", "aTwo")
+                            .setParam("a", "aTwo"))
+                    .addFeature(
+                            new FeatureConfig("specB")
+                            .setParam("name", "bOne")
+                            .setParam("b", "bOne"))
+                    .build())
+            .addFeatureGroup(FeatureGroupSpec.builder("fg3")
+                    .addFeatureGroup(FeatureGroupConfig.forGroup("fg4"))
+                    .addFeature(
+                            new FeatureConfig("specA")
+                            .setParam("name", "aThree")
+                            .setParam("a", "aThree"))
+                    .addFeature(
+                            new FeatureConfig("specB")
+                            .setParam("name", "bTwo")
+                            .setParam("b", "bTwo"))
+                    .build())
+            .addFeatureGroup(FeatureGroupSpec.builder("fg4")
+                    .addFeature(
+                            new FeatureConfig("specA")
+                            .setParam("name", "aFour")
+                            .setParam("a", "aFour"))
+                    .addFeature(
+                            new FeatureConfig("specB")
+                            .setParam("name", "bThree")
+                            .setParam("b", "bThree"))
+                    .build())
+            .addConfig(ConfigSpec.builder()
+                    .addFeatureGroup(FeatureGroupConfig.builder("fg1")
+                            .excludeFeature(FeatureId.create("specA", "name", "aThree"))
+                            .excludeFeature(FeatureId.create("specB", "name", "bThree"))
+                            .build())
+                    .build())
+            .getInstaller()
+        .install();
+    }
+
+    @Override
+    protected FeaturePackConfig featurePackConfig() {
+        return FeaturePackConfig.forGav(FP_GAV);
+    }
+
+    @Override
+    protected ProvisionedState provisionedState() throws ProvisioningException {
+        return ProvisionedState.builder()
+                .addFeaturePack(ProvisionedFeaturePack.forGav(FP_GAV))
+                .addConfig(ProvisionedConfigBuilder.builder()
+                        .addFeature(ProvisionedFeatureBuilder.builder(ResolvedFeatureId.create(FP_GAV, "specA", "name", "aOne"))
+                                .setConfigParam("a", "aOne")
+                                .build())
+                        .addFeature(ProvisionedFeatureBuilder.builder(ResolvedFeatureId.create(FP_GAV, "specA", "name", "aFour"))
+                                .setConfigParam("a", "aFour")
+                                .build())
+                        .addFeature(ProvisionedFeatureBuilder.builder(ResolvedFeatureId.create(FP_GAV, "specB", "name", "bTwo"))
+                                .setConfigParam("b", "bTwo")
+                                .build())
+                        .build())
+                .build();
+    }
+}
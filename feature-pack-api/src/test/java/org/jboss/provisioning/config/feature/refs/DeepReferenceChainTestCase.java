@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.provisioning.config.feature.refs;
+
+import org.jboss.provisioning.ArtifactCoords;
+import org.jboss.provisioning.ArtifactCoords.Gav;
+import org.jboss.provisioning.ProvisioningDescriptionException;
+import org.jboss.provisioning.ProvisioningException;
+import org.jboss.provisioning.config.FeatureConfig;
+import org.jboss.provisioning.config.FeaturePackConfig;
+import org.jboss.provisioning.repomanager.FeaturePackRepositoryManager;
+import org.jboss.provisioning.runtime.ResolvedFeatureId;
+import org.jboss.provisioning.spec.ConfigSpec;
+import org.jboss.provisioning.spec.FeatureParameterSpec;
+import org.jboss.provisioning.spec.FeatureReferenceSpec;
+import org.jboss.provisioning.spec.FeatureSpec;
+import org.jboss.provisioning.state.ProvisionedFeaturePack;
+import org.jboss.provisioning.state.ProvisionedState;
+import org.jboss.provisioning.test.PmInstallFeaturePackTestBase;
+import org.jboss.provisioning.xml.ProvisionedConfigBuilder;
+import org.jboss.provisioning.xml.ProvisionedFeatureBuilder;
+
+/**
+ * A reference chain that is too long to be ordered using the call stack.
+ *
+ * @author Alexey Loubyansky
+ */
+public class DeepReferenceChainTestCase extends PmInstallFeaturePackTestBase {
+
+    private static final Gav FP_GAV = ArtifactCoords.newGav("org.jboss.pm.test", "fp1", "1.0.0.Final");
+
+    private static final int LENGTH = 20000;
+
+    @Override
+    protected void setupRepo(FeaturePackRepositoryManager repoManager) throws ProvisioningDescriptionException {
+        final ConfigSpec.Builder config = ConfigSpec.builder();
+        for(int i = 0; i < LENGTH; ++i) {
+            final FeatureConfig link = new FeatureConfig("Link").setParam("name", "l" + i);
+            if(i < LENGTH - 1) {
+                link.setParam("next", "l" + (i + 1));
+            }
+            config.addFeature(link);
+        }
+        repoManager.installer()
+        .newFeaturePack(FP_GAV)
+            .addSpec(FeatureSpec.builder("Link")
+                    .addParam(FeatureParameterSpec.createId("name"))
+                    .addParam(FeatureParameterSpec.create("next", true))
+                    .addFeatureRef(FeatureReferenceSpec.builder("Link")
+                            .setName("next")
+                            .setNillable(true)
+                            .mapParam("next", "name")
+                            .build())
+                    .build())
+            .addConfig(config.build())
+            .getInstaller()
+        .install();
+    }
+
+    @Override
+    protected FeaturePackConfig featurePackConfig() {
+        return FeaturePackConfig.forGav(FP_GAV);
+    }
+
+    @Override
+    protected ProvisionedState provisionedState() throws ProvisioningException {
+        final ProvisionedConfigBuilder config = ProvisionedConfigBuilder.builder();
+        for(int i = LENGTH - 1; i >= 0; --i) {
+            final ProvisionedFeatureBuilder link = ProvisionedFeatureBuilder.builder(ResolvedFeatureId.create(FP_GAV, "Link", "name", "l" + i));
+            if(i < LENGTH - 1) {
+                link.setConfigParam("next", "l" + (i + 1));
+            }
+            config.addFeature(link.build());
+        }
+        return ProvisionedState.builder()
+                .addFeaturePack(ProvisionedFeaturePack.forGav(FP_GAV))
+                .addConfig(config.build())
+                .build();
+    }
+}
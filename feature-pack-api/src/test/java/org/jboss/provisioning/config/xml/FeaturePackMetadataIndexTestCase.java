@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.provisioning.config.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.BufferedReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.jboss.provisioning.Constants;
+import org.jboss.provisioning.layout.FeaturePackMetadataIndex;
+import org.jboss.provisioning.spec.FeatureSpec;
+import org.jboss.provisioning.spec.PackageSpec;
+import org.jboss.provisioning.util.IoUtils;
+import org.jboss.provisioning.xml.FeatureSpecXmlParser;
+import org.jboss.provisioning.xml.PackageXmlWriter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Alexey Loubyansky
+ */
+public class FeaturePackMetadataIndexTestCase {
+
+    private Path fpDir;
+
+    @Before
+    public void init() throws Exception {
+        fpDir = IoUtils.createRandomTmpDir();
+    }
+
+    @After
+    public void cleanup() {
+        IoUtils.recursiveDelete(fpDir);
+    }
+
+    @Test
+    public void testFeatureSpecs() throws Exception {
+        copySpec("full");
+        copySpec("simple");
+        FeaturePackMetadataIndex.write(fpDir);
+
+        final FeaturePackMetadataIndex index = FeaturePackMetadataIndex.read(fpDir);
+        assertEquals(parseFeature("full"), index.getFeatureSpec("full"));
+        assertEquals(parseFeature("simple"), index.getFeatureSpec("simple"));
+        assertNull(index.getFeatureSpec("other"));
+        assertFalse(index.hasPackage("full"));
+    }
+
+    @Test
+    public void testPackageSpecs() throws Exception {
+        final PackageSpec p1 = PackageSpec.builder("p1")
+                .addPackageDep("p2")
+                .addPackageDep("p3", true)
+                .addPackageDep("fp-dep", "p4")
+                .addPackageDep("fp-dep", "p5", true)
+                .build();
+        final PackageSpec p2 = PackageSpec.forName("p2");
+        writePackage(p1);
+        writePackage(p2);
+        FeaturePackMetadataIndex.write(fpDir);
+
+        final FeaturePackMetadataIndex index = FeaturePackMetadataIndex.read(fpDir);
+        assertEquals(p1, index.getPackageSpec("p1"));
+        assertEquals(p2, index.getPackageSpec("p2"));
+        assertNull(index.getPackageSpec("p3"));
+        assertFalse(index.hasFeatureSpec("p1"));
+    }
+
+    @Test
+    public void testChangedXmlIsNotIndexed() throws Exception {
+        copySpec("full");
+        copySpec("simple");
+        writePackage(PackageSpec.forName("p1"));
+        writePackage(PackageSpec.forName("p2"));
+        FeaturePackMetadataIndex.write(fpDir);
+
+        IoUtils.copy(getResource("xml/feature/spec/full-spec.xml"), fpDir.resolve(Constants.FEATURES).resolve("simple").resolve(Constants.SPEC_XML));
+        writePackage(PackageSpec.builder("p2").addPackageDep("p1").build());
+
+        final FeaturePackMetadataIndex index = FeaturePackMetadataIndex.read(fpDir);
+        assertEquals(parseFeature("full"), index.getFeatureSpec("full"));
+        assertNull(index.getFeatureSpec("simple"));
+        assertEquals(PackageSpec.forName("p1"), index.getPackageSpec("p1"));
+        assertNull(index.getPackageSpec("p2"));
+    }
+
+    @Test
+    public void testNoIndex() throws Exception {
+        assertNull(FeaturePackMetadataIndex.read(fpDir));
+    }
+
+    private void copySpec(String name) throws Exception {
+        final Path featureDir = fpDir.resolve(Constants.FEATURES).resolve(name);
+        Files.createDirectories(featureDir);
+        IoUtils.copy(getResource("xml/feature/spec/" + name + "-spec.xml"), featureDir.resolve(Constants.SPEC_XML));
+    }
+
+    private void writePackage(PackageSpec spec) throws Exception {
+        final Path pkgDir = fpDir.resolve(Constants.PACKAGES).resolve(spec.getName());
+        Files.createDirectories(pkgDir);
+        PackageXmlWriter.getInstance().write(spec, pkgDir.resolve(Constants.PACKAGE_XML));
+    }
+
+    private FeatureSpec parseFeature(String name) throws Exception {
+        try (BufferedReader reader = Files.newBufferedReader(fpDir.resolve(Constants.FEATURES).resolve(name).resolve(Constants.SPEC_XML))) {
+            return FeatureSpecXmlParser.getInstance().parse(reader);
+        }
+    }
+
+    private static Path getResource(String path) {
+        java.net.URL resUrl = Thread.currentThread().getContextClassLoader().getResource(path);
+        Assert.assertNotNull("Resource " + path + " is not on the classpath", resUrl);
+        try {
+            return Paths.get(resUrl.toURI());
+        } catch (java.net.URISyntaxException e) {
+            throw new IllegalStateException("Failed to get URI from URL", e);
+        }
+    }
+}
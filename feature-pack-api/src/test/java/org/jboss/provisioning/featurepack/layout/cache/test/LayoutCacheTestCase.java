@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.provisioning.featurepack.layout.cache.test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.jboss.provisioning.ArtifactCoords;
+import org.jboss.provisioning.ProvisioningDescriptionException;
+import org.jboss.provisioning.ProvisioningException;
+import org.jboss.provisioning.ProvisioningManager;
+import org.jboss.provisioning.config.FeaturePackConfig;
+import org.jboss.provisioning.repomanager.FeaturePackRepositoryManager;
+import org.jboss.provisioning.runtime.FeaturePackLayoutCache;
+import org.jboss.provisioning.state.ProvisionedFeaturePack;
+import org.jboss.provisioning.state.ProvisionedState;
+import org.jboss.provisioning.test.PmInstallFeaturePackTestBase;
+import org.jboss.provisioning.test.util.TestUtils;
+import org.jboss.provisioning.test.util.fs.state.DirState;
+import org.jboss.provisioning.test.util.fs.state.DirState.DirBuilder;
+import org.jboss.provisioning.util.IoUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Alexey Loubyansky
+ */
+public class LayoutCacheTestCase extends PmInstallFeaturePackTestBase {
+
+    private static final ArtifactCoords.Gav FP1_GAV = ArtifactCoords.newGav("org.jboss.pm.test", "fp1", "1.0.0.Final");
+    private static final ArtifactCoords.Gav FP2_GAV = ArtifactCoords.newGav("org.jboss.pm.test", "fp2", "2.0.0.Final");
+    private static final ArtifactCoords.Gav FP3_GAV = ArtifactCoords.newGav("org.jboss.pm.test", "fp3", "3.0.0.Final");
+
+    private Path cacheDir;
+
+    @Override
+    protected void doBefore() throws Exception {
+        cacheDir = TestUtils.mkRandomTmpDir();
+        super.doBefore();
+    }
+
+    @Override
+    protected void doAfter() throws Exception {
+        super.doAfter();
+        IoUtils.recursiveDelete(cacheDir);
+    }
+
+    @Override
+    protected ProvisioningManager getPm() {
+        return getPm(Long.MAX_VALUE);
+    }
+
+    private ProvisioningManager getPm(long maxCacheSize) {
+        return ProvisioningManager.builder()
+                .setArtifactResolver(getRepoManager())
+                .setInstallationHome(installHome)
+                .setLayoutCache(FeaturePackLayoutCache.newInstance(cacheDir, maxCacheSize))
+                .build();
+    }
+
+    @Override
+    protected void setupRepo(FeaturePackRepositoryManager repoManager) throws ProvisioningDescriptionException {
+        repoManager.installer()
+            .newFeaturePack(FP1_GAV)
+                .addDependency(FeaturePackConfig.forGav(FP2_GAV))
+                .newPackage("main", true)
+                    .writeContent("f/p1/a.txt", "a")
+                    .getFeaturePack()
+                .getInstaller()
+            .newFeaturePack(FP2_GAV)
+                .newPackage("main", true)
+                    .writeContent("f/p2/b.txt", "b")
+                    .getFeaturePack()
+                .getInstaller()
+            .newFeaturePack(FP3_GAV)
+                .newPackage("main", true)
+                    .writeContent("f/p3/c.txt", "c")
+                    .getFeaturePack()
+                .getInstaller()
+            .install();
+    }
+
+    @Override
+    protected FeaturePackConfig featurePackConfig() throws ProvisioningDescriptionException {
+        return FeaturePackConfig.forGav(FP1_GAV);
+    }
+
+    @Override
+    protected ProvisionedState provisionedState() throws ProvisioningException {
+        return ProvisionedState.builder()
+                .addFeaturePack(ProvisionedFeaturePack.builder(FP1_GAV)
+                        .addPackage("main")
+                        .build())
+                .addFeaturePack(ProvisionedFeaturePack.builder(FP2_GAV)
+                        .addPackage("main")
+                        .build())
+                .build();
+    }
+
+    @Override
+    protected DirState provisionedHomeDir(DirBuilder builder) {
+        return builder
+                .addFile("f/p1/a.txt", "a")
+                .addFile("f/p2/b.txt", "b")
+                .build();
+    }
+
+    @Test
+    public void testCachedLayoutsAreReusedAndEvicted() throws Exception {
+        getPm().install(featurePackConfig());
+        final List<Path> entries = listEntries();
+        Assert.assertEquals(2, entries.size());
+
+        final Path fp1Entry = entries.get(0).toString().contains("fp1") ? entries.get(0) : entries.get(1);
+        final long lastUsed = Files.getLastModifiedTime(fp1Entry).toMillis();
+        IoUtils.recursiveDelete(installHome);
+        getPm().install(featurePackConfig());
+        Assert.assertEquals(entries, listEntries());
+        Assert.assertTrue(Files.getLastModifiedTime(fp1Entry).toMillis() >= lastUsed);
+        assertProvisionedContent();
+
+        // the entries that are not in use are evicted once a new one is added
+        IoUtils.recursiveDelete(installHome);
+        getPm(0).install(FeaturePackConfig.forGav(FP3_GAV));
+        final List<Path> remaining = listEntries();
+        Assert.assertEquals(1, remaining.size());
+        Assert.assertTrue(remaining.get(0).toString().contains("fp3"));
+    }
+
+    private List<Path> listEntries() throws IOException {
+        try(Stream<Path> stream = Files.find(cacheDir, 4, (p, attrs) -> p.getFileName().toString().endsWith(".entry"))) {
+            final List<Path> entries = new ArrayList<>();
+            stream.sorted().forEach(entries::add);
+            return entries;
+        }
+    }
+}
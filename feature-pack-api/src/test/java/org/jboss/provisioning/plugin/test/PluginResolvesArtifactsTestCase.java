@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.provisioning.plugin.test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+import org.jboss.provisioning.ArtifactCoords;
+import org.jboss.provisioning.ArtifactException;
+import org.jboss.provisioning.ArtifactRepositoryManager;
+import org.jboss.provisioning.ProvisioningDescriptionException;
+import org.jboss.provisioning.ProvisioningException;
+import org.jboss.provisioning.ProvisioningManager;
+import org.jboss.provisioning.config.FeaturePackConfig;
+import org.jboss.provisioning.config.ProvisioningConfig;
+import org.jboss.provisioning.plugin.ProvisioningPlugin;
+import org.jboss.provisioning.repomanager.FeaturePackRepositoryManager;
+import org.jboss.provisioning.runtime.ProvisioningRuntime;
+import org.jboss.provisioning.state.ProvisionedFeaturePack;
+import org.jboss.provisioning.state.ProvisionedState;
+import org.jboss.provisioning.test.PmProvisionConfigTestBase;
+import org.jboss.provisioning.test.util.fs.state.DirState;
+import org.jboss.provisioning.test.util.fs.state.DirState.DirBuilder;
+import org.jboss.provisioning.util.IoUtils;
+
+/**
+ *
+ * @author Alexey Loubyansky
+ */
+public class PluginResolvesArtifactsTestCase extends PmProvisionConfigTestBase {
+
+    private static final ArtifactCoords.Gav FP1_GAV = ArtifactCoords.newGav("org.jboss.pm.test", "fp1", "1.0.0.Final");
+    private static final ArtifactCoords.Gav FP2_GAV = ArtifactCoords.newGav("org.jboss.pm.test", "fp2", "1.0.0.Final");
+
+    private static int resolveCalls;
+    private static int resolveAllCalls;
+
+    public static class Plugin1 implements ProvisioningPlugin {
+        @Override
+        public void postInstall(ProvisioningRuntime ctx) throws ProvisioningException {
+            final int resolveCallsBefore = resolveCalls;
+            final Map<ArtifactCoords, Path> resolved = ctx.resolveArtifacts(Arrays.asList(FP1_GAV.toArtifactCoords(), FP2_GAV.toArtifactCoords()));
+            final StringBuilder buf = new StringBuilder();
+            buf.append("resolved ").append(resolved.size())
+                .append(" in ").append(resolveAllCalls).append(" batch");
+            if(!resolved.get(FP1_GAV.toArtifactCoords()).equals(ctx.resolveArtifact(FP1_GAV.toArtifactCoords()))
+                    || !resolved.get(FP2_GAV.toArtifactCoords()).equals(ctx.resolveArtifact(FP2_GAV.toArtifactCoords()))) {
+                buf.append(", paths differ");
+            }
+            ctx.resolveArtifacts(Arrays.asList(FP1_GAV.toArtifactCoords(), FP2_GAV.toArtifactCoords()));
+            buf.append(", ").append(resolveAllCalls).append(" batch")
+                .append(", ").append(resolveCalls - resolveCallsBefore).append(" single");
+            try {
+                IoUtils.writeFile(ctx.getStagedDir().resolve("plugin1.txt"), buf.toString());
+            } catch (IOException e) {
+                throw new ProvisioningException("Failed to write a file");
+            }
+        }
+    }
+
+    @Override
+    protected void doBefore() throws Exception {
+        resolveCalls = 0;
+        resolveAllCalls = 0;
+        super.doBefore();
+    }
+
+    @Override
+    protected ProvisioningManager getPm() {
+        final ArtifactRepositoryManager repoManager = getRepoManager();
+        return ProvisioningManager.builder()
+                .setArtifactResolver(new ArtifactRepositoryManager() {
+                    @Override
+                    public Path resolve(ArtifactCoords coords) throws ArtifactException {
+                        ++resolveCalls;
+                        return repoManager.resolve(coords);
+                    }
+
+                    @Override
+                    public Map<ArtifactCoords, Path> resolveAll(Collection<ArtifactCoords> coords) throws ArtifactException {
+                        ++resolveAllCalls;
+                        return repoManager.resolveAll(coords);
+                    }
+
+                    @Override
+                    public void install(ArtifactCoords coords, Path artifact) throws ArtifactException {
+                        repoManager.install(coords, artifact);
+                    }
+
+                    @Override
+                    public void deploy(ArtifactCoords coords, Path artifact) throws ArtifactException {
+                        repoManager.deploy(coords, artifact);
+                    }
+                })
+                .setInstallationHome(installHome)
+                .build();
+    }
+
+    @Override
+    protected void setupRepo(FeaturePackRepositoryManager repoManager) throws ProvisioningDescriptionException {
+        repoManager.installer()
+            .newFeaturePack(FP1_GAV)
+                .newPackage("p1", true)
+                    .writeContent("fp1/p1.txt", "p1")
+                    .getFeaturePack()
+                .addPlugin(Plugin1.class)
+                .getInstaller()
+            .newFeaturePack(FP2_GAV)
+                .newPackage("p1", true)
+                    .writeContent("fp2/p1.txt", "p1")
+                    .getFeaturePack()
+                .getInstaller()
+            .install();
+    }
+
+    @Override
+    protected ProvisioningConfig provisioningConfig()
+            throws ProvisioningDescriptionException {
+        return ProvisioningConfig.builder()
+                .addFeaturePack(FeaturePackConfig.forGav(FP1_GAV))
+                .build();
+    }
+
+    @Override
+    protected ProvisionedState provisionedState() {
+        return ProvisionedState.builder()
+                .addFeaturePack(ProvisionedFeaturePack.builder(FP1_GAV)
+                        .addPackage("p1")
+                        .build())
+                .build();
+    }
+
+    @Override
+    protected DirState provisionedHomeDir(DirBuilder builder) {
+        return builder
+                .addFile("fp1/p1.txt", "p1")
+                .addFile("plugin1.txt", "resolved 2 in 1 batch, 1 batch, 0 single")
+                .build();
+    }
+}
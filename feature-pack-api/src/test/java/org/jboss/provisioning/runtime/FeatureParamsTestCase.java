@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.provisioning.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.provisioning.ArtifactCoords;
+import org.jboss.provisioning.spec.FeatureParameterSpec;
+import org.jboss.provisioning.spec.FeatureSpec;
+import org.jboss.provisioning.type.builtin.BuiltInParameterTypeProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Alexey Loubyansky
+ */
+public class FeatureParamsTestCase {
+
+    private ResolvedFeatureSpec spec;
+
+    @Before
+    public void init() throws Exception {
+        spec = new ResolvedFeatureSpec(new ResolvedSpecId(ArtifactCoords.newGav("org.jboss.pm.test", "fp1", "1.0.0.Final"), "specA"),
+                BuiltInParameterTypeProvider.getInstance(),
+                FeatureSpec.builder("specA")
+                .addParam(FeatureParameterSpec.createId("name"))
+                .addParam(FeatureParameterSpec.create("a", true))
+                .addParam(FeatureParameterSpec.create("b", true))
+                .addParam(FeatureParameterSpec.create("c", "def"))
+                .build());
+    }
+
+    @Test
+    public void testMapView() throws Exception {
+        final FeatureParams params = new FeatureParams(spec.paramColumns);
+        assertNull(params.put("b", "b1"));
+        assertNull(params.put("a", "a1"));
+        assertEquals("a1", params.put("a", "a2"));
+
+        final Map<String, Object> expected = new HashMap<>();
+        expected.put("a", "a2");
+        expected.put("b", "b1");
+        assertEquals(expected, params);
+        assertEquals(expected.hashCode(), params.hashCode());
+        assertEquals(2, params.size());
+        assertFalse(params.containsKey("c"));
+        assertNull(params.get("unknown"));
+    }
+
+    @Test
+    public void testIterationFollowsColumns() throws Exception {
+        final FeatureParams params = new FeatureParams(spec.paramColumns);
+        final List<String> names = new ArrayList<>(Arrays.asList(spec.paramColumns.names));
+        Collections.reverse(names);
+        for(String name : names) {
+            params.put(name, name + "1");
+        }
+        assertEquals(Arrays.asList(spec.paramColumns.names), new ArrayList<>(params.keySet()));
+    }
+
+    @Test
+    public void testUnknownParam() throws Exception {
+        final FeatureParams params = new FeatureParams(spec.paramColumns);
+        try {
+            params.put("unknown", "value");
+            fail("unknown parameter was accepted");
+        } catch(IllegalArgumentException e) {
+        }
+    }
+
+    @Test
+    public void testModifiedShareDoesNotAffectOriginal() throws Exception {
+        final FeatureParams original = new FeatureParams(spec.paramColumns);
+        original.put("a", "a1");
+        original.put("b", "b1");
+
+        final FeatureParams copy = original.share();
+        copy.put("a", "a2");
+        copy.put("c", "c2");
+
+        assertEquals(params("a", "a1", "b", "b1"), original);
+        assertEquals(params("a", "a2", "b", "b1", "c", "c2"), copy);
+    }
+
+    @Test
+    public void testModifiedOriginalDoesNotAffectShares() throws Exception {
+        final FeatureParams original = new FeatureParams(spec.paramColumns);
+        original.put("a", "a1");
+        final FeatureParams copy1 = original.share();
+        final FeatureParams copy2 = original.share();
+
+        original.put("a", "a0");
+        original.put("b", "b0");
+
+        assertEquals(params("a", "a0", "b", "b0"), original);
+        assertEquals(params("a", "a1"), copy1);
+        assertEquals(params("a", "a1"), copy2);
+    }
+
+    @Test
+    public void testSiblingCopiesAfterMerge() throws Exception {
+        // a feature of a model-only config copied into two named configs
+        final ResolvedFeature feature = new ResolvedFeature(null, spec, params("name", "f1", "a", "a1"), Collections.emptyMap(), 0);
+        final ResolvedFeature config1Feature = feature.copy(1);
+        final ResolvedFeature config2Feature = feature.copy(2);
+
+        config1Feature.setParam("a", "config1");
+        config1Feature.setParam("b", "b1");
+        config2Feature.validate();
+
+        assertEquals(params("name", "f1", "a", "a1"), feature.getResolvedParams());
+        assertEquals(params("name", "f1", "a", "config1", "b", "b1"), config1Feature.getResolvedParams());
+        assertEquals(params("name", "f1", "a", "a1", "c", "def"), config2Feature.getResolvedParams());
+    }
+
+    private static Map<String, Object> params(String... nameValues) {
+        final Map<String, Object> params = new HashMap<>();
+        for(int i = 0; i < nameValues.length; i += 2) {
+            params.put(nameValues[i], nameValues[i + 1]);
+        }
+        return params;
+    }
+}
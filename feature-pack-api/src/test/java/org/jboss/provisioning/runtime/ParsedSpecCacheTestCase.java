@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.provisioning.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.nio.file.Path;
+
+import org.jboss.provisioning.spec.PackageSpec;
+import org.jboss.provisioning.util.IoUtils;
+import org.jboss.provisioning.xml.PackageXmlParser;
+import org.jboss.provisioning.xml.PackageXmlWriter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Alexey Loubyansky
+ */
+public class ParsedSpecCacheTestCase {
+
+    private Path workDir;
+    private int parsed;
+    private final ParsedSpecCache.Parser<PackageSpec> parser = reader -> {
+        ++parsed;
+        return PackageXmlParser.getInstance().parse(reader);
+    };
+
+    @Before
+    public void init() throws Exception {
+        workDir = IoUtils.createRandomTmpDir();
+        parsed = 0;
+    }
+
+    @After
+    public void cleanup() {
+        IoUtils.recursiveDelete(workDir);
+    }
+
+    @Test
+    public void testSameContentIsParsedOnce() throws Exception {
+        final ParsedSpecCache cache = new ParsedSpecCache(10);
+        final Path p1 = writePackage("fp1", PackageSpec.builder("p1").addPackageDep("p2").build());
+        // a copy of the same package in another feature-pack
+        final Path p1Copy = writePackage("fp2", PackageSpec.builder("p1").addPackageDep("p2").build());
+
+        final PackageSpec spec = cache.get(PackageSpec.class, p1, parser);
+        assertEquals(PackageSpec.builder("p1").addPackageDep("p2").build(), spec);
+        assertSame(spec, cache.get(PackageSpec.class, p1, parser));
+        assertSame(spec, cache.get(PackageSpec.class, p1Copy, parser));
+        assertEquals(1, parsed);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testChangedContentIsParsedAgain() throws Exception {
+        final ParsedSpecCache cache = new ParsedSpecCache(10);
+        final Path p1 = writePackage("fp1", PackageSpec.forName("p1"));
+        final PackageSpec original = cache.get(PackageSpec.class, p1, parser);
+
+        writePackage("fp1", PackageSpec.builder("p1").addPackageDep("p2").build());
+        final PackageSpec changed = cache.get(PackageSpec.class, p1, parser);
+        assertNotSame(original, changed);
+        assertEquals(PackageSpec.builder("p1").addPackageDep("p2").build(), changed);
+        assertEquals(2, parsed);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws Exception {
+        final ParsedSpecCache cache = new ParsedSpecCache(2);
+        final Path p1 = writePackage("fp1", PackageSpec.forName("p1"));
+        final Path p2 = writePackage("fp1", PackageSpec.forName("p2"));
+        final Path p3 = writePackage("fp1", PackageSpec.forName("p3"));
+
+        final PackageSpec spec1 = cache.get(PackageSpec.class, p1, parser);
+        final PackageSpec spec2 = cache.get(PackageSpec.class, p2, parser);
+        // p1 becomes the most recently used, so p2 is evicted by p3
+        assertSame(spec1, cache.get(PackageSpec.class, p1, parser));
+        cache.get(PackageSpec.class, p3, parser);
+        assertEquals(2, cache.size());
+        assertEquals(3, parsed);
+
+        assertSame(spec1, cache.get(PackageSpec.class, p1, parser));
+        assertEquals(3, parsed);
+        assertNotSame(spec2, cache.get(PackageSpec.class, p2, parser));
+        assertEquals(4, parsed);
+    }
+
+    @Test
+    public void testDisabledCache() throws Exception {
+        final ParsedSpecCache cache = new ParsedSpecCache(0);
+        final Path p1 = writePackage("fp1", PackageSpec.forName("p1"));
+        assertNotSame(cache.get(PackageSpec.class, p1, parser), cache.get(PackageSpec.class, p1, parser));
+        assertEquals(2, parsed);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testInvalidConfiguredSize() throws Exception {
+        final String original = System.getProperty(ParsedSpecCache.SIZE_PROPERTY);
+        try {
+            System.setProperty(ParsedSpecCache.SIZE_PROPERTY, "lots");
+            assertEquals(ParsedSpecCache.DEFAULT_SIZE, ParsedSpecCache.getConfiguredSize());
+            System.setProperty(ParsedSpecCache.SIZE_PROPERTY, "5");
+            assertEquals(5, ParsedSpecCache.getConfiguredSize());
+        } finally {
+            if(original == null) {
+                System.clearProperty(ParsedSpecCache.SIZE_PROPERTY);
+            } else {
+                System.setProperty(ParsedSpecCache.SIZE_PROPERTY, original);
+            }
+        }
+    }
+
+    private Path writePackage(String fp, PackageSpec spec) throws Exception {
+        final Path xml = workDir.resolve(fp).resolve(spec.getName()).resolve("package.xml");
+        PackageXmlWriter.getInstance().write(spec, xml);
+        return xml;
+    }
+}
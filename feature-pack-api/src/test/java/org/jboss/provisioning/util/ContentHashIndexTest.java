@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.provisioning.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Alexey Loubyansky
+ */
+public class ContentHashIndexTest {
+
+    private Path workDir;
+
+    @Before
+    public void init() throws Exception {
+        workDir = IoUtils.createRandomTmpDir();
+        Files.createDirectories(workDir.resolve("install").resolve("b"));
+        IoUtils.writeFile(workDir.resolve("install").resolve("a.txt"), "a");
+        IoUtils.writeFile(workDir.resolve("install").resolve("b").resolve("b.txt"), "b");
+    }
+
+    @After
+    public void cleanup() {
+        IoUtils.recursiveDelete(workDir);
+    }
+
+    @Test
+    public void testStoreLoad() throws Exception {
+        final Path install = workDir.resolve("install");
+        final ContentHashIndex index = ContentHashIndex.newInstance();
+        final Map<Path, String> contents = IoUtils.listContents(install, PathFilter.DEFAULT, ForkJoinPool.commonPool(), index);
+        assertEquals(IoUtils.listContents(install, PathFilter.DEFAULT), contents);
+        assertEquals(2, index.size());
+
+        final Path indexFile = workDir.resolve("hashes.txt");
+        index.store(indexFile);
+        // the files were written right before the index, which may not be distinguishable by the file system timestamps
+        Files.setLastModifiedTime(indexFile, FileTime.fromMillis(System.currentTimeMillis() + 2000));
+        final ContentHashIndex loaded = ContentHashIndex.load(indexFile);
+        assertEquals(2, loaded.size());
+        assertEquals(contents, IoUtils.listContents(install, PathFilter.DEFAULT, null, loaded));
+    }
+
+    @Test
+    public void testUnchangedFilesAreNotRehashed() throws Exception {
+        final Path install = workDir.resolve("install");
+        final Path a = install.resolve("a.txt");
+        final ContentHashIndex index = ContentHashIndex.newInstance();
+        index.putHash(Paths.get("a.txt"), Files.readAttributes(a, BasicFileAttributes.class), "recorded");
+
+        assertEquals("recorded", IoUtils.listContents(install, PathFilter.DEFAULT, ForkJoinPool.commonPool(), index).get(Paths.get("a.txt")));
+        assertEquals("recorded", IoUtils.listContents(install, PathFilter.DEFAULT, null, index).get(Paths.get("a.txt")));
+
+        IoUtils.writeFile(a, "changed");
+        assertNull(index.getHash(Paths.get("a.txt"), Files.readAttributes(a, BasicFileAttributes.class)));
+        assertEquals(HashUtils.hashFile(a), IoUtils.listContents(install, PathFilter.DEFAULT, ForkJoinPool.commonPool(), index).get(Paths.get("a.txt")));
+    }
+
+    @Test
+    public void testRacilyCleanEntryIsRehashed() throws Exception {
+        final Path install = workDir.resolve("install");
+        final Path a = install.resolve("a.txt");
+        final FileTime recorded = FileTime.fromMillis(Files.getLastModifiedTime(a).toMillis());
+        final ContentHashIndex index = ContentHashIndex.newInstance();
+        index.putHash(Paths.get("a.txt"), Files.readAttributes(a, BasicFileAttributes.class), HashUtils.hashFile(a));
+        final Path indexFile = workDir.resolve("hashes.txt");
+        index.store(indexFile);
+
+        // the file is changed keeping its size within the timestamp granularity of the index
+        IoUtils.writeFile(a, "z");
+        Files.setLastModifiedTime(a, recorded);
+        Files.setLastModifiedTime(indexFile, recorded);
+        assertEquals(HashUtils.hashFile(a), IoUtils.listContents(install, PathFilter.DEFAULT, null, ContentHashIndex.load(indexFile)).get(Paths.get("a.txt")));
+
+        // the index stored after the file was modified is trusted
+        index.putHash(Paths.get("a.txt"), Files.readAttributes(a, BasicFileAttributes.class), "recorded");
+        index.store(indexFile);
+        Files.setLastModifiedTime(indexFile, FileTime.fromMillis(recorded.toMillis() + 2000));
+        assertEquals("recorded", IoUtils.listContents(install, PathFilter.DEFAULT, null, ContentHashIndex.load(indexFile)).get(Paths.get("a.txt")));
+    }
+
+    @Test
+    public void testModified() throws Exception {
+        final Path install = workDir.resolve("install");
+        final ContentHashIndex index = ContentHashIndex.newInstance();
+        assertFalse(index.isModified());
+        IoUtils.listContents(install, PathFilter.DEFAULT, null, index);
+        assertTrue(index.isModified());
+
+        final Path indexFile = workDir.resolve("hashes.txt");
+        index.store(indexFile);
+        assertFalse(index.isModified());
+        Files.setLastModifiedTime(indexFile, FileTime.fromMillis(System.currentTimeMillis() + 2000));
+        final ContentHashIndex loaded = ContentHashIndex.load(indexFile);
+        IoUtils.listContents(install, PathFilter.DEFAULT, null, loaded);
+        assertFalse(loaded.isModified());
+    }
+
+    @Test
+    public void testMissingIndex() throws Exception {
+        assertEquals(0, ContentHashIndex.load(workDir.resolve("missing.txt")).size());
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.provisioning.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Alexey Loubyansky
+ */
+public class HashUtilsTest {
+
+    private Path workDir;
+
+    @Before
+    public void init() throws Exception {
+        workDir = IoUtils.createRandomTmpDir();
+        IoUtils.writeFile(workDir.resolve("a.txt"), "a");
+        Files.createDirectories(workDir.resolve("b").resolve("c"));
+        IoUtils.writeFile(workDir.resolve("b").resolve("b.txt"), "b");
+        Files.createDirectories(workDir.resolve("b").resolve("empty"));
+        final byte[] big = new byte[3 * 1024 * 1024 + 17];
+        Arrays.fill(big, (byte) 'x');
+        Files.write(workDir.resolve("b").resolve("c").resolve("big.bin"), big);
+        Files.createDirectories(workDir.resolve("skipped"));
+        IoUtils.writeFile(workDir.resolve("skipped").resolve("s.txt"), "s");
+    }
+
+    @After
+    public void cleanup() {
+        IoUtils.recursiveDelete(workDir);
+    }
+
+    @Test
+    public void testMappedFileHash() throws Exception {
+        final Path big = workDir.resolve("b").resolve("c").resolve("big.bin");
+        final byte[] bytes = Files.readAllBytes(big);
+        final char[] chars = new char[bytes.length];
+        Arrays.fill(chars, 'x');
+        assertEquals(HashUtils.hash(new String(chars)), HashUtils.hashFile(big));
+        assertEquals(HashUtils.hash(new String(bytes, StandardCharsets.UTF_8)), HashUtils.bytesToHexString(HashUtils.hashPath(big)));
+    }
+
+    @Test
+    public void testParallelListContents() throws Exception {
+        final PathFilter filter = PathFilter.Builder.instance().addDirectories("skipped").build();
+        final Map<Path, String> expected = IoUtils.listContents(workDir, filter);
+        assertEquals(4, expected.size());
+        assertEquals(expected, IoUtils.listContents(workDir, filter, new ForkJoinPool(4)));
+        assertEquals(expected, IoUtils.listContentsParallel(workDir, filter));
+        assertEquals(IoUtils.listContents(workDir, PathFilter.DEFAULT), IoUtils.listContentsParallel(workDir, PathFilter.DEFAULT));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.provisioning.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Alexey Loubyansky
+ */
+public class IoUtilsMirrorTest {
+
+    private Path workDir;
+    private Path source;
+    private Path target;
+
+    @Before
+    public void init() throws Exception {
+        workDir = IoUtils.createRandomTmpDir();
+        source = workDir.resolve("source");
+        target = workDir.resolve("target");
+        Files.createDirectories(source.resolve("a"));
+        Files.createDirectories(target.resolve("removed"));
+        Files.createDirectories(target.resolve("dir-to-file"));
+        IoUtils.writeFile(source.resolve("same.txt"), "same");
+        IoUtils.writeFile(source.resolve("changed.txt"), "new");
+        IoUtils.writeFile(source.resolve("a").resolve("added.txt"), "added");
+        Files.createDirectories(source.resolve("empty"));
+        IoUtils.writeFile(source.resolve("dir-to-file"), "file");
+
+        IoUtils.writeFile(target.resolve("same.txt"), "same");
+        IoUtils.writeFile(target.resolve("changed.txt"), "old");
+        IoUtils.writeFile(target.resolve("removed").resolve("r.txt"), "r");
+        IoUtils.writeFile(target.resolve("dir-to-file").resolve("f.txt"), "f");
+    }
+
+    @After
+    public void cleanup() {
+        IoUtils.recursiveDelete(workDir);
+    }
+
+    @Test
+    public void testMirror() throws Exception {
+        final FileTime sameTime = FileTime.fromMillis(1000L);
+        Files.setLastModifiedTime(target.resolve("same.txt"), sameTime);
+
+        IoUtils.mirror(source, target, new ForkJoinPool(2), ContentHashIndex.newInstance());
+
+        assertEquals(IoUtils.listContents(source, PathFilter.DEFAULT), IoUtils.listContents(target, PathFilter.DEFAULT));
+        assertEquals(sameTime, Files.getLastModifiedTime(target.resolve("same.txt")));
+        assertEquals(IoUtils.readFile(source.resolve("changed.txt")), IoUtils.readFile(target.resolve("changed.txt")));
+        assertFalse(Files.exists(target.resolve("removed")));
+    }
+
+    @Test
+    public void testLinkOrCopy() throws Exception {
+        final Path linked = workDir.resolve("linked");
+        IoUtils.linkOrCopy(source, linked);
+        assertEquals(IoUtils.listContents(source, PathFilter.DEFAULT), IoUtils.listContents(linked, PathFilter.DEFAULT));
+        assertTrue(Files.isSameFile(source.resolve("a").resolve("added.txt"), linked.resolve("a").resolve("added.txt")));
+
+        IoUtils.linkOrCopy(target.resolve("changed.txt"), linked.resolve("changed.txt"));
+        assertEquals(IoUtils.readFile(target.resolve("changed.txt")), IoUtils.readFile(linked.resolve("changed.txt")));
+        assertFalse(IoUtils.readFile(source.resolve("changed.txt")).equals(IoUtils.readFile(linked.resolve("changed.txt"))));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.provisioning.xml.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import org.jboss.provisioning.xml.util.AttributeValue;
+import org.jboss.provisioning.xml.util.ElementNode;
+import org.jboss.provisioning.xml.util.ElementWriter;
+import org.jboss.provisioning.xml.util.FormattingXmlStreamWriter;
+import org.junit.Test;
+
+/**
+ *
+ * @author Alexey Loubyansky
+ */
+public class ElementWriterTestCase {
+
+    private static final String NS = "urn:test:1.0";
+
+    @Test
+    public void testSameOutputAsElementTree() throws Exception {
+        final ElementNode root = new ElementNode(null, "root", NS);
+        root.addAttribute("a", new AttributeValue("1"));
+        final ElementNode empty = new ElementNode(root, "empty", NS);
+        empty.addAttribute("b", new AttributeValue("2"));
+        empty.addAttribute("c", new AttributeValue("3"));
+        root.addChild(empty);
+        final ElementNode nested = new ElementNode(root, "nested", NS);
+        root.addChild(nested);
+        final ElementNode leaf = new ElementNode(nested, "leaf", NS);
+        leaf.addAttribute("d", new AttributeValue("<&>"));
+        nested.addChild(leaf);
+        nested.addChild(new ElementNode(nested, "leaf", NS));
+        root.addChild(new ElementNode(root, "last", NS));
+
+        final StringWriter expected = new StringWriter();
+        try(FormattingXmlStreamWriter writer = newWriter(expected)) {
+            writer.writeStartDocument();
+            root.marshall(writer);
+            writer.writeEndDocument();
+        }
+
+        final StringWriter actual = new StringWriter();
+        try(FormattingXmlStreamWriter xmlWriter = newWriter(actual)) {
+            xmlWriter.writeStartDocument();
+            final ElementWriter writer = new ElementWriter(xmlWriter);
+            writer.startElement("root", NS);
+            writer.addAttribute("a", "1");
+            writer.startElement("empty", NS);
+            writer.addAttribute("b", "2");
+            writer.addAttribute("c", "3");
+            writer.endElement();
+            writer.startElement("nested", NS);
+            writer.startElement("leaf", NS);
+            writer.addAttribute("d", "<&>");
+            writer.endElement();
+            writer.startElement("leaf", NS);
+            writer.endElement();
+            writer.endElement();
+            writer.startElement("last", NS);
+            writer.endElement();
+            writer.endElement();
+            xmlWriter.writeEndDocument();
+        }
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    @Test
+    public void testEmptyRoot() throws Exception {
+        final StringWriter expected = new StringWriter();
+        try(FormattingXmlStreamWriter writer = newWriter(expected)) {
+            new ElementNode(null, "root", NS).marshall(writer);
+        }
+        final StringWriter actual = new StringWriter();
+        try(FormattingXmlStreamWriter xmlWriter = newWriter(actual)) {
+            final ElementWriter writer = new ElementWriter(xmlWriter);
+            writer.startElement("root", NS);
+            writer.endElement();
+        }
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    private static FormattingXmlStreamWriter newWriter(StringWriter out) throws XMLStreamException {
+        return new FormattingXmlStreamWriter(XMLOutputFactory.newInstance().createXMLStreamWriter(out));
+    }
+}
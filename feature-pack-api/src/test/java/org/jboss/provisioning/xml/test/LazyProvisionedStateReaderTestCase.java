@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.provisioning.xml.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import org.jboss.provisioning.ArtifactCoords;
+import org.jboss.provisioning.state.ProvisionedConfig;
+import org.jboss.provisioning.state.ProvisionedFeaturePack;
+import org.jboss.provisioning.state.ProvisionedState;
+import org.jboss.provisioning.util.IoUtils;
+import org.jboss.provisioning.xml.LazyProvisionedStateReader;
+import org.jboss.provisioning.xml.ProvisionedStateXmlParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Alexey Loubyansky
+ */
+public class LazyProvisionedStateReaderTestCase {
+
+    private static final String XML = "<?xml version=\"1.0\" ?>\n" +
+            "<!-- provisioned state -->\n" +
+            "<installation xmlns=\"urn:wildfly:pm-provisioned-state:1.0\">\n" +
+            "    <feature-pack groupId=\"org.pm.test\" artifactId=\"fp1\" version=\"1.0.0.Final\">\n" +
+            "        <packages>\n" +
+            "            <package name=\"a\"/>\n" +
+            "            <package name=\"b\"/>\n" +
+            "        </packages>\n" +
+            "    </feature-pack>\n" +
+            "    <config model=\"model1\" name=\"config1\">\n" +
+            "        <props>\n" +
+            "            <prop name=\"prop1\" value=\"&lt;value1&gt;\"/>\n" +
+            "        </props>\n" +
+            "        <!-- <feature-pack> -->\n" +
+            "        <feature-pack groupId=\"org.pm.test\" artifactId=\"fp1\" version=\"1.0.0.Final\">\n" +
+            "            <spec name=\"specA\">\n" +
+            "                <feature id=\"org.pm.test:fp1:1.0.0.Final#specA:name=a1\">\n" +
+            "                    <param name=\"name\" value=\"a/>1\"/>\n" +
+            "                </feature>\n" +
+            "            </spec>\n" +
+            "        </feature-pack>\n" +
+            "    </config>\n" +
+            "    <config name='config2'/>\n" +
+            "    <feature-pack groupId=\"org.pm.test\" artifactId=\"fp2\" version=\"2.0.0.Final\"/>\n" +
+            "    <config model=\"model2\">\n" +
+            "        <unexpected/>\n" +
+            "    </config>\n" +
+            "</installation>\n";
+
+    private Path xml;
+
+    @Before
+    public void init() throws Exception {
+        xml = IoUtils.createRandomTmpDir().resolve("provisioned.xml");
+        IoUtils.writeFile(xml, XML);
+    }
+
+    @After
+    public void cleanup() {
+        IoUtils.recursiveDelete(xml.getParent());
+    }
+
+    @Test
+    public void testFeaturePacksAndConfigNames() throws Exception {
+        final ProvisionedState state = LazyProvisionedStateReader.read(xml);
+
+        final ArrayList<ProvisionedFeaturePack> fps = new ArrayList<>(state.getFeaturePacks());
+        assertEquals(2, fps.size());
+        assertEquals(ProvisionedFeaturePack.builder(ArtifactCoords.newGav("org.pm.test", "fp1", "1.0.0.Final"))
+                .addPackage("a")
+                .addPackage("b")
+                .build(), fps.get(0));
+        assertEquals(ProvisionedFeaturePack.forGav(ArtifactCoords.newGav("org.pm.test", "fp2", "2.0.0.Final")), fps.get(1));
+
+        assertEquals(3, state.getConfigs().size());
+        assertEquals("model1", state.getConfigs().get(0).getModel());
+        assertEquals("config1", state.getConfigs().get(0).getName());
+        assertEquals(null, state.getConfigs().get(1).getModel());
+        assertEquals("config2", state.getConfigs().get(1).getName());
+        assertEquals("model2", state.getConfigs().get(2).getModel());
+        assertEquals(null, state.getConfigs().get(2).getName());
+    }
+
+    @Test
+    public void testConfigsLoadedOnDemand() throws Exception {
+        final ProvisionedState state = LazyProvisionedStateReader.read(xml);
+
+        final ProvisionedConfig config1 = state.getConfigs().get(0);
+        assertTrue(config1.hasProperties());
+        assertEquals("<value1>", config1.getProperties().get("prop1"));
+        assertTrue(config1.hasFeatures());
+
+        final ProvisionedConfig config2 = state.getConfigs().get(1);
+        assertFalse(config2.hasProperties());
+        assertFalse(config2.hasFeatures());
+
+        // the invalid content is detected only once the config is accessed
+        try {
+            state.getConfigs().get(2).hasFeatures();
+            fail("The config content is invalid");
+        } catch(IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSameAsEagerParsing() throws Exception {
+        IoUtils.writeFile(xml, XML.replace("        <unexpected/>\n", ""));
+        final ProvisionedState eager;
+        try(BufferedReader reader = Files.newBufferedReader(xml)) {
+            eager = ProvisionedStateXmlParser.getInstance().parse(reader);
+        }
+        final ProvisionedState lazy = LazyProvisionedStateReader.read(xml);
+        assertEquals(new ArrayList<>(eager.getFeaturePacks()), new ArrayList<>(lazy.getFeaturePacks()));
+        assertEquals(eager.getConfigs().size(), lazy.getConfigs().size());
+        for(int i = 0; i < eager.getConfigs().size(); ++i) {
+            assertEquals(lazy.getConfigs().get(i), eager.getConfigs().get(i));
+        }
+    }
+}
@@ -23,7 +23,9 @@ import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import javax.inject.Inject;
 import javax.xml.stream.XMLStreamException;
@@ -55,6 +57,7 @@ import org.jboss.provisioning.Errors;
 import org.jboss.provisioning.ProvisioningException;
 import org.jboss.provisioning.ProvisioningManager;
 import org.jboss.provisioning.config.ProvisioningConfig;
+import org.jboss.provisioning.plugin.util.ArtifactResolutionUtil;
 import org.jboss.provisioning.plugin.util.LoggerMessageWriter;
 import org.jboss.provisioning.xml.ProvisioningXmlParser;
 import org.jboss.provisioning.ArtifactRepositoryManager;
@@ -134,6 +137,11 @@ public class FeaturePackProvisioningMojo extends AbstractMojo {
                             return Paths.get(result.getArtifact().getFile().toURI());
                         }
 
+                        @Override
+                        public Map<ArtifactCoords, Path> resolveAll(Collection<ArtifactCoords> coords) throws org.jboss.provisioning.ArtifactException {
+                            return ArtifactResolutionUtil.resolveAll(repoSystem, repoSession, remoteRepos, coords);
+                        }
+
                         @Override
                         public void install(ArtifactCoords coords, Path file) throws org.jboss.provisioning.ArtifactException {
                             final InstallRequest request = new InstallRequest();
@@ -267,9 +275,6 @@ public class FeaturePackProvisioningMojo extends AbstractMojo {
     }
 */
     private ArtifactRequest getArtifactRequest(ArtifactCoords coords) {
-        final ArtifactRequest req = new ArtifactRequest();
-        req.setArtifact(new DefaultArtifact(coords.getGroupId(), coords.getArtifactId(), coords.getClassifier(), coords.getExtension(), coords.getVersion()));
-        req.setRepositories(remoteRepos);
-        return req;
+        return ArtifactResolutionUtil.getArtifactRequest(coords, remoteRepos);
     }
 }
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.provisioning.plugin.util;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.resolution.ArtifactResult;
+import org.jboss.provisioning.ArtifactCoords;
+import org.jboss.provisioning.ArtifactException;
+import org.jboss.provisioning.plugin.FpMavenErrors;
+
+/**
+ * Batch artifact resolution shared by the Maven plugin and the tool.
+ *
+ * @author Alexey Loubyansky
+ */
+public class ArtifactResolutionUtil {
+
+    public static ArtifactRequest getArtifactRequest(ArtifactCoords coords, List<RemoteRepository> repos) {
+        final ArtifactRequest req = new ArtifactRequest();
+        req.setArtifact(new DefaultArtifact(coords.getGroupId(), coords.getArtifactId(), coords.getClassifier(), coords.getExtension(), coords.getVersion()));
+        req.setRepositories(repos);
+        return req;
+    }
+
+    /**
+     * Resolves the artifacts in a single call to the repository system,
+     * which lets it download them in parallel.
+     *
+     * @return  resolved paths in the iteration order of the argument
+     */
+    public static Map<ArtifactCoords, Path> resolveAll(RepositorySystem repoSystem, RepositorySystemSession session,
+            List<RemoteRepository> repos, Collection<ArtifactCoords> coords) throws ArtifactException {
+        final List<ArtifactCoords> artifacts = new ArrayList<>(coords);
+        final List<ArtifactRequest> requests = new ArrayList<>(artifacts.size());
+        for(ArtifactCoords artifact : artifacts) {
+            requests.add(getArtifactRequest(artifact, repos));
+        }
+        List<ArtifactResult> results;
+        try {
+            results = repoSystem.resolveArtifacts(session, requests);
+        } catch (ArtifactResolutionException e) {
+            results = e.getResults();
+            for(int i = 0; i < artifacts.size(); ++i) {
+                if(!results.get(i).isResolved()) {
+                    throw new ArtifactException(FpMavenErrors.artifactResolution(artifacts.get(i)), e);
+                }
+            }
+            throw new ArtifactException(e.getMessage(), e);
+        }
+        final Map<ArtifactCoords, Path> resolved = new LinkedHashMap<>(artifacts.size());
+        for(int i = 0; i < artifacts.size(); ++i) {
+            final ArtifactResult result = results.get(i);
+            if(!result.isResolved()) {
+                throw new ArtifactException(FpMavenErrors.artifactResolution(artifacts.get(i)));
+            }
+            if(result.isMissing()) {
+                throw new ArtifactException(FpMavenErrors.artifactMissing(artifacts.get(i)));
+            }
+            resolved.put(artifacts.get(i), Paths.get(result.getArtifact().getFile().toURI()));
+        }
+        return resolved;
+    }
+}
@@ -18,7 +18,9 @@ package org.jboss.provisioning.cli;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -35,6 +37,7 @@ import org.jboss.provisioning.ArtifactCoords;
 import org.jboss.provisioning.ArtifactException;
 import org.jboss.provisioning.ArtifactRepositoryManager;
 import org.jboss.provisioning.plugin.FpMavenErrors;
+import org.jboss.provisioning.plugin.util.ArtifactResolutionUtil;
 
 /**
  *
@@ -76,6 +79,11 @@ class MavenArtifactRepositoryManager implements ArtifactRepositoryManager {
         return Paths.get(result.getArtifact().getFile().toURI());
     }
 
+    @Override
+    public Map<ArtifactCoords, Path> resolveAll(Collection<ArtifactCoords> coords) throws ArtifactException {
+        return ArtifactResolutionUtil.resolveAll(repoSystem, session, Collections.emptyList(), coords);
+    }
+
     @Override
     public void install(ArtifactCoords coords, Path file) throws ArtifactException {
         final InstallRequest request = new InstallRequest();
@@ -35,7 +35,7 @@ public class ProvisionedSpecDisplayCommand extends ProvisioningCommand {
         if(verbose) {
             final ProvisionedState provisionedState;
             try {
-                provisionedState = getManager(session).getProvisionedState();
+                provisionedState = getManager(session).getProvisionedStateView();
             } catch (ProvisioningException e) {
                 throw new CommandExecutionException("Failed to read provisioned state", e);
             }
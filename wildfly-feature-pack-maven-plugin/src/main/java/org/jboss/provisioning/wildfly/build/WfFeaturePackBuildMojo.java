@@ -64,9 +64,11 @@ import org.jboss.provisioning.config.FeaturePackConfig;
 import org.jboss.provisioning.config.IncludedConfig;
 import org.jboss.provisioning.layout.FeaturePackLayout;
 import org.jboss.provisioning.layout.FeaturePackLayoutDescriber;
+import org.jboss.provisioning.layout.FeaturePackMetadataIndex;
 import org.jboss.provisioning.plugin.FpMavenErrors;
 import org.jboss.provisioning.plugin.util.MavenPluginUtil;
 import org.jboss.provisioning.plugin.wildfly.WfConstants;
+import org.jboss.provisioning.plugin.wildfly.WfProvisioningPlan;
 import org.jboss.provisioning.spec.ConfigSpec;
 import org.jboss.provisioning.spec.FeaturePackDependencySpec;
 import org.jboss.provisioning.spec.FeaturePackSpec;
@@ -285,10 +287,22 @@ public class WfFeaturePackBuildMojo extends AbstractMojo {
         copyDirIfExists(targetResources.resolve(Constants.FEATURE_GROUPS), fpDir.resolve(Constants.FEATURE_GROUPS));
         addWildFlyPlugin(fpDir);
 
+        try {
+            FeaturePackMetadataIndex.write(fpDir);
+        } catch (ProvisioningDescriptionException e) {
+            throw new MojoExecutionException(Errors.writeFile(fpDir.resolve(Constants.METADATA_INDEX)), e);
+        }
+
         // collect feature-pack resources
         final Path resourcesWildFly = fpDir.resolve(Constants.RESOURCES).resolve(WfConstants.WILDFLY);
         mkdirs(resourcesWildFly);
 
+        try {
+            WfProvisioningPlan.write(fpDir);
+        } catch (ProvisioningException e) {
+            throw new MojoExecutionException(Errors.writeFile(resourcesWildFly.resolve(WfConstants.PROVISIONING_PLAN)), e);
+        }
+
         // properties
         try(OutputStream out = Files.newOutputStream(resourcesWildFly.resolve(WfConstants.WILDFLY_TASKS_PROPS))) {
                 getFPConfigProperties().store(out, "WildFly feature-pack properties");
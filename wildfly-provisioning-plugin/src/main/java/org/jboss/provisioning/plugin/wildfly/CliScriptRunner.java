@@ -22,7 +22,12 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.StringWriter;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import org.jboss.provisioning.Errors;
 import org.jboss.provisioning.MessageWriter;
 import org.jboss.provisioning.ProvisioningException;
 import org.wildfly.core.launcher.CliCommandBuilder;
@@ -33,12 +38,55 @@ import org.wildfly.core.launcher.CliCommandBuilder;
  */
 public class CliScriptRunner {
 
+    /**
+     * Executes the scripts one after another in a single CLI process
+     * by concatenating them into the batch script.
+     *
+     * @param installHome  installation home
+     * @param batchScript  the file the scripts are concatenated into
+     * @param scripts  the scripts to execute
+     * @param javaOptions  JVM options of the CLI process
+     * @param messageWriter  message writer
+     * @throws ProvisioningException  in case the scripts could not be concatenated or the CLI process failed
+     */
+    public static void runCliScripts(Path installHome, Path batchScript, List<Path> scripts, List<String> javaOptions, MessageWriter messageWriter) throws ProvisioningException {
+        if(scripts.size() == 1) {
+            runCliScript(installHome, scripts.get(0), javaOptions, messageWriter);
+            return;
+        }
+        try {
+            Files.createDirectories(batchScript.getParent());
+            try (BufferedWriter writer = Files.newBufferedWriter(batchScript)) {
+                for (Path script : scripts) {
+                    try (BufferedReader reader = Files.newBufferedReader(script)) {
+                        String line = reader.readLine();
+                        while (line != null) {
+                            writer.write(line);
+                            writer.newLine();
+                            line = reader.readLine();
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new ProvisioningException(Errors.writeFile(batchScript), e);
+        }
+        runCliScript(installHome, batchScript, javaOptions, messageWriter);
+    }
+
     public static void runCliScript(Path installHome, Path script, MessageWriter messageWriter) throws ProvisioningException {
+        runCliScript(installHome, script, Collections.emptyList(), messageWriter);
+    }
+
+    public static void runCliScript(Path installHome, Path script, List<String> javaOptions, MessageWriter messageWriter) throws ProvisioningException {
         final CliCommandBuilder builder = CliCommandBuilder
                 .of(installHome)
                 .addCliArgument("--no-operation-validation")
                 .addCliArgument("--echo-command")
                 .addCliArgument("--file=" + script);
+        for(String option : javaOptions) {
+            builder.addJavaOption(option);
+        }
         messageWriter.verbose("Executing jboss console: " + builder.build());
         final ProcessBuilder processBuilder = new ProcessBuilder(builder.build()).redirectErrorStream(true);
         processBuilder.environment().put("JBOSS_HOME", installHome.toString());
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.provisioning.plugin.wildfly;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.provisioning.plugin.wildfly.config.FileFilter;
+import org.jboss.provisioning.plugin.wildfly.config.FilePermission;
+
+/**
+ * File permissions collected from the tasks of all the packages, which are
+ * applied in a single walk over the installation once all the packages have been processed.
+ *
+ * Every permission is matched against the final content of the installation, i.e. also
+ * against the paths added by the packages processed after the package that declared it.
+ * (When the permissions were applied package by package, the paths added by the following
+ * packages were not affected.) When several permissions match the same path,
+ * the permission added last wins.
+ *
+ * @author Alexey Loubyansky
+ */
+class FilePermissions {
+
+    // the same permissions are often declared by many packages, they are kept once in the position they were added last
+    private final Map<String, FilePermission> permissions = new LinkedHashMap<>();
+    private FilePermission[] lastFirst;
+
+    void add(List<FilePermission> filePermissions) {
+        for(FilePermission perm : filePermissions) {
+            final StringBuilder buf = new StringBuilder(perm.getValue());
+            for(FileFilter filter : perm.getFilters()) {
+                buf.append(filter.isInclude() ? '+' : '-').append(filter.getPattern());
+            }
+            final String key = buf.toString();
+            permissions.remove(key);
+            permissions.put(key, perm);
+        }
+        lastFirst = null;
+    }
+
+    boolean isEmpty() {
+        return permissions.isEmpty();
+    }
+
+    void apply(Path installDir) throws IOException {
+        if(lastFirst == null) {
+            lastFirst = new FilePermission[permissions.size()];
+            int i = lastFirst.length;
+            for(FilePermission perm : permissions.values()) {
+                lastFirst[--i] = perm;
+            }
+        }
+        Files.walkFileTree(installDir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                apply(dir, installDir.relativize(dir).toString());
+                return FileVisitResult.CONTINUE;
+            }
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                apply(file, installDir.relativize(file).toString());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void apply(Path path, String relative) throws IOException {
+        for(FilePermission perm : lastFirst) {
+            if(perm.includeFile(relative)) {
+                final Set<PosixFilePermission> permission = perm.getPermission();
+                if(!Files.getPosixFilePermissions(path).equals(permission)) {
+                    Files.setPosixFilePermissions(path, permission);
+                }
+                return;
+            }
+        }
+    }
+}
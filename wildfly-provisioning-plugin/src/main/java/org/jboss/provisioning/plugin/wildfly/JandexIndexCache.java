@@ -0,0 +1,201 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.provisioning.plugin.wildfly;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jboss.jandex.Indexer;
+import org.jboss.provisioning.util.HashUtils;
+
+/**
+ * Jandex indexes of the module artifacts keyed by the SHA-1 checksum of the artifact.
+ *
+ * The index of an artifact is generated once into key/checksum/artifactName-jandex.ext
+ * under the cache directory, where the key identifies the Jandex version and the format
+ * of the generated index jar, so that an upgraded indexer never picks up the indexes
+ * written by a different one. If the cache directory is shared by provisioning runs,
+ * the runs following the first one reuse the index instead of indexing the artifact again.
+ * The indexes are generated by a pool of workers, so that distinct artifacts
+ * are indexed concurrently.
+ *
+ * @author Alexey Loubyansky
+ */
+class JandexIndexCache {
+
+    /**
+     * The format of the generated index jar, must be incremented whenever the way
+     * the index jar is written changes.
+     */
+    private static final int INDEX_FORMAT = 1;
+
+    private static String indexerKey;
+
+    private final Path dir;
+    private final int workers;
+    private ExecutorService executor;
+    private final Map<Path, Future<Path>> indexes = new HashMap<>();
+
+    JandexIndexCache(Path dir, int workers) {
+        if(workers < 1) {
+            throw new IllegalArgumentException("The number of workers must be positive: " + workers);
+        }
+        this.dir = dir.resolve(getIndexerKey());
+        this.workers = workers;
+    }
+
+    /**
+     * Schedules the index of the artifact to be located or generated in the background.
+     *
+     * @param artifact  module artifact
+     */
+    synchronized void submit(Path artifact) {
+        if(indexes.containsKey(artifact)) {
+            return;
+        }
+        if(executor == null) {
+            executor = Executors.newFixedThreadPool(workers);
+        }
+        indexes.put(artifact, executor.submit(() -> index(artifact)));
+    }
+
+    /**
+     * Returns the jar containing the Jandex index of the artifact waiting
+     * for it to be generated if necessary.
+     *
+     * @param artifact  module artifact
+     * @return  the jar containing the index
+     * @throws IOException  in case the index could not be generated
+     */
+    Path getIndex(Path artifact) throws IOException {
+        final Future<Path> index;
+        synchronized(this) {
+            index = indexes.get(artifact);
+        }
+        if(index == null) {
+            return index(artifact);
+        }
+        try {
+            return index.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while indexing " + artifact, e);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to index " + artifact, e.getCause());
+        }
+    }
+
+    synchronized void close() {
+        if(executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        indexes.clear();
+    }
+
+    static String getIndexFileName(Path artifact) {
+        final String artifactFileName = artifact.getFileName().toString();
+        final int lastDot = artifactFileName.lastIndexOf('.');
+        if(lastDot < 0) {
+            return artifactFileName + "-jandex";
+        }
+        return new StringBuilder().append(artifactFileName, 0, lastDot)
+                .append("-jandex")
+                .append(artifactFileName, lastDot, artifactFileName.length()).toString();
+    }
+
+    static synchronized String getIndexerKey() {
+        if(indexerKey != null) {
+            return indexerKey;
+        }
+        String version = null;
+        final Package pkg = Indexer.class.getPackage();
+        if(pkg != null) {
+            version = pkg.getImplementationVersion();
+        }
+        if(version == null) {
+            // the version is not in the manifest, the checksum of the jar identifies the indexer then
+            final CodeSource source = Indexer.class.getProtectionDomain().getCodeSource();
+            if(source != null && source.getLocation() != null) {
+                try {
+                    final Path jar = Paths.get(source.getLocation().toURI());
+                    if(Files.isRegularFile(jar)) {
+                        version = HashUtils.hashFile(jar);
+                    }
+                } catch (URISyntaxException | IllegalArgumentException | IOException e) {
+                }
+            }
+        }
+        if(version == null) {
+            // the indexes generated by an unidentified indexer are not shared with other runs
+            version = UUID.randomUUID().toString();
+        }
+        final StringBuilder buf = new StringBuilder();
+        buf.append('v').append(INDEX_FORMAT).append('-');
+        for(int i = 0; i < version.length(); ++i) {
+            final char c = version.charAt(i);
+            buf.append(Character.isLetterOrDigit(c) || c == '.' || c == '-' ? c : '_');
+        }
+        indexerKey = buf.toString();
+        return indexerKey;
+    }
+
+    private Path index(Path artifact) throws IOException {
+        // the checksum and the index are computed from a single read of the artifact
+        final byte[] content = JarPipeline.readContent(artifact);
+        final Path entryDir = dir.resolve(content == null ? HashUtils.hashFile(artifact) : HashUtils.bytesToHexString(HashUtils.hash(content)));
+        final Path index = entryDir.resolve(getIndexFileName(artifact));
+        if(Files.exists(index)) {
+            return index;
+        }
+        Files.createDirectories(entryDir);
+        // the index is generated into a temporary file and then moved, so that
+        // concurrent runs never see a partially written index
+        final Path tmp = entryDir.resolve(UUID.randomUUID() + ".tmp");
+        try {
+            try(OutputStream out = Files.newOutputStream(tmp)) {
+                JandexIndexer.createIndex(artifact, content, out);
+            }
+            try {
+                Files.move(tmp, index, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // generated concurrently by another run
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return index;
+    }
+}
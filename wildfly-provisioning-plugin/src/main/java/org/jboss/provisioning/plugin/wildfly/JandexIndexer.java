@@ -22,9 +22,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.Enumeration;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
+import java.nio.file.Path;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 import org.jboss.jandex.Index;
@@ -40,43 +38,55 @@ class JandexIndexer {
     private static final Logger log = Logger.getLogger(JandexIndexer.class);
 
     public static void createIndex(File jarFile, OutputStream target) throws IOException {
-        ZipOutputStream zo;
-
-        Indexer indexer = new Indexer();
-
-        JarFile jar = new JarFile(jarFile);
+        createIndex(jarFile.toPath(), null, target);
+    }
 
-        zo = new ZipOutputStream(target);
+    /**
+     * @param jarFile  the jar to index
+     * @param content  the content of the jar if it has already been read or null
+     * @param target  the stream the jar with the index is written to
+     */
+    static void createIndex(Path jarFile, byte[] content, OutputStream target) throws IOException {
         try {
-            Enumeration<JarEntry> entries = jar.entries();
-            while (entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
+            new JarPipeline(jarFile, content).add(newIndexHandler(target)).process();
+        } finally {
+            safeClose(target);
+        }
+    }
 
-                if (entry.getName().endsWith(".class")) {
-                    try {
-                        final InputStream stream = jar.getInputStream(entry);
-                        try {
-                            indexer.index(stream);
-                        } finally {
-                            safeClose(stream);
-                        }
-                    } catch (Exception e) {
-                        String message = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
-                        log.error("Could not index " + entry.getName() + ": " + message, e);
-                    }
-                }
+    /**
+     * Indexes the classes streamed through the pipeline and writes the index
+     * as META-INF/jandex.idx entry of the jar written to the target
+     * once all the entries have been processed.
+     */
+    static JarPipeline.EntryHandler newIndexHandler(OutputStream target) {
+        final Indexer indexer = new Indexer();
+        return new JarPipeline.EntryHandler() {
+            @Override
+            public boolean accepts(String entryName) {
+                return entryName.endsWith(".class");
             }
 
-            zo.putNextEntry(new ZipEntry("META-INF/jandex.idx"));
+            @Override
+            public void handle(ZipEntry entry, InputStream in) {
+                try {
+                    indexer.index(in);
+                } catch (Exception e) {
+                    String message = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+                    log.error("Could not index " + entry.getName() + ": " + message, e);
+                }
+            }
 
-            IndexWriter writer = new IndexWriter(zo);
-            Index index = indexer.complete();
-            writer.write(index);
-        } finally {
-            safeClose(zo);
-            safeClose(jar);
-            safeClose(target);
-        }
+            @Override
+            public void complete() throws IOException {
+                final ZipOutputStream zo = new ZipOutputStream(target);
+                zo.putNextEntry(new ZipEntry("META-INF/jandex.idx"));
+                IndexWriter writer = new IndexWriter(zo);
+                Index index = indexer.complete();
+                writer.write(index);
+                zo.finish();
+            }
+        };
     }
 
 
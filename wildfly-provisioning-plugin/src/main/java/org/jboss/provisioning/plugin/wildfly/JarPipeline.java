@@ -0,0 +1,386 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.provisioning.plugin.wildfly;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import org.jboss.provisioning.plugin.wildfly.config.CopyArtifact;
+import org.jboss.provisioning.util.PmCollections;
+
+/**
+ * Processes the entries of an artifact reading its content only once for
+ * the copy of the artifact and all the handlers. Each entry is decoded once
+ * and streamed to the handlers accepting it.
+ *
+ * The content of the artifact is read into memory, the copy is written from it
+ * and the entries are located through the central directory, so that entries
+ * stored with data descriptors are read correctly. Artifacts bigger than
+ * {@link #IN_MEMORY_LIMIT} and zip64 archives are copied first and then
+ * read through {@link ZipFile}.
+ *
+ * The artifact is never hard-linked to the target of the artifact copy
+ * since the installed files may be modified in place (e.g. their permissions)
+ * which would also modify the artifact in the repository.
+ *
+ * @author Alexey Loubyansky
+ */
+class JarPipeline {
+
+    interface EntryHandler {
+
+        boolean accepts(String entryName) throws IOException;
+
+        void handle(ZipEntry entry, InputStream in) throws IOException;
+
+        default void complete() throws IOException {
+        }
+    }
+
+    /**
+     * Artifacts of this size and bigger are not read into memory.
+     */
+    static final long IN_MEMORY_LIMIT = 128 * 1024 * 1024;
+
+    private static final int LOC_SIG = 0x04034b50;
+    private static final int CEN_SIG = 0x02014b50;
+    private static final int END_SIG = 0x06054b50;
+    private static final int LOC_HEADER = 30;
+    private static final int CEN_HEADER = 46;
+    private static final int END_HEADER = 22;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    /**
+     * Reads the content of the artifact if it is not too big to be processed in memory.
+     *
+     * @param artifact  the artifact
+     * @return  the content of the artifact or null if it is too big
+     * @throws IOException  in case the artifact could not be read
+     */
+    static byte[] readContent(Path artifact) throws IOException {
+        return Files.size(artifact) < IN_MEMORY_LIMIT ? Files.readAllBytes(artifact) : null;
+    }
+
+    private final Path artifact;
+    private byte[] content;
+    private Path copyTarget;
+    private List<EntryHandler> handlers = Collections.emptyList();
+
+    JarPipeline(Path artifact) {
+        this.artifact = artifact;
+    }
+
+    /**
+     * @param artifact  the artifact
+     * @param content  the content of the artifact already read by the caller
+     */
+    JarPipeline(Path artifact, byte[] content) {
+        this.artifact = artifact;
+        this.content = content;
+    }
+
+    JarPipeline copyTo(Path target) {
+        this.copyTarget = target;
+        return this;
+    }
+
+    JarPipeline add(EntryHandler handler) {
+        handlers = PmCollections.add(handlers, handler);
+        return this;
+    }
+
+    void process() throws IOException {
+        if(handlers.isEmpty()) {
+            if(copyTarget != null) {
+                Files.createDirectories(copyTarget.getParent());
+                Files.copy(artifact, copyTarget, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return;
+        }
+        if(content == null) {
+            content = readContent(artifact);
+        }
+        final List<LocatedEntry> entries = content == null ? null : readCentralDirectory(content);
+        if(copyTarget != null) {
+            Files.createDirectories(copyTarget.getParent());
+            if(content == null) {
+                Files.copy(artifact, copyTarget, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.write(copyTarget, content);
+            }
+        }
+        if(entries == null) {
+            processZipFile();
+        } else {
+            final Inflater inflater = new Inflater(true);
+            try {
+                final List<EntryHandler> accepting = new ArrayList<>(handlers.size());
+                for(LocatedEntry entry : entries) {
+                    for(EntryHandler handler : handlers) {
+                        if(handler.accepts(entry.getName())) {
+                            accepting.add(handler);
+                        }
+                    }
+                    if(!accepting.isEmpty()) {
+                        inflater.reset();
+                        dispatch(entry, openEntry(entry, inflater), accepting);
+                        accepting.clear();
+                    }
+                }
+            } finally {
+                inflater.end();
+            }
+        }
+        for(EntryHandler handler : handlers) {
+            handler.complete();
+        }
+    }
+
+    private void processZipFile() throws IOException {
+        try(ZipFile zip = new ZipFile(artifact.toFile())) {
+            final List<EntryHandler> accepting = new ArrayList<>(handlers.size());
+            final Enumeration<? extends ZipEntry> entries = zip.entries();
+            while(entries.hasMoreElements()) {
+                final ZipEntry entry = entries.nextElement();
+                for(EntryHandler handler : handlers) {
+                    if(handler.accepts(entry.getName())) {
+                        accepting.add(handler);
+                    }
+                }
+                if(!accepting.isEmpty()) {
+                    dispatch(entry, zip.getInputStream(entry), accepting);
+                    accepting.clear();
+                }
+            }
+        }
+    }
+
+    private static void dispatch(ZipEntry entry, InputStream entryIn, List<EntryHandler> accepting) throws IOException {
+        if(accepting.size() == 1) {
+            try(InputStream in = entryIn) {
+                accepting.get(0).handle(entry, in);
+            }
+            return;
+        }
+        final byte[] bytes;
+        try(InputStream in = entryIn) {
+            bytes = readEntry(in);
+        }
+        for(EntryHandler handler : accepting) {
+            handler.handle(entry, new ByteArrayInputStream(bytes));
+        }
+    }
+
+    private InputStream openEntry(LocatedEntry entry, Inflater inflater) throws IOException {
+        final int loc = (int) entry.offset;
+        final int data = loc + LOC_HEADER + readShort(content, loc + 26) + readShort(content, loc + 28);
+        final int size = (int) entry.getCompressedSize();
+        if(data + size > content.length) {
+            throw new ZipException("Truncated entry " + entry.getName() + " in " + artifact);
+        }
+        if(entry.getMethod() == ZipEntry.STORED) {
+            return new ByteArrayInputStream(content, data, size);
+        }
+        // an extra byte after the deflated data is expected by the inflater in nowrap mode
+        return new InflaterInputStream(new ByteArrayInputStream(content, data, Math.min(size + 1, content.length - data)), inflater);
+    }
+
+    private static class LocatedEntry extends ZipEntry {
+        final long offset;
+
+        LocatedEntry(String name, long offset) {
+            super(name);
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * Reads the entries from the central directory of the archive.
+     *
+     * @return  the entries or null if the archive has to be read through {@link ZipFile}
+     */
+    private static List<LocatedEntry> readCentralDirectory(byte[] content) {
+        int end = content.length - END_HEADER;
+        final int endMin = Math.max(0, end - 0xFFFF);
+        while(end >= endMin && readInt(content, end) != END_SIG) {
+            --end;
+        }
+        if(end < endMin) {
+            return null;
+        }
+        final int total = readShort(content, end + 10);
+        final long cenOffset = readUnsignedInt(content, end + 16);
+        if(total == 0xFFFF || cenOffset == ZIP64_MAGIC || readShort(content, end + 4) != 0) {
+            return null;
+        }
+        final List<LocatedEntry> entries = new ArrayList<>(total);
+        int cen = (int) cenOffset;
+        for(int i = 0; i < total; ++i) {
+            if(cen + CEN_HEADER > content.length || readInt(content, cen) != CEN_SIG) {
+                return null;
+            }
+            final int flags = readShort(content, cen + 8);
+            final int method = readShort(content, cen + 10);
+            final long compressedSize = readUnsignedInt(content, cen + 20);
+            final long size = readUnsignedInt(content, cen + 24);
+            final int nameLength = readShort(content, cen + 28);
+            final long loc = readUnsignedInt(content, cen + 42);
+            if((flags & 1) != 0 || method != ZipEntry.STORED && method != ZipEntry.DEFLATED
+                    || compressedSize == ZIP64_MAGIC || size == ZIP64_MAGIC || loc == ZIP64_MAGIC
+                    || loc + LOC_HEADER > content.length || readInt(content, (int) loc) != LOC_SIG) {
+                // encrypted, unsupported or zip64 entries are left to ZipFile
+                return null;
+            }
+            final LocatedEntry entry = new LocatedEntry(new String(content, cen + CEN_HEADER, nameLength, StandardCharsets.UTF_8), loc);
+            entry.setMethod(method);
+            entry.setCompressedSize(compressedSize);
+            entry.setSize(size);
+            entries.add(entry);
+            cen += CEN_HEADER + nameLength + readShort(content, cen + 30) + readShort(content, cen + 32);
+        }
+        return entries;
+    }
+
+    private static int readShort(byte[] b, int i) {
+        return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8;
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return readShort(b, i) | readShort(b, i + 2) << 16;
+    }
+
+    private static long readUnsignedInt(byte[] b, int i) {
+        return readInt(b, i) & 0xFFFFFFFFL;
+    }
+
+    private static byte[] readEntry(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buf = new byte[8192];
+        int read;
+        while((read = in.read(buf)) != -1) {
+            out.write(buf, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Copies the content of the schema directory of the artifact to the target directory.
+     */
+    static EntryHandler schemaExtractor(Path targetDir) {
+        final Path root = targetDir.normalize();
+        final String prefix = WfConstants.SCHEMA + '/';
+        return new EntryHandler() {
+            @Override
+            public boolean accepts(String entryName) {
+                return entryName.startsWith(prefix) && entryName.length() > prefix.length();
+            }
+
+            @Override
+            public void handle(ZipEntry entry, InputStream in) throws IOException {
+                final Path target = resolve(root, entry.getName().substring(prefix.length()));
+                if(entry.isDirectory()) {
+                    Files.createDirectories(target);
+                } else {
+                    Files.createDirectories(target.getParent());
+                    Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        };
+    }
+
+    /**
+     * Extracts the entries of the artifact included by the filters of the copy-artifact task.
+     * An entry is extracted only if the directories it belongs to are included too.
+     */
+    static EntryHandler extractor(Path targetDir, CopyArtifact copy) {
+        final Path root = targetDir.normalize();
+        return new EntryHandler() {
+            final Map<String, Boolean> includedDirs = new HashMap<>();
+
+            @Override
+            public boolean accepts(String entryName) throws IOException {
+                final boolean dir = entryName.endsWith("/");
+                final String path = dir ? entryName.substring(0, entryName.length() - 1) : entryName;
+                int i = path.indexOf('/');
+                while(i > 0) {
+                    if(!includeDir(path.substring(0, i))) {
+                        return false;
+                    }
+                    i = path.indexOf('/', i + 1);
+                }
+                return dir ? includeDir(path) : copy.includeFile(path);
+            }
+
+            @Override
+            public void handle(ZipEntry entry, InputStream in) throws IOException {
+                if(!entry.isDirectory()) {
+                    Files.copy(in, resolve(root, entry.getName()));
+                }
+            }
+
+            private boolean includeDir(String path) throws IOException {
+                Boolean included = includedDirs.get(path);
+                if(included == null) {
+                    included = copy.includeFile(path);
+                    includedDirs.put(path, included);
+                    if(included) {
+                        final Path dir = resolve(root, path);
+                        try {
+                            Files.createDirectory(dir);
+                        } catch (FileAlreadyExistsException e) {
+                            if(!Files.isDirectory(dir)) {
+                                throw e;
+                            }
+                        }
+                    }
+                }
+                return included;
+            }
+        };
+    }
+
+    /**
+     * Resolves the entry against the target directory making sure
+     * the result does not escape the target directory.
+     */
+    private static Path resolve(Path targetDir, String entryName) throws IOException {
+        final Path target = targetDir.resolve(entryName).normalize();
+        if(!target.startsWith(targetDir)) {
+            throw new IOException("Entry " + entryName + " is outside of the target directory " + targetDir);
+        }
+        return target;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.provisioning.plugin.wildfly;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jboss.provisioning.util.HashUtils;
+
+/**
+ * Artifact placeholders of a module.xml template.
+ *
+ * Each placeholder is described by {@link #TOKEN_SIZE} offsets in the template:
+ * the start and the end of the indentation, the end of the closing tag or of the name attribute
+ * up to the property expression, the start and the end of the property expression
+ * (or -1 for a closing tag) and the start and the end of the rest of the artifact element.
+ * The offsets are valid only for the content the template was parsed from,
+ * which is identified by its SHA-1 checksum.
+ *
+ * @author Alexey Loubyansky
+ */
+class ModuleTemplate {
+
+    static final int TOKEN_SIZE = 7;
+    static final int INDENT_START = 0;
+    static final int INDENT_END = 1;
+    static final int NAME_END = 2;
+    static final int PROPERTY_START = 3;
+    static final int PROPERTY_END = 4;
+    static final int TAIL_START = 5;
+    static final int TAIL_END = 6;
+
+    private static final Pattern ARTIFACT_PATTERN = Pattern.compile("(\\s*)((<artifact)(\\s+name=\")(\\$\\{)(.*)(\\})(\".*>)|(</artifact>))");
+
+    static ModuleTemplate parse(String content) throws IOException {
+        final Matcher m = ARTIFACT_PATTERN.matcher(content);
+        int[] tokens = new int[TOKEN_SIZE * 8];
+        int i = 0;
+        while(m.find()) {
+            if(i == tokens.length) {
+                tokens = Arrays.copyOf(tokens, tokens.length * 2);
+            }
+            tokens[i + INDENT_START] = m.start(1);
+            tokens[i + INDENT_END] = m.end(1);
+            if(m.end(7) < 0) {
+                tokens[i + NAME_END] = m.end(2);
+                tokens[i + PROPERTY_START] = -1;
+                tokens[i + PROPERTY_END] = -1;
+                tokens[i + TAIL_START] = -1;
+                tokens[i + TAIL_END] = -1;
+            } else {
+                tokens[i + NAME_END] = m.end(4);
+                tokens[i + PROPERTY_START] = m.start(6);
+                tokens[i + PROPERTY_END] = m.end(6);
+                tokens[i + TAIL_START] = m.start(8);
+                tokens[i + TAIL_END] = m.end(8);
+            }
+            i += TOKEN_SIZE;
+        }
+        final String[] properties = new String[i / TOKEN_SIZE];
+        for(int t = 0; t < i; t += TOKEN_SIZE) {
+            if(tokens[t + PROPERTY_START] >= 0) {
+                properties[t / TOKEN_SIZE] = content.substring(tokens[t + PROPERTY_START], tokens[t + PROPERTY_END]);
+            }
+        }
+        return new ModuleTemplate(content.length(), HashUtils.hash(content), Arrays.copyOf(tokens, i), properties);
+    }
+
+    static ModuleTemplate read(DataInput in) throws IOException {
+        final int length = in.readInt();
+        final String hash = in.readUTF();
+        final int[] tokens = new int[in.readInt() * TOKEN_SIZE];
+        final String[] properties = new String[tokens.length / TOKEN_SIZE];
+        for(int i = 0; i < tokens.length; i += TOKEN_SIZE) {
+            for(int j = 0; j < TOKEN_SIZE; ++j) {
+                tokens[i + j] = in.readInt();
+            }
+            if(tokens[i + PROPERTY_START] >= 0) {
+                properties[i / TOKEN_SIZE] = in.readUTF();
+            }
+        }
+        return new ModuleTemplate(length, hash, tokens, properties);
+    }
+
+    final int length;
+    // SHA-1 checksum of the content the template was parsed from
+    final String hash;
+    final int[] tokens;
+    // the property expressions of the placeholders, null for the closing tags
+    final String[] properties;
+
+    private ModuleTemplate(int length, String hash, int[] tokens, String[] properties) {
+        this.length = length;
+        this.hash = hash;
+        this.tokens = tokens;
+        this.properties = properties;
+    }
+
+    /**
+     * Checks whether the template was parsed from the content.
+     *
+     * @param content  module.xml content
+     * @return  true if the offsets of the template apply to the content, otherwise false
+     * @throws IOException  in case the checksum could not be calculated
+     */
+    boolean isParsedFrom(String content) throws IOException {
+        return length == content.length() && hash.equals(HashUtils.hash(content));
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeInt(length);
+        out.writeUTF(hash);
+        out.writeInt(properties.length);
+        for(int i = 0; i < tokens.length; i += TOKEN_SIZE) {
+            for(int j = 0; j < TOKEN_SIZE; ++j) {
+                out.writeInt(tokens[i + j]);
+            }
+            if(tokens[i + PROPERTY_START] >= 0) {
+                out.writeUTF(properties[i / TOKEN_SIZE]);
+            }
+        }
+    }
+}
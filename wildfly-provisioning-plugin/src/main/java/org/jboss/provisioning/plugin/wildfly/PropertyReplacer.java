@@ -23,8 +23,13 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.jboss.provisioning.util.HashUtils;
 
 /**
  * Utility that copies content from reader to writer replacing the properties.
@@ -39,109 +44,185 @@ public class PropertyReplacer {
     private static final int RESOLVED = 3;
     private static final int DEFAULT = 4;
 
+    private static final int BUFFER_SIZE = 8192;
+
     public static void copy(final Path src, final Path target, PropertyResolver resolver) throws IOException {
         if(!Files.exists(target.getParent())) {
             Files.createDirectories(target.getParent());
         }
+        try(FileChannel in = FileChannel.open(src, StandardOpenOption.READ)) {
+            if(isVerbatim(in)) {
+                transfer(in, target);
+                return;
+            }
+        }
         try(BufferedReader reader = Files.newBufferedReader(src);
                 BufferedWriter writer = Files.newBufferedWriter(target)) {
             copy(reader, writer, resolver);
         }
     }
 
+    /**
+     * Copies the file which was found to be copied verbatim by {@link #copy(Path, Path, PropertyResolver)}
+     * without decoding it, provided its content still matches the checksum.
+     *
+     * @param src  the file to copy
+     * @param target  the target file
+     * @param hash  SHA-1 checksum of the content which is known to be copied verbatim
+     * @return  true if the file was copied, false if its content does not match the checksum
+     * @throws IOException  in case the file could not be copied
+     */
+    public static boolean copyVerbatim(final Path src, final Path target, String hash) throws IOException {
+        final byte[] content = Files.readAllBytes(src);
+        if(!hash.equals(HashUtils.bytesToHexString(HashUtils.hash(content)))) {
+            return false;
+        }
+        if(!Files.exists(target.getParent())) {
+            Files.createDirectories(target.getParent());
+        }
+        Files.write(target, content);
+        return true;
+    }
+
+    /**
+     * Checks whether copying the file replacing the properties would produce
+     * an identical copy, i.e. the file does not contain a '$'. In UTF-8 the byte
+     * of '$' never appears as a part of a multibyte character, so the content
+     * does not have to be decoded.
+     */
+    public static boolean isVerbatim(Path file) throws IOException {
+        try(FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            return isVerbatim(in);
+        }
+    }
+
+    private static boolean isVerbatim(FileChannel in) throws IOException {
+        final ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        long position = 0;
+        int read;
+        while((read = in.read(buf, position)) > 0) {
+            final byte[] bytes = buf.array();
+            for(int i = 0; i < read; ++i) {
+                if(bytes[i] == '$') {
+                    return false;
+                }
+            }
+            position += read;
+            buf.clear();
+        }
+        return true;
+    }
+
+    private static void transfer(FileChannel in, Path target) throws IOException {
+        try(FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final long size = in.size();
+            long position = 0;
+            while(position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+        }
+    }
+
     public static void copy(final Reader reader, Writer writer, PropertyResolver properties) throws IOException {
         int state = INITIAL;
         final StringBuilder buf = new StringBuilder();
-        int ch = reader.read();
-        while (ch >= 0) {
-            switch (state) {
-                case INITIAL: {
-                    switch (ch) {
-                        case '$': {
-                            state = GOT_DOLLAR;
-                            break;
-                        }
-                        default: {
-                            writer.write(ch);
-                        }
+        final char[] chars = new char[BUFFER_SIZE];
+        int read;
+        while ((read = reader.read(chars)) >= 0) {
+            int i = 0;
+            while (i < read) {
+                if (state == INITIAL) {
+                    // copy the run of chars up to the next '$' in bulk
+                    final int start = i;
+                    while (i < read && chars[i] != '$') {
+                        ++i;
+                    }
+                    if (i > start) {
+                        writer.write(chars, start, i - start);
                     }
-                    break;
+                    if (i < read) {
+                        state = GOT_DOLLAR;
+                        ++i;
+                    }
+                    continue;
                 }
-                case GOT_DOLLAR: {
-                    switch (ch) {
-                        case '$': {
-                            // escaped $
-                            buf.setLength(0);
-                            writer.write(ch);
-                            state = INITIAL;
-                            break;
-                        }
-                        case '{': {
-                            state = GOT_OPEN_BRACE;
-                            break;
-                        }
-                        default: {
-                            // invalid; emit and resume
-                            writer.append('$');
-                            writer.write(ch);
-                            buf.setLength(0);
-                            state = INITIAL;
+                final char ch = chars[i++];
+                switch (state) {
+                    case GOT_DOLLAR: {
+                        switch (ch) {
+                            case '$': {
+                                // escaped $
+                                buf.setLength(0);
+                                writer.write(ch);
+                                state = INITIAL;
+                                break;
+                            }
+                            case '{': {
+                                state = GOT_OPEN_BRACE;
+                                break;
+                            }
+                            default: {
+                                // invalid; emit and resume
+                                writer.append('$');
+                                writer.write(ch);
+                                buf.setLength(0);
+                                state = INITIAL;
+                            }
                         }
+                        break;
                     }
-                    break;
-                }
-                case GOT_OPEN_BRACE: {
-                    switch (ch) {
-                        case '}':
-                        case ',': {
-                            final String name = buf.toString();
-                            if ("/".equals(name)) {
-                                writer.append(File.separatorChar);
-                                state = ch == '}' ? INITIAL : RESOLVED;
-                            } else {
-                                final String val = properties.resolveProperty(name);
-                                if (val != null) {
-                                    writer.write(val);
+                    case GOT_OPEN_BRACE: {
+                        switch (ch) {
+                            case '}':
+                            case ',': {
+                                final String name = buf.toString();
+                                if ("/".equals(name)) {
+                                    writer.append(File.separatorChar);
                                     state = ch == '}' ? INITIAL : RESOLVED;
-                                } else if (ch == ',') {
-                                    state = DEFAULT;
                                 } else {
-                                    throw new IllegalStateException("Failed to resolve property: " + buf);
+                                    final String val = properties.resolveProperty(name);
+                                    if (val != null) {
+                                        writer.write(val);
+                                        state = ch == '}' ? INITIAL : RESOLVED;
+                                    } else if (ch == ',') {
+                                        state = DEFAULT;
+                                    } else {
+                                        throw new IllegalStateException("Failed to resolve property: " + buf);
+                                    }
                                 }
+                                buf.setLength(0);
+                                break;
+                            }
+                            default: {
+                                buf.append(ch);
                             }
-                            buf.setLength(0);
-                            break;
-                        }
-                        default: {
-                            buf.appendCodePoint(ch);
                         }
+                        break;
                     }
-                    break;
-                }
-                case RESOLVED: {
-                    if (ch == '}') {
-                        state = INITIAL;
+                    case RESOLVED: {
+                        if (ch == '}') {
+                            state = INITIAL;
+                        }
+                        break;
                     }
-                    break;
-                }
-                case DEFAULT: {
-                    if (ch == '}') {
-                        state = INITIAL;
-                        final String val = properties.resolveProperty(buf.toString());
-                        if (val != null) {
-                            writer.write(val);
+                    case DEFAULT: {
+                        if (ch == '}') {
+                            state = INITIAL;
+                            final String val = properties.resolveProperty(buf.toString());
+                            if (val != null) {
+                                writer.write(val);
+                            } else {
+                                writer.write(buf.toString());
+                            }
                         } else {
-                            writer.write(buf.toString());
+                            buf.append(ch);
                         }
-                    } else {
-                        buf.appendCodePoint(ch);
+                        break;
                     }
-                    break;
+                    default:
+                        throw new IllegalStateException("Unexpected char seen: " + ch);
                 }
-                default:
-                    throw new IllegalStateException("Unexpected char seen: " + ch);
             }
-            ch = reader.read();
         }
         switch (state) {
             case GOT_DOLLAR: {
@@ -37,6 +37,7 @@ public interface WfConstants {
     String MODULES = "modules";
     String MODULES_ALL = "modules.all";
     String PM = "pm";
+    String PROVISIONING_PLAN = "provisioning.plan";
     String SCHEMA = "schema";
     String SCHEMA_GROUPS_TXT = "schema-groups.txt";
     String SCRIPTS = "scripts";
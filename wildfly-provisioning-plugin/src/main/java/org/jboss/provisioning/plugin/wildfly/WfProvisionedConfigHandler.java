@@ -22,9 +22,13 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.jboss.provisioning.ArtifactCoords;
@@ -55,8 +59,10 @@ class WfProvisionedConfigHandler implements ProvisionedConfigHandler {
     private static final String DOMAIN_CONFIG_NAME = "domain-config-name";
     private static final String HOST_CONFIG_NAME = "host-config-name";
 
-    private static final String TMP_DOMAIN_XML = "pm-tmp-domain.xml";
-    private static final String TMP_HOST_XML = "pm-tmp-host.xml";
+    private static final String TMP_DOMAIN = "pm-tmp-domain";
+    private static final String TMP_HOST = "pm-tmp-host";
+    private static final String CONFIGS_CLI = "pm-configs";
+    private static final String CONFIG_CLI = "pm-config";
 
     private static final int OP = 0;
     private static final int WRITE_ATTR = 1;
@@ -162,27 +168,65 @@ class WfProvisionedConfigHandler implements ProvisionedConfigHandler {
 
     private final ProvisioningRuntime runtime;
     private final MessageWriter messageWriter;
+    // the temporary host and domain configs and the batch script of handlers generating configs concurrently must not clash
+    private final String tmpDomainXml;
+    private final String tmpHostXml;
+    private final String configsCli;
+    private final String id;
+    private final List<String> javaOptions;
 
     private int opsTotal;
     private ManagedOp[] ops = new ManagedOp[]{new ManagedOp()};
     private NameFilter paramFilter;
 
     private StringBuilder embedBuf = new StringBuilder();
+    private String stopCmd;
     private String scriptName;
+    private String configDescr;
     private String tmpConfig;
     private List<String> opList = new ArrayList<>();
 
+    // the scripts are not executed one by one but all together in one CLI process by runScripts(),
+    // each script is mapped to the description of what it generates to be reported in case of a failure
+    private Map<Path, String> scripts = new LinkedHashMap<>();
+    // the same temporary config may be generated by several scripts but is deleted once
+    private Set<Path> tmpConfigs = new LinkedHashSet<>();
+
     private String hostName;
     private byte lookForHost;
 
     WfProvisionedConfigHandler(ProvisioningRuntime runtime) {
+        this(runtime, "");
+    }
+
+    /**
+     * @param runtime  provisioning runtime
+     * @param id  suffix of the temporary file names used by this handler
+     */
+    WfProvisionedConfigHandler(ProvisioningRuntime runtime, String id) {
         this.runtime = runtime;
         this.messageWriter = runtime.getMessageWriter();
+        this.tmpDomainXml = TMP_DOMAIN + id + ".xml";
+        this.tmpHostXml = TMP_HOST + id + ".xml";
+        this.configsCli = CONFIGS_CLI + id + ".cli";
+        this.id = id;
+        if(id.isEmpty()) {
+            javaOptions = Collections.emptyList();
+        } else {
+            // the embedded servers of the concurrent CLI processes must not share their data, temp and log dirs
+            final Path serverDir = runtime.getTmpPath("cli", "server" + id);
+            javaOptions = Arrays.asList(
+                    "-Djboss.server.data.dir=" + serverDir.resolve("data"),
+                    "-Djboss.server.temp.dir=" + serverDir.resolve("tmp"),
+                    "-Djboss.server.log.dir=" + serverDir.resolve("log"));
+        }
     }
 
     private void reset() {
         embedBuf.setLength(0);
+        stopCmd = null;
         scriptName = null;
+        configDescr = null;
         opList.clear();
         hostName = null;
         lookForHost = 0;
@@ -202,6 +246,7 @@ class WfProvisionedConfigHandler implements ProvisionedConfigHandler {
                 throw new ProvisioningException("Config " + config.getName() + " of model " + config.getModel() + " is missing property config-name");
             }
 
+            stopCmd = "stop-embedded-server";
             embedBuf.append("embed-server --admin-only=true --empty-config --remove-existing --server-config=")
             .append(logFile).append(" --jboss-home=").append(runtime.getStagedDir());
 
@@ -220,10 +265,11 @@ class WfProvisionedConfigHandler implements ProvisionedConfigHandler {
 
             String hostConfig = config.getProperties().get(HOST_CONFIG_NAME);
             if(hostConfig == null) {
-                tmpConfig = TMP_HOST_XML;
-                hostConfig = TMP_HOST_XML;
+                tmpConfig = tmpHostXml;
+                hostConfig = tmpHostXml;
             }
 
+            stopCmd = "stop-embedded-host-controller";
             embedBuf.append(
                     "embed-host-controller --empty-host-config --remove-existing-host-config --empty-domain-config --remove-existing-domain-config --host-config=")
                     .append(hostConfig).append(" --domain-config=").append(logFile).append(" --jboss-home=")
@@ -243,13 +289,14 @@ class WfProvisionedConfigHandler implements ProvisionedConfigHandler {
             }
             lookForHost = LOOK_FOR_HOST;
 
+            stopCmd = "stop-embedded-host-controller";
             embedBuf.append("embed-host-controller --empty-host-config --remove-existing-host-config --host-config=")
                     .append(logFile);
             final String domainConfig = config.getProperties().get(DOMAIN_CONFIG_NAME);
             if (domainConfig == null) {
-                tmpConfig = TMP_DOMAIN_XML;
+                tmpConfig = tmpDomainXml;
                 embedBuf.append(" --empty-domain-config --remove-existing-domain-config --domain-config=")
-                        .append(TMP_DOMAIN_XML);
+                        .append(tmpDomainXml);
             } else {
                 embedBuf.append(" --domain-config=").append(domainConfig);
             }
@@ -265,6 +312,7 @@ class WfProvisionedConfigHandler implements ProvisionedConfigHandler {
             throw new ProvisioningException("Unsupported config model " + config.getModel());
         }
         scriptName = logFile;
+        configDescr = "config " + config.getName() + " of model " + config.getModel() + " (" + logFile + ")";
     }
 
     @Override
@@ -441,7 +489,8 @@ class WfProvisionedConfigHandler implements ProvisionedConfigHandler {
         if(hostName != null) {
             embedBuf.append(" --temp-host-controller-name=").append(hostName);
         }
-        final Path script = runtime.getTmpPath("cli", scriptName);
+        // different configs may write files with the same name, the sequence number keeps their scripts apart
+        final Path script = runtime.getTmpPath("cli", CONFIG_CLI + id + '-' + scripts.size() + '-' + scriptName);
         try {
             Files.createDirectories(script.getParent());
             try(BufferedWriter opsWriter = Files.newBufferedWriter(script)) {
@@ -451,27 +500,74 @@ class WfProvisionedConfigHandler implements ProvisionedConfigHandler {
                     opsWriter.write(op);
                     opsWriter.newLine();
                 }
+                opsWriter.write(stopCmd);
+                opsWriter.newLine();
             }
         } catch (IOException e) {
             throw new ProvisioningException(Errors.writeFile(script), e);
         }
+        scripts.put(script, configDescr);
+        if(tmpConfig != null) {
+            tmpConfigs.add(runtime.getStagedDir().resolve(DOMAIN).resolve("configuration").resolve(tmpConfig));
+            tmpConfig = null;
+        }
+        reset();
+    }
+
+    /**
+     * Adds a script that should be executed after the config scripts.
+     *
+     * @param script  CLI script
+     */
+    void addScript(Path script) {
+        scripts.put(script, "script " + script.getFileName());
+    }
 
-        messageWriter.verbose(" Generating %s configuration", script.getFileName().toString());
+    /**
+     * Executes the scripts generated for the configs followed by the added scripts
+     * in a single CLI process.
+     *
+     * @throws ProvisioningException  in case the CLI process failed
+     */
+    void runScripts() throws ProvisioningException {
+        if(scripts.isEmpty()) {
+            return;
+        }
+        final StringBuilder names = new StringBuilder();
+        for(Path script : scripts.keySet()) {
+            if(names.length() > 0) {
+                names.append(", ");
+            }
+            names.append(script.getFileName());
+        }
+        messageWriter.verbose(" Generating %s configuration", names);
         try {
-            CliScriptRunner.runCliScript(runtime.getStagedDir(), script, messageWriter);
+            CliScriptRunner.runCliScripts(runtime.getStagedDir(), runtime.getTmpPath("cli", configsCli), new ArrayList<>(scripts.keySet()), javaOptions, messageWriter);
         } catch(ProvisioningException e) {
-            throw new ProvisioningException("Failed to generate " + script.getFileName() + " configuration", e);
+            // the scripts are executed in one process, so the failure is reported against all of them
+            final StringBuilder buf = new StringBuilder("Failed to generate ");
+            int i = 0;
+            for(String descr : scripts.values()) {
+                if(i++ > 0) {
+                    buf.append(", ");
+                }
+                buf.append(descr);
+            }
+            throw new ProvisioningException(buf.toString(), e);
         }
-        if(tmpConfig != null) {
-            final Path tmpPath = runtime.getStagedDir().resolve(DOMAIN).resolve("configuration").resolve(tmpConfig);
+        for(Path tmpPath : tmpConfigs) {
             if(Files.exists(tmpPath)) {
                 IoUtils.recursiveDelete(tmpPath);
             } else {
                 messageWriter.error("Expected path does not exist " + tmpPath);
             }
-            tmpConfig = null;
         }
-        reset();
+        scripts.clear();
+        tmpConfigs.clear();
+    }
+
+    static boolean isStandalone(ProvisionedConfig config) {
+        return STANDALONE.equals(config.getModel());
     }
 
     private static Set<String> parseSet(String str) throws ProvisioningDescriptionException {
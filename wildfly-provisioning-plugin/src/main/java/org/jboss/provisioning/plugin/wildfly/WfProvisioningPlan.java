@@ -0,0 +1,333 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.provisioning.plugin.wildfly;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jboss.provisioning.Constants;
+import org.jboss.provisioning.Errors;
+import org.jboss.provisioning.ProvisioningException;
+import org.jboss.provisioning.plugin.wildfly.config.CopyPath;
+import org.jboss.provisioning.plugin.wildfly.config.WildFlyPackageTasks;
+import org.jboss.provisioning.util.HashUtils;
+import org.jboss.provisioning.util.IoUtils;
+
+/**
+ * Precompiled description of what the WildFly plugin has to do for the packages of a feature-pack.
+ *
+ * The plan is generated when the feature-pack is built and stored as
+ * {@link WfConstants#PROVISIONING_PLAN} among the WildFly resources of the feature-pack.
+ * For each package with WildFly content it lists the directories and the files of the
+ * module tree in the order they have to be processed, the tokenized artifact placeholders
+ * of the module.xml templates, the parsed package tasks and the files of the property replacing
+ * copy-path tasks which don't contain any expression, so that at provisioning time
+ * the module trees don't have to be walked, the templates don't have to be scanned for
+ * the placeholders, the tasks don't have to be parsed and the files without expressions
+ * are copied without being decoded. The templates, the tasks and the files without expressions
+ * are recorded together with the SHA-1 checksums of their sources and are used only
+ * if the sources in the layout still match them.
+ *
+ * The packages not present in the plan have no WildFly content. A plan of an unsupported
+ * version is ignored, in which case the packages are processed as if there was no plan.
+ *
+ * @author Alexey Loubyansky
+ */
+public class WfProvisioningPlan {
+
+    private static final int MAGIC = 0x57465050;
+    private static final int VERSION = 4;
+
+    static final byte DIR = 0;
+    static final byte FILE = 1;
+    static final byte TEMPLATE = 2;
+
+    static class PackagePlan {
+        // module entry kinds and module dir relative paths in the processing order
+        private byte[] moduleKinds;
+        private String[] modulePaths;
+        private Map<Integer, ModuleTemplate> templates = Collections.emptyMap();
+        private WildFlyPackageTasks tasks;
+        // SHA-1 checksum of the tasks.xml the tasks were parsed from
+        private String tasksHash;
+        // pm/wildfly relative paths of the files copied with property replacement which don't contain expressions
+        // mapped to their SHA-1 checksums
+        private Map<String, String> verbatimFiles = Collections.emptyMap();
+
+        int getModuleEntriesTotal() {
+            return modulePaths == null ? 0 : modulePaths.length;
+        }
+
+        byte getModuleEntryKind(int i) {
+            return moduleKinds[i];
+        }
+
+        String getModuleEntryPath(int i) {
+            return modulePaths[i];
+        }
+
+        ModuleTemplate getModuleTemplate(int i) {
+            return templates.get(i);
+        }
+
+        /**
+         * Returns the tasks if they were parsed from the tasks.xml, otherwise null.
+         *
+         * @param tasksXml  tasks.xml in the layout
+         * @return  the tasks recorded in the plan or null
+         * @throws IOException  in case the checksum could not be calculated
+         */
+        WildFlyPackageTasks getTasks(Path tasksXml) throws IOException {
+            if(tasks == null || !Files.exists(tasksXml) || !tasksHash.equals(HashUtils.hashFile(tasksXml))) {
+                return null;
+            }
+            return tasks;
+        }
+
+        /**
+         * Returns the checksum of the file the plan recorded as not containing expressions
+         * or null if the file was not recorded.
+         *
+         * @param path  pm/wildfly relative path
+         * @return  SHA-1 checksum or null
+         */
+        String getVerbatimHash(String path) {
+            return verbatimFiles.get(path);
+        }
+    }
+
+    /**
+     * Generates the plan for the packages of the feature-pack layout in the directory.
+     *
+     * @param fpDir  feature-pack layout directory
+     * @throws ProvisioningException  in case the package content could not be processed
+     */
+    public static void write(Path fpDir) throws ProvisioningException {
+        final Map<String, PackagePlan> packages = new TreeMap<>();
+        final Path packagesDir = fpDir.resolve(Constants.PACKAGES);
+        if(Files.exists(packagesDir)) {
+            try(DirectoryStream<Path> stream = Files.newDirectoryStream(packagesDir)) {
+                for(Path pkgDir : stream) {
+                    final PackagePlan pkgPlan = newPackagePlan(pkgDir.resolve(WfConstants.PM).resolve(WfConstants.WILDFLY));
+                    if(pkgPlan != null) {
+                        packages.put(pkgDir.getFileName().toString(), pkgPlan);
+                    }
+                }
+            } catch (IOException e) {
+                throw new ProvisioningException(Errors.readDirectory(packagesDir), e);
+            }
+        }
+
+        final Path planFile = fpDir.resolve(Constants.RESOURCES).resolve(WfConstants.WILDFLY).resolve(WfConstants.PROVISIONING_PLAN);
+        try {
+            Files.createDirectories(planFile.getParent());
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(planFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(packages.size());
+                for(Map.Entry<String, PackagePlan> entry : packages.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    final PackagePlan pkgPlan = entry.getValue();
+                    final int entriesTotal = pkgPlan.getModuleEntriesTotal();
+                    out.writeInt(entriesTotal);
+                    for(int i = 0; i < entriesTotal; ++i) {
+                        out.writeByte(pkgPlan.moduleKinds[i]);
+                        out.writeUTF(pkgPlan.modulePaths[i]);
+                        if(pkgPlan.moduleKinds[i] == TEMPLATE) {
+                            pkgPlan.templates.get(i).write(out);
+                        }
+                    }
+                    out.writeBoolean(pkgPlan.tasks != null);
+                    if(pkgPlan.tasks != null) {
+                        out.writeUTF(pkgPlan.tasksHash);
+                        pkgPlan.tasks.write(out);
+                    }
+                    out.writeInt(pkgPlan.verbatimFiles.size());
+                    for(Map.Entry<String, String> verbatim : pkgPlan.verbatimFiles.entrySet()) {
+                        out.writeUTF(verbatim.getKey());
+                        out.writeUTF(verbatim.getValue());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new ProvisioningException(Errors.writeFile(planFile), e);
+        }
+    }
+
+    private static PackagePlan newPackagePlan(Path pmWfDir) throws IOException, ProvisioningException {
+        if(!Files.exists(pmWfDir)) {
+            return null;
+        }
+        final PackagePlan pkgPlan = new PackagePlan();
+        final Path moduleDir = pmWfDir.resolve(WfConstants.MODULE);
+        if(Files.exists(moduleDir)) {
+            final List<Byte> kinds = new ArrayList<>();
+            final List<String> paths = new ArrayList<>();
+            final Map<Integer, ModuleTemplate> templates = new HashMap<>();
+            Files.walkFileTree(moduleDir, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if(!dir.equals(moduleDir)) {
+                        kinds.add(DIR);
+                        paths.add(relativePath(moduleDir, dir));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if(file.getFileName().toString().equals(WfConstants.MODULE_XML)) {
+                        templates.put(paths.size(), ModuleTemplate.parse(IoUtils.readFile(file)));
+                        kinds.add(TEMPLATE);
+                    } else {
+                        kinds.add(FILE);
+                    }
+                    paths.add(relativePath(moduleDir, file));
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            pkgPlan.moduleKinds = new byte[kinds.size()];
+            for(int i = 0; i < pkgPlan.moduleKinds.length; ++i) {
+                pkgPlan.moduleKinds[i] = kinds.get(i);
+            }
+            pkgPlan.modulePaths = paths.toArray(new String[paths.size()]);
+            pkgPlan.templates = templates;
+        }
+        final Path tasksXml = pmWfDir.resolve(WfConstants.TASKS_XML);
+        if(Files.exists(tasksXml)) {
+            pkgPlan.tasks = WildFlyPackageTasks.load(tasksXml);
+            pkgPlan.tasksHash = HashUtils.hashFile(tasksXml);
+            for(CopyPath copyPath : pkgPlan.tasks.getCopyPaths()) {
+                if(!copyPath.isReplaceProperties()) {
+                    continue;
+                }
+                final Path src = pmWfDir.resolve(copyPath.getSrc());
+                if(!Files.exists(src)) {
+                    continue;
+                }
+                final Map<String, String> verbatimFiles = new TreeMap<>(pkgPlan.verbatimFiles);
+                Files.walkFileTree(src, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+                        new SimpleFileVisitor<Path>() {
+                            @Override
+                            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                                if(PropertyReplacer.isVerbatim(file)) {
+                                    verbatimFiles.put(relativePath(pmWfDir, file), HashUtils.hashFile(file));
+                                }
+                                return FileVisitResult.CONTINUE;
+                            }
+                        });
+                pkgPlan.verbatimFiles = verbatimFiles;
+            }
+        }
+        return pkgPlan;
+    }
+
+    static String relativePath(Path base, Path path) {
+        final Path relative = base.relativize(path);
+        if(relative.getNameCount() == 1) {
+            return relative.toString();
+        }
+        final StringBuilder buf = new StringBuilder();
+        for(Path name : relative) {
+            if(buf.length() > 0) {
+                buf.append('/');
+            }
+            buf.append(name.toString());
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Reads the plan from the file.
+     *
+     * @param planFile  plan file
+     * @return  the plan or null if the plan is of an unsupported version
+     * @throws ProvisioningException  in case the plan could not be read
+     */
+    static WfProvisioningPlan read(Path planFile) throws ProvisioningException {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(planFile)))) {
+            if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            final int packagesTotal = in.readInt();
+            final Map<String, PackagePlan> packages = new HashMap<>(packagesTotal);
+            for(int p = 0; p < packagesTotal; ++p) {
+                final String pkgName = in.readUTF();
+                final PackagePlan pkgPlan = new PackagePlan();
+                final int entriesTotal = in.readInt();
+                if(entriesTotal > 0) {
+                    pkgPlan.moduleKinds = new byte[entriesTotal];
+                    pkgPlan.modulePaths = new String[entriesTotal];
+                    pkgPlan.templates = new HashMap<>();
+                    for(int i = 0; i < entriesTotal; ++i) {
+                        pkgPlan.moduleKinds[i] = in.readByte();
+                        pkgPlan.modulePaths[i] = in.readUTF();
+                        if(pkgPlan.moduleKinds[i] == TEMPLATE) {
+                            pkgPlan.templates.put(i, ModuleTemplate.read(in));
+                        }
+                    }
+                }
+                if(in.readBoolean()) {
+                    pkgPlan.tasksHash = in.readUTF();
+                    pkgPlan.tasks = WildFlyPackageTasks.read(in);
+                }
+                final int verbatimTotal = in.readInt();
+                if(verbatimTotal > 0) {
+                    pkgPlan.verbatimFiles = new HashMap<>(verbatimTotal);
+                    for(int i = 0; i < verbatimTotal; ++i) {
+                        pkgPlan.verbatimFiles.put(in.readUTF(), in.readUTF());
+                    }
+                }
+                packages.put(pkgName, pkgPlan);
+            }
+            return new WfProvisioningPlan(packages);
+        } catch (IOException e) {
+            throw new ProvisioningException(Errors.readFile(planFile), e);
+        }
+    }
+
+    private final Map<String, PackagePlan> packages;
+
+    private WfProvisioningPlan(Map<String, PackagePlan> packages) {
+        this.packages = packages;
+    }
+
+    /**
+     * Returns the plan for the package or null if the package has no WildFly content.
+     */
+    PackagePlan getPackage(String name) {
+        return packages.get(name);
+    }
+}
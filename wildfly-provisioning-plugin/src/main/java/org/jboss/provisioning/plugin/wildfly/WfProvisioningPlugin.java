@@ -18,30 +18,31 @@ package org.jboss.provisioning.plugin.wildfly;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.FileAlreadyExistsException;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
 import java.nio.file.FileVisitOption;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Stream;
 
 import org.jboss.provisioning.ArtifactCoords;
@@ -52,7 +53,6 @@ import org.jboss.provisioning.plugin.ProvisioningPlugin;
 import org.jboss.provisioning.plugin.wildfly.config.CopyArtifact;
 import org.jboss.provisioning.plugin.wildfly.config.CopyPath;
 import org.jboss.provisioning.plugin.wildfly.config.DeletePath;
-import org.jboss.provisioning.plugin.wildfly.config.FilePermission;
 import org.jboss.provisioning.plugin.wildfly.config.WildFlyPackageTasks;
 import org.jboss.provisioning.runtime.FeaturePackRuntime;
 import org.jboss.provisioning.runtime.PackageRuntime;
@@ -61,7 +61,6 @@ import org.jboss.provisioning.state.ProvisionedConfig;
 import org.jboss.provisioning.util.IoUtils;
 import org.jboss.provisioning.util.PmCollections;
 import org.jboss.provisioning.util.PropertyUtils;
-import org.jboss.provisioning.util.ZipUtils;
 
 /**
  *
@@ -71,12 +70,33 @@ public class WfProvisioningPlugin implements ProvisioningPlugin {
 
     private ProvisioningRuntime runtime;
     private PropertyResolver versionResolver;
-    private final Pattern moduleArtifactPattern = Pattern.compile("(\\s*)((<artifact)(\\s+name=\")(\\$\\{)(.*)(\\})(\".*>)|(</artifact>))");
 
     private PropertyResolver tasksProps;
+    private final FilePermissions filePermissions = new FilePermissions();
 
     private boolean thinServer;
+    // the number of the CLI processes generating the configs concurrently
+    private int configWorkers = 1;
     private Set<String> schemaGroups = Collections.emptySet();
+    private JandexIndexCache jandexIndexes;
+    private Map<ArtifactCoords.Gav, WfProvisioningPlan> plans = Collections.emptyMap();
+    // module.xml files and tasks of the packages read and verified against the plans
+    // by the artifact pre-pass, so that the packages don't read and parse them again
+    private final Map<Path, ModuleXml> moduleXmls = new HashMap<>();
+    private final Map<Path, WildFlyPackageTasks> packageTasks = new HashMap<>();
+
+    /**
+     * The content of a module.xml and the template of its artifact placeholders.
+     */
+    private static class ModuleXml {
+        final String content;
+        final ModuleTemplate template;
+
+        ModuleXml(String content, ModuleTemplate template) {
+            this.content = content;
+            this.template = template;
+        }
+    }
 
     /* (non-Javadoc)
      * @see org.jboss.provisioning.util.plugin.ProvisioningPlugin#execute()
@@ -96,6 +116,31 @@ public class WfProvisioningPlugin implements ProvisioningPlugin {
             }
         }
 
+        final String configWorkersProp = System.getProperty("wfConfigWorkers");
+        if(configWorkersProp != null) {
+            try {
+                configWorkers = Integer.parseInt(configWorkersProp);
+            } catch(NumberFormatException e) {
+                throw new ProvisioningException("wfConfigWorkers is expected to be a number: " + configWorkersProp);
+            }
+        }
+
+        final String jandexWorkersProp = System.getProperty("wfJandexWorkers");
+        int jandexWorkers = Runtime.getRuntime().availableProcessors();
+        if(jandexWorkersProp != null) {
+            try {
+                jandexWorkers = Integer.parseInt(jandexWorkersProp);
+            } catch(NumberFormatException e) {
+                throw new ProvisioningException("wfJandexWorkers is expected to be a number: " + jandexWorkersProp);
+            }
+            if(jandexWorkers < 1) {
+                throw new ProvisioningException("wfJandexWorkers is expected to be a positive number: " + jandexWorkersProp);
+            }
+        }
+        // the indexes are reused across the runs only if the cache directory is configured
+        final String jandexCacheProp = System.getProperty("wfJandexCache");
+        jandexIndexes = new JandexIndexCache(jandexCacheProp == null ? runtime.getTmpPath("jandex") : Paths.get(jandexCacheProp), jandexWorkers);
+
         this.runtime = runtime;
 
         Properties provisioningProps = new Properties();
@@ -152,71 +197,213 @@ public class WfProvisioningPlugin implements ProvisioningPlugin {
         tasksProps = new MapPropertyResolver(provisioningProps);
         versionResolver = new MapPropertyResolver(artifactVersions);
 
-        for(FeaturePackRuntime fp : runtime.getFeaturePacks()) {
-            processPackages(fp);
+        loadPlans();
+        try {
+            resolveArtifacts();
+            for(FeaturePackRuntime fp : runtime.getFeaturePacks()) {
+                processPackages(fp);
+            }
+        } finally {
+            jandexIndexes.close();
+        }
+        if(!filePermissions.isEmpty() && !PropertyUtils.isWindows()) {
+            try {
+                filePermissions.apply(runtime.getStagedDir());
+            } catch (IOException e) {
+                throw new ProvisioningException("Failed to set file permissions", e);
+            }
         }
 
         generateConfigs(runtime, messageWriter);
+    }
+
+    private void generateConfigs(ProvisioningRuntime runtime, final MessageWriter messageWriter) throws ProvisioningException {
+        final List<ProvisionedConfig> configs = runtime.getConfigs();
+        final int workers = Math.min(configWorkers, configs.size());
+        final WfProvisionedConfigHandler configHandler = new WfProvisionedConfigHandler(runtime);
+        if(workers > 1) {
+            generateConfigs(configs, workers);
+        } else {
+            for (ProvisionedConfig config : configs) {
+                logConfig(config, messageWriter);
+                config.handle(configHandler);
+            }
+        }
 
         // TODO this needs to be revisited
         for(FeaturePackRuntime fp : runtime.getFeaturePacks()) {
             final Path finalizeCli = fp.getResource(WfConstants.WILDFLY, WfConstants.SCRIPTS, "finalize.cli");
             if(Files.exists(finalizeCli)) {
-                CliScriptRunner.runCliScript(runtime.getStagedDir(), finalizeCli, messageWriter);
+                configHandler.addScript(finalizeCli);
             }
         }
+
+        // the config scripts and the finalize scripts are executed in one CLI process,
+        // booting the CLI is what takes most of the time
+        configHandler.runScripts();
     }
 
-    private void generateConfigs(ProvisioningRuntime runtime, final MessageWriter messageWriter) throws ProvisioningException {
-        if(runtime.hasConfigs()) {
-            final WfProvisionedConfigHandler configHandler = new WfProvisionedConfigHandler(runtime);
-            for (ProvisionedConfig config : runtime.getConfigs()) {
-                if(messageWriter.isVerboseEnabled()) {
-                    final StringBuilder msg = new StringBuilder(64).append("Feature config");
-                    if (config.getModel() != null) {
-                        msg.append(" model=").append(config.getModel());
-                    }
-                    if (config.getName() != null) {
-                        msg.append(" name=").append(config.getName());
-                    }
-                    messageWriter.verbose(msg);
-                    if (config.hasProperties()) {
-                        messageWriter.verbose("  properties");
-                        for (Map.Entry<String, String> entry : config.getProperties().entrySet()) {
-                            messageWriter.verbose("    %s=%s", entry.getKey(), entry.getValue());
-                        }
-                    }
+    /**
+     * Distributes the configs among the workers each of which generates its configs
+     * in its own CLI process. The temporary host and domain configs are named differently
+     * by each worker and the embedded servers of each worker use their own data, temp and log dirs.
+     */
+    private void generateConfigs(List<ProvisionedConfig> configs, int workers) throws ProvisioningException {
+        final MessageWriter messageWriter = runtime.getMessageWriter();
+        final List<List<ProvisionedConfig>> workerConfigs = distributeConfigs(configs, workers);
+        final List<WfProvisionedConfigHandler> handlers = new ArrayList<>(workers);
+        for(int i = 0; i < workers; ++i) {
+            final WfProvisionedConfigHandler handler = new WfProvisionedConfigHandler(runtime, "-" + i);
+            for(ProvisionedConfig config : workerConfigs.get(i)) {
+                logConfig(config, messageWriter);
+                config.handle(handler);
+            }
+            handlers.add(handler);
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            final List<Future<Void>> results = new ArrayList<>(workers);
+            for(WfProvisionedConfigHandler handler : handlers) {
+                results.add(executor.submit(() -> {
+                    handler.runScripts();
+                    return null;
+                }));
+            }
+            // the failures are reported in the order of the workers, not in the order they happened
+            List<Throwable> failures = Collections.emptyList();
+            for(Future<Void> result : results) {
+                try {
+                    result.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ProvisioningException("Interrupted while generating configs", e);
+                } catch (ExecutionException e) {
+                    failures = PmCollections.add(failures, e.getCause());
                 }
-                config.handle(configHandler);
             }
+            if(!failures.isEmpty()) {
+                final StringBuilder msg = new StringBuilder("Failed to generate configs:");
+                for(Throwable failure : failures) {
+                    msg.append(System.lineSeparator()).append(failure.getMessage());
+                }
+                final ProvisioningException error = new ProvisioningException(msg.toString(), failures.get(0));
+                for(int j = 1; j < failures.size(); ++j) {
+                    error.addSuppressed(failures.get(j));
+                }
+                throw error;
+            }
+        } finally {
+            executor.shutdownNow();
         }
     }
 
-    private void processPackages(final FeaturePackRuntime fp) throws ProvisioningException {
-        for(PackageRuntime pkg : fp.getPackages()) {
-            final Path pmWfDir = pkg.getResource(WfConstants.PM, WfConstants.WILDFLY);
-            if(!Files.exists(pmWfDir)) {
+    /**
+     * Domain and host configs are not independent: a host config may embed a host controller
+     * against the domain config of another config and a domain config may re-create the host config
+     * generated by another one. So they are all assigned to the first worker in their original order
+     * and only the standalone configs are spread across the workers.
+     *
+     * @param configs  configs to generate
+     * @param workers  the number of workers
+     * @return  the configs of each worker
+     */
+    static List<List<ProvisionedConfig>> distributeConfigs(List<ProvisionedConfig> configs, int workers) {
+        final List<List<ProvisionedConfig>> workerConfigs = new ArrayList<>(workers);
+        for(int i = 0; i < workers; ++i) {
+            workerConfigs.add(new ArrayList<>());
+        }
+        boolean domain = false;
+        for(ProvisionedConfig config : configs) {
+            if(WfProvisionedConfigHandler.isStandalone(config)) {
                 continue;
             }
+            workerConfigs.get(0).add(config);
+            domain = true;
+        }
+        // the worker with the domain configs gets the standalone ones only if there is no other worker
+        final int first = domain && workers > 1 ? 1 : 0;
+        int i = 0;
+        for(ProvisionedConfig config : configs) {
+            if(WfProvisionedConfigHandler.isStandalone(config)) {
+                workerConfigs.get(first + i++ % (workers - first)).add(config);
+            }
+        }
+        return workerConfigs;
+    }
 
-            final Path moduleDir = pmWfDir.resolve(WfConstants.MODULE);
-            if(Files.exists(moduleDir)) {
-                processModules(fp.getGav(), pkg.getName(), moduleDir);
+    private static void logConfig(ProvisionedConfig config, final MessageWriter messageWriter) {
+        if(messageWriter.isVerboseEnabled()) {
+            final StringBuilder msg = new StringBuilder(64).append("Feature config");
+            if (config.getModel() != null) {
+                msg.append(" model=").append(config.getModel());
+            }
+            if (config.getName() != null) {
+                msg.append(" name=").append(config.getName());
+            }
+            messageWriter.verbose(msg);
+            if (config.hasProperties()) {
+                messageWriter.verbose("  properties");
+                for (Map.Entry<String, String> entry : config.getProperties().entrySet()) {
+                    messageWriter.verbose("    %s=%s", entry.getKey(), entry.getValue());
+                }
             }
-            final Path tasksXml = pmWfDir.resolve(WfConstants.TASKS_XML);
-            if(Files.exists(tasksXml)) {
-                final WildFlyPackageTasks pkgTasks = WildFlyPackageTasks.load(tasksXml);
+        }
+    }
+
+    /**
+     * Loads the provisioning plans of the feature-packs that were built with one,
+     * the packages of the other feature-packs are processed discovering their content.
+     */
+    private void loadPlans() throws ProvisioningException {
+        for(FeaturePackRuntime fp : runtime.getFeaturePacks()) {
+            final Path planFile = fp.getResource(WfConstants.WILDFLY, WfConstants.PROVISIONING_PLAN);
+            if(!Files.exists(planFile)) {
+                continue;
+            }
+            final WfProvisioningPlan plan = WfProvisioningPlan.read(planFile);
+            if(plan != null) {
+                plans = PmCollections.put(plans, fp.getGav(), plan);
+            }
+        }
+    }
+
+    private void processPackages(final FeaturePackRuntime fp) throws ProvisioningException {
+        final WfProvisioningPlan plan = plans.get(fp.getGav());
+        for(PackageRuntime pkg : fp.getPackages()) {
+            final Path pmWfDir = pkg.getResource(WfConstants.PM, WfConstants.WILDFLY);
+            final WildFlyPackageTasks pkgTasks;
+            WfProvisioningPlan.PackagePlan pkgPlan = null;
+            if(plan == null) {
+                if(!Files.exists(pmWfDir)) {
+                    continue;
+                }
+                final Path moduleDir = pmWfDir.resolve(WfConstants.MODULE);
+                if(Files.exists(moduleDir)) {
+                    processModules(fp.getGav(), pkg.getName(), moduleDir);
+                }
+            } else {
+                pkgPlan = plan.getPackage(pkg.getName());
+                if(pkgPlan == null) {
+                    continue;
+                }
+                if(pkgPlan.getModuleEntriesTotal() > 0) {
+                    processModules(fp.getGav(), pkg.getName(), pmWfDir.resolve(WfConstants.MODULE), pkgPlan);
+                }
+            }
+            pkgTasks = packageTasks.remove(pmWfDir.resolve(WfConstants.TASKS_XML));
+            if(pkgTasks != null) {
                 if(pkgTasks.hasCopyArtifacts()) {
                     copyArtifacts(pkgTasks);
                 }
                 if(pkgTasks.hasCopyPaths()) {
-                    copyPaths(pkgTasks, pmWfDir);
+                    copyPaths(pkgTasks, pmWfDir, pkgPlan);
                 }
                 if(pkgTasks.hasMkDirs()) {
                     mkdirs(pkgTasks, this.runtime.getStagedDir());
                 }
-                if (pkgTasks.hasFilePermissions() && !PropertyUtils.isWindows()) {
-                    processFeaturePackFilePermissions(pkgTasks, this.runtime.getStagedDir());
+                if (pkgTasks.hasFilePermissions()) {
+                    filePermissions.add(pkgTasks.getFilePermissions());
                 }
                 if(pkgTasks.hasDeletePaths()) {
                     deletePaths(pkgTasks, pmWfDir);
@@ -225,6 +412,140 @@ public class WfProvisioningPlugin implements ProvisioningPlugin {
         }
     }
 
+    /**
+     * Collects the artifacts referenced from the module templates and the copy-artifact
+     * tasks of all the packages and resolves them in a single request, so that
+     * the repository manager can fetch them concurrently before the packages are processed.
+     * The artifacts that have to be indexed are submitted for indexing right after they are resolved.
+     * The module.xml templates and the tasks are verified against the plan or parsed here
+     * and kept for the packages to be processed.
+     */
+    private void resolveArtifacts() throws ProvisioningException {
+        final Set<ArtifactCoords> artifacts = new LinkedHashSet<>();
+        final Set<ArtifactCoords> jandexArtifacts = new LinkedHashSet<>();
+        for(FeaturePackRuntime fp : runtime.getFeaturePacks()) {
+            final WfProvisioningPlan plan = plans.get(fp.getGav());
+            for(PackageRuntime pkg : fp.getPackages()) {
+                final Path pmWfDir = pkg.getResource(WfConstants.PM, WfConstants.WILDFLY);
+                final Path moduleDir = pmWfDir.resolve(WfConstants.MODULE);
+                WfProvisioningPlan.PackagePlan pkgPlan = null;
+                try {
+                    if(plan == null) {
+                        if(!Files.exists(pmWfDir)) {
+                            continue;
+                        }
+                        if(Files.exists(moduleDir)) {
+                            try(Stream<Path> files = Files.walk(moduleDir)) {
+                                final Iterator<Path> i = files.iterator();
+                                while(i.hasNext()) {
+                                    final Path file = i.next();
+                                    if(file.getFileName().toString().equals(WfConstants.MODULE_XML)) {
+                                        collectModuleArtifacts(loadModuleXml(file, null).template, artifacts, jandexArtifacts);
+                                    }
+                                }
+                            }
+                        }
+                    } else {
+                        pkgPlan = plan.getPackage(pkg.getName());
+                        if(pkgPlan == null) {
+                            continue;
+                        }
+                        for(int i = 0; i < pkgPlan.getModuleEntriesTotal(); ++i) {
+                            if(pkgPlan.getModuleEntryKind(i) == WfProvisioningPlan.TEMPLATE) {
+                                final Path file = moduleDir.resolve(pkgPlan.getModuleEntryPath(i));
+                                collectModuleArtifacts(loadModuleXml(file, pkgPlan.getModuleTemplate(i)).template, artifacts, jandexArtifacts);
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new ProvisioningException("Failed to process modules from package " + pkg.getName() + " from feature-pack " + fp.getGav(), e);
+                }
+                final WildFlyPackageTasks pkgTasks = loadTasks(pmWfDir.resolve(WfConstants.TASKS_XML), pkgPlan);
+                if(pkgTasks != null && pkgTasks.hasCopyArtifacts()) {
+                    for(CopyArtifact copyArtifact : pkgTasks.getCopyArtifacts()) {
+                        artifacts.add(fromJBossModules(versionResolver.resolveProperty(copyArtifact.getArtifact()), "jar"));
+                    }
+                }
+            }
+        }
+        if(artifacts.isEmpty()) {
+            return;
+        }
+        final Map<ArtifactCoords, Path> resolved = runtime.resolveArtifacts(artifacts);
+        for(ArtifactCoords coords : jandexArtifacts) {
+            jandexIndexes.submit(resolved.get(coords));
+        }
+    }
+
+    /**
+     * Reads the module.xml and verifies the template recorded in the plan against it
+     * or parses the template if it doesn't match. The result is kept for the module.xml to be processed.
+     *
+     * @param file  module.xml in the layout
+     * @param planned  template recorded in the plan or null
+     */
+    private ModuleXml loadModuleXml(Path file, ModuleTemplate planned) throws IOException {
+        final String content = IoUtils.readFile(file);
+        final ModuleXml moduleXml = new ModuleXml(content,
+                planned != null && planned.isParsedFrom(content) ? planned : ModuleTemplate.parse(content));
+        moduleXmls.put(file, moduleXml);
+        return moduleXml;
+    }
+
+    /**
+     * Returns the tasks recorded in the plan if they were parsed from the tasks.xml,
+     * otherwise parses the tasks.xml. The result is kept for the package to be processed.
+     *
+     * @param tasksXml  tasks.xml in the layout
+     * @param pkgPlan  package plan or null
+     * @return  the tasks or null if the package has no tasks
+     */
+    private WildFlyPackageTasks loadTasks(Path tasksXml, WfProvisioningPlan.PackagePlan pkgPlan) throws ProvisioningException {
+        WildFlyPackageTasks tasks = null;
+        if(pkgPlan != null) {
+            try {
+                tasks = pkgPlan.getTasks(tasksXml);
+            } catch (IOException e) {
+                throw new ProvisioningException(Errors.readFile(tasksXml), e);
+            }
+        }
+        if(tasks == null) {
+            if(!Files.exists(tasksXml)) {
+                return null;
+            }
+            tasks = WildFlyPackageTasks.load(tasksXml);
+        }
+        packageTasks.put(tasksXml, tasks);
+        return tasks;
+    }
+
+    private void collectModuleArtifacts(ModuleTemplate template, Set<ArtifactCoords> artifacts, Set<ArtifactCoords> jandexArtifacts) {
+        for (String property : template.properties) {
+            if (property == null) {
+                continue;
+            }
+            final int optionsIndex = property.indexOf('?');
+            final boolean jandex;
+            if (optionsIndex > 0) {
+                jandex = property.indexOf("jandex", optionsIndex) >= 0;
+                property = property.substring(0, optionsIndex);
+            } else {
+                jandex = false;
+            }
+            final String resolved = versionResolver.resolveProperty(property);
+            if (resolved == null) {
+                continue;
+            }
+            final ArtifactCoords coords = fromJBossModules(resolved, "jar");
+            if (jandex) {
+                jandexArtifacts.add(coords);
+                artifacts.add(coords);
+            } else if (!thinServer || schemaGroups.contains(coords.getGroupId())) {
+                artifacts.add(coords);
+            }
+        }
+    }
+
     private void processModules(ArtifactCoords.Gav fp, String pkgName, Path fpModuleDir) throws ProvisioningException {
         try {
             final Path installDir = runtime.getStagedDir();
@@ -246,9 +567,9 @@ public class WfProvisioningPlugin implements ProvisioningPlugin {
                 public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
                     throws IOException {
                     if(file.getFileName().toString().equals(WfConstants.MODULE_XML)) {
-                        processModuleTemplate(fpModuleDir, installDir, file);
+                        processModuleTemplate(fpModuleDir, installDir, file, null);
                     } else {
-                        Files.copy(file, installDir.resolve(fpModuleDir.relativize(file)), StandardCopyOption.REPLACE_EXISTING);
+                        copyModuleFile(file, installDir.resolve(fpModuleDir.relativize(file)));
                     }
                     return FileVisitResult.CONTINUE;
                 }
@@ -258,26 +579,66 @@ public class WfProvisioningPlugin implements ProvisioningPlugin {
         }
     }
 
-    private void processModuleTemplate(Path fpModuleDir, final Path installDir, Path moduleTemplate) throws IOException {
-        final String content = IoUtils.readFile(moduleTemplate);
-        final Matcher m = moduleArtifactPattern.matcher(content);
+    private void processModules(ArtifactCoords.Gav fp, String pkgName, Path fpModuleDir, WfProvisioningPlan.PackagePlan pkgPlan) throws ProvisioningException {
+        try {
+            final Path installDir = runtime.getStagedDir();
+            for(int i = 0; i < pkgPlan.getModuleEntriesTotal(); ++i) {
+                final String path = pkgPlan.getModuleEntryPath(i);
+                switch(pkgPlan.getModuleEntryKind(i)) {
+                    case WfProvisioningPlan.DIR:
+                        Files.createDirectories(installDir.resolve(path));
+                        break;
+                    case WfProvisioningPlan.TEMPLATE:
+                        processModuleTemplate(fpModuleDir, installDir, fpModuleDir.resolve(path), pkgPlan.getModuleTemplate(i));
+                        break;
+                    default:
+                        copyModuleFile(fpModuleDir.resolve(path), installDir.resolve(path));
+                }
+            }
+        } catch (IOException e) {
+            throw new ProvisioningException("Failed to process modules from package " + pkgName + " from feature-pack " + fp, e);
+        }
+    }
+
+    private void copyModuleFile(Path source, Path target) throws IOException {
+        if(runtime.isLayoutShared()) {
+            // linked files would share their content with the layout cache
+            IoUtils.copy(source, target);
+        } else {
+            IoUtils.linkOrCopy(source, target);
+        }
+    }
+
+    private void processModuleTemplate(Path fpModuleDir, final Path installDir, Path moduleTemplate, ModuleTemplate planned) throws IOException {
+        // normally loaded by the artifact pre-pass
+        ModuleXml moduleXml = moduleXmls.remove(moduleTemplate);
+        if(moduleXml == null) {
+            moduleXml = loadModuleXml(moduleTemplate, planned);
+            moduleXmls.remove(moduleTemplate);
+        }
+        final String content = moduleXml.content;
+        final int[] tokens = moduleXml.template.tokens;
         int copiedUntil = 0;
         try (BufferedWriter writer = Files.newBufferedWriter(installDir.resolve(fpModuleDir.relativize(moduleTemplate)))) {
-            while (m.find()) {
-                if (m.end(7) < 0) {
-                    writer.append(content, copiedUntil, m.end(1));
+            for (int t = 0; t < tokens.length; t += ModuleTemplate.TOKEN_SIZE) {
+                final int indentStart = tokens[t + ModuleTemplate.INDENT_START];
+                final int indentEnd = tokens[t + ModuleTemplate.INDENT_END];
+                if (tokens[t + ModuleTemplate.PROPERTY_START] < 0) {
+                    writer.append(content, copiedUntil, indentEnd);
                     if (thinServer) {
-                        writer.append("</artifact>"); // which is equivalent to writer.append(m.group(2));
+                        writer.append("</artifact>");
                     } else {
                         writer.append("</resource-root>");
                     }
-                    copiedUntil = m.end(2);
+                    copiedUntil = tokens[t + ModuleTemplate.NAME_END];
                 } else {
-                    writer.append(content, copiedUntil, m.start(0));
+                    writer.append(content, copiedUntil, indentStart);
+                    final int tailStart = tokens[t + ModuleTemplate.TAIL_START];
+                    final int tailEnd = tokens[t + ModuleTemplate.TAIL_END];
 
                     final String artifactName;
                     final boolean jandex;
-                    final String property = m.group(6);
+                    final String property = moduleXml.template.properties[t / ModuleTemplate.TOKEN_SIZE];
                     final int optionsIndex = property.indexOf('?');
                     if (optionsIndex > 0) {
                         artifactName = property.substring(0, optionsIndex);
@@ -289,7 +650,7 @@ public class WfProvisioningPlugin implements ProvisioningPlugin {
 
                     final String resolved = versionResolver.resolveProperty(artifactName);
                     if (resolved == null) {
-                        writer.append(content, m.start(1), m.end(8));
+                        writer.append(content, indentStart, tailEnd);
                     } else {
                         final Path targetDir = installDir.resolve(fpModuleDir.relativize(moduleTemplate.getParent()));
                         final ArtifactCoords coords = fromJBossModules(resolved, "jar");
@@ -301,75 +662,68 @@ public class WfProvisioningPlugin implements ProvisioningPlugin {
                             } catch (ProvisioningException e) {
                                 throw new IOException(e);
                             }
-                            final String artifactFileName = moduleArtifact.getFileName().toString();
-
-                            final int lastDot = artifactFileName.lastIndexOf(".");
-                            final File target = new File(targetDir.toFile(),
-                                    new StringBuilder().append(artifactFileName.substring(0, lastDot))
-                                    .append("-jandex")
-                                    .append(artifactFileName.substring(lastDot)).toString());
+                            final String indexFileName = JandexIndexCache.getIndexFileName(moduleArtifact);
                             try {
-                                JandexIndexer.createIndex(moduleArtifact.toFile(), new FileOutputStream(target));
+                                // not linked, the index may belong to a cache shared with other runs
+                                Files.copy(jandexIndexes.getIndex(moduleArtifact), targetDir.resolve(indexFileName), StandardCopyOption.REPLACE_EXISTING);
                             } catch (IOException e) {
                                 throw new IllegalStateException(e);
                             }
-                            writer.append(m.group(1));
+                            writer.append(content, indentStart, indentEnd);
                             writer.append("<resource-root path=\"");
-                            writer.append(target.getName());
+                            writer.append(indexFileName);
                             writer.append("\"/>");
                         }
 
+                        final boolean extractSchemas = schemaGroups.contains(coords.getGroupId());
+                        if((!thinServer || extractSchemas) && moduleArtifact == null) {
+                            try {
+                                moduleArtifact = runtime.resolveArtifact(coords);
+                            } catch (ProvisioningException e) {
+                                throw new IOException(e);
+                            }
+                        }
+                        // the artifact copy and the schema extraction share a single read of the artifact,
+                        // the index is generated from its own read by the index cache
+                        final JarPipeline pipeline = extractSchemas ? new JarPipeline(moduleArtifact).add(JarPipeline.schemaExtractor(getSchemasDir())) : null;
+
                         if (thinServer) {
-                            writer.append(content, m.start(1), m.end(4));
+                            writer.append(content, indentStart, tokens[t + ModuleTemplate.NAME_END]);
                             writer.append(resolved);
-                            writer.append(m.group(8));
+                            writer.append(content, tailStart, tailEnd);
                         } else {
-                            if(moduleArtifact == null) {
-                                try {
-                                    moduleArtifact = runtime.resolveArtifact(coords);
-                                } catch (ProvisioningException e) {
-                                    throw new IOException(e);
-                                }
-                            }
                             final String artifactFileName = moduleArtifact.getFileName().toString();
                             try {
-                                IoUtils.copy(moduleArtifact, targetDir.resolve(artifactFileName));
+                                if(pipeline == null) {
+                                    // not linked, the artifact belongs to the repository
+                                    Files.copy(moduleArtifact, targetDir.resolve(artifactFileName), StandardCopyOption.REPLACE_EXISTING);
+                                } else {
+                                    pipeline.copyTo(targetDir.resolve(artifactFileName));
+                                }
                             } catch (IOException e) {
                                 throw new IllegalStateException(e);
                             }
-                            writer.append(m.group(1));
+                            writer.append(content, indentStart, indentEnd);
                             writer.append("<resource-root path=\"");
                             writer.append(artifactFileName);
-                            writer.append(m.group(8));
+                            writer.append(content, tailStart, tailEnd);
                         }
 
-                        if (schemaGroups.contains(coords.getGroupId())) {
-                            if(moduleArtifact == null) {
-                                try {
-                                    moduleArtifact = runtime.resolveArtifact(coords);
-                                } catch (ProvisioningException e) {
-                                    throw new IOException(e);
-                                }
-                            }
-                            extractSchemas(moduleArtifact);
+                        if (pipeline != null) {
+                            pipeline.process();
                         }
                     }
-                    copiedUntil = m.end(8);
+                    copiedUntil = tailEnd;
                 }
             }
             writer.append(content, copiedUntil, content.length());
         }
     }
 
-    private void extractSchemas(Path moduleArtifact) throws IOException {
+    private Path getSchemasDir() throws IOException {
         final Path targetSchemasDir = this.runtime.getStagedDir().resolve(WfConstants.DOCS).resolve(WfConstants.SCHEMA);
         Files.createDirectories(targetSchemasDir);
-        try (FileSystem jarFS = FileSystems.newFileSystem(moduleArtifact, null)) {
-            final Path schemaSrc = jarFS.getPath(WfConstants.SCHEMA);
-            if (Files.exists(schemaSrc)) {
-                ZipUtils.copyFromZip(schemaSrc.toAbsolutePath(), targetSchemasDir);
-            }
-        }
+        return targetSchemasDir;
     }
 
     private void copyArtifacts(final WildFlyPackageTasks tasks) throws ProvisioningException {
@@ -387,22 +741,24 @@ public class WfProvisioningPlugin implements ProvisioningPlugin {
 
                 final Path jarTarget = runtime.getStagedDir().resolve(location);
 
-                Files.createDirectories(jarTarget.getParent());
+                final JarPipeline pipeline = new JarPipeline(jarSrc);
                 if (copyArtifact.isExtract()) {
-                    extractArtifact(jarSrc, jarTarget, copyArtifact);
+                    Files.createDirectories(jarTarget);
+                    pipeline.add(JarPipeline.extractor(jarTarget, copyArtifact));
                 } else {
-                    IoUtils.copy(jarSrc, jarTarget);
+                    pipeline.copyTo(jarTarget);
                 }
                 if(schemaGroups.contains(coords.getGroupId())) {
-                    extractSchemas(jarSrc);
+                    pipeline.add(JarPipeline.schemaExtractor(getSchemasDir()));
                 }
+                pipeline.process();
             } catch (IOException e) {
                 throw new ProvisioningException("Failed to copy artifact " + gavString, e);
             }
         }
     }
 
-    private void copyPaths(final WildFlyPackageTasks tasks, final Path pmWfDir) throws ProvisioningException {
+    private void copyPaths(final WildFlyPackageTasks tasks, final Path pmWfDir, WfProvisioningPlan.PackagePlan pkgPlan) throws ProvisioningException {
         for(CopyPath copyPath : tasks.getCopyPaths()) {
             final Path src = pmWfDir.resolve(copyPath.getSrc());
             if (!Files.exists(src)) {
@@ -435,7 +791,11 @@ public class WfProvisioningPlugin implements ProvisioningPlugin {
 
                                 @Override
                                 public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                                    PropertyReplacer.copy(file, target.resolve(src.relativize(file)), tasksProps);
+                                    final Path targetFile = target.resolve(src.relativize(file));
+                                    final String verbatimHash = pkgPlan == null ? null : pkgPlan.getVerbatimHash(WfProvisioningPlan.relativePath(pmWfDir, file));
+                                    if(verbatimHash == null || !PropertyReplacer.copyVerbatim(file, targetFile, verbatimHash)) {
+                                        PropertyReplacer.copy(file, targetFile, tasksProps);
+                                    }
                                     return FileVisitResult.CONTINUE;
                                 }
                             });
@@ -471,46 +831,6 @@ public class WfProvisioningPlugin implements ProvisioningPlugin {
         }
     }
 
-    private static void extractArtifact(Path artifact, Path target, CopyArtifact copy) throws IOException {
-        if(!Files.exists(target)) {
-            Files.createDirectories(target);
-        }
-        try (FileSystem zipFS = FileSystems.newFileSystem(artifact, null)) {
-            for(Path zipRoot : zipFS.getRootDirectories()) {
-                Files.walkFileTree(zipRoot, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
-                        new SimpleFileVisitor<Path>() {
-                            @Override
-                            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
-                                throws IOException {
-                                final String entry = dir.toString().substring(1);
-                                if(entry.isEmpty()) {
-                                    return FileVisitResult.CONTINUE;
-                                }
-                                if(!copy.includeFile(entry)) {
-                                    return FileVisitResult.SKIP_SUBTREE;
-                                }
-                                final Path targetDir = target.resolve(zipRoot.relativize(dir).toString());
-                                try {
-                                    Files.copy(dir, targetDir);
-                                } catch (FileAlreadyExistsException e) {
-                                     if (!Files.isDirectory(targetDir))
-                                         throw e;
-                                }
-                                return FileVisitResult.CONTINUE;
-                            }
-                            @Override
-                            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
-                                throws IOException {
-                                if(copy.includeFile(file.toString().substring(1))) {
-                                    Files.copy(file, target.resolve(zipRoot.relativize(file).toString()));
-                                }
-                                return FileVisitResult.CONTINUE;
-                            }
-                        });
-            }
-        }
-    }
-
     private static void mkdirs(final WildFlyPackageTasks tasks, Path installDir) throws ProvisioningException {
         // make dirs
         for (String dirName : tasks.getMkDirs()) {
@@ -525,38 +845,6 @@ public class WfProvisioningPlugin implements ProvisioningPlugin {
         }
     }
 
-    private static void processFeaturePackFilePermissions(WildFlyPackageTasks tasks, Path installDir) throws ProvisioningException {
-        final List<FilePermission> filePermissions = tasks.getFilePermissions();
-        try {
-            Files.walkFileTree(installDir, new SimpleFileVisitor<Path>() {
-                @Override
-                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-                    final String relative = installDir.relativize(dir).toString();
-                    for (FilePermission perm : filePermissions) {
-                        if (perm.includeFile(relative)) {
-                            Files.setPosixFilePermissions(dir, perm.getPermission());
-                            continue;
-                        }
-                    }
-                    return FileVisitResult.CONTINUE;
-                }
-                @Override
-                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                    final String relative = installDir.relativize(file).toString();
-                    for (FilePermission perm : filePermissions) {
-                        if (perm.includeFile(relative)) {
-                            Files.setPosixFilePermissions(file, perm.getPermission());
-                            continue;
-                        }
-                    }
-                    return FileVisitResult.CONTINUE;
-                }
-            });
-        } catch (IOException e) {
-            throw new ProvisioningException("Failed to set file permissions", e);
-        }
-    }
-
     private static ArtifactCoords fromJBossModules(String str, String extension) {
         final String[] parts = str.split(":");
         if(parts.length < 2) {
@@ -16,6 +16,8 @@
  */
 package org.jboss.provisioning.plugin.wildfly.config;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
@@ -152,6 +154,64 @@ public class WildFlyPackageTasks {
         }
     }
 
+    /**
+     * Reads the tasks written by {@link #write(DataOutput)}.
+     */
+    public static WildFlyPackageTasks read(DataInput in) throws IOException {
+        final Builder builder = builder();
+        for(int i = in.readInt(); i > 0; --i) {
+            final CopyArtifact.Builder copy = CopyArtifact.builder()
+                    .setArtifact(readString(in))
+                    .setToLocation(readString(in));
+            if(in.readBoolean()) {
+                copy.setExtract();
+            }
+            for(FileFilter filter : readFilters(in)) {
+                copy.addFilter(filter);
+            }
+            builder.addCopyArtifact(copy.build());
+        }
+        for(int i = in.readInt(); i > 0; --i) {
+            builder.addCopyPath(CopyPath.builder()
+                    .setSrc(readString(in))
+                    .setTarget(readString(in))
+                    .setReplaceProperties(in.readBoolean())
+                    .build());
+        }
+        for(int i = in.readInt(); i > 0; --i) {
+            builder.addDeletePath(new DeletePath(readString(in), in.readBoolean()));
+        }
+        for(int i = in.readInt(); i > 0; --i) {
+            final FilePermission.Builder permission = FilePermission.builder().setValue(readString(in));
+            for(FileFilter filter : readFilters(in)) {
+                permission.addFilter(filter);
+            }
+            builder.addFilePermissions(permission.build());
+        }
+        for(int i = in.readInt(); i > 0; --i) {
+            builder.addMkDirs(readString(in));
+        }
+        builder.addWindowsLineEndFilters(readFilters(in));
+        builder.addUnixLineEndFilters(readFilters(in));
+        return builder.build();
+    }
+
+    private static List<FileFilter> readFilters(DataInput in) throws IOException {
+        List<FileFilter> filters = Collections.emptyList();
+        for(int i = in.readInt(); i > 0; --i) {
+            final FileFilter.Builder filter = FileFilter.builder().setPatternString(readString(in));
+            if(in.readBoolean()) {
+                filter.setInclude();
+            }
+            filters = PmCollections.add(filters, filter.build());
+        }
+        return filters;
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
     private final List<CopyArtifact> copyArtifacts;
     private final List<CopyPath> copyPaths;
     private final List<DeletePath> deletePaths;
@@ -217,4 +277,55 @@ public class WildFlyPackageTasks {
     public List<FileFilter> getUnixLineEndFilters() {
         return unixLineEndFilters;
     }
+
+    /**
+     * Writes the tasks in a binary form, which can be read back
+     * with {@link #read(DataInput)} without parsing the XML.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(copyArtifacts.size());
+        for(CopyArtifact copy : copyArtifacts) {
+            writeString(out, copy.getArtifact());
+            writeString(out, copy.getToLocation());
+            out.writeBoolean(copy.isExtract());
+            writeFilters(out, copy.getFilters());
+        }
+        out.writeInt(copyPaths.size());
+        for(CopyPath copy : copyPaths) {
+            writeString(out, copy.getSrc());
+            writeString(out, copy.getTarget());
+            out.writeBoolean(copy.isReplaceProperties());
+        }
+        out.writeInt(deletePaths.size());
+        for(DeletePath delete : deletePaths) {
+            writeString(out, delete.getPath());
+            out.writeBoolean(delete.isRecursive());
+        }
+        out.writeInt(filePermissions.size());
+        for(FilePermission permission : filePermissions) {
+            writeString(out, permission.getValue());
+            writeFilters(out, permission.getFilters());
+        }
+        out.writeInt(mkDirs.size());
+        for(String dir : mkDirs) {
+            writeString(out, dir);
+        }
+        writeFilters(out, windowsLineEndFilters);
+        writeFilters(out, unixLineEndFilters);
+    }
+
+    private static void writeFilters(DataOutput out, List<FileFilter> filters) throws IOException {
+        out.writeInt(filters.size());
+        for(FileFilter filter : filters) {
+            writeString(out, filter.getPattern());
+            out.writeBoolean(filter.isInclude());
+        }
+    }
+
+    private static void writeString(DataOutput out, String str) throws IOException {
+        out.writeBoolean(str != null);
+        if(str != null) {
+            out.writeUTF(str);
+        }
+    }
 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.provisioning.plugin.wildfly;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jboss.provisioning.state.ProvisionedConfig;
+import org.jboss.provisioning.xml.ProvisionedConfigBuilder;
+import org.junit.Test;
+
+/**
+ *
+ * @author Alexey Loubyansky
+ */
+public class ConfigDistributionTestCase {
+
+    private static final ProvisionedConfig DOMAIN = ProvisionedConfigBuilder.builder()
+            .setModel("domain").setName("main")
+            .setProperty("domain-config-name", "domain.xml")
+            .build();
+
+    private static final ProvisionedConfig HOST = ProvisionedConfigBuilder.builder()
+            .setModel("host").setName("main")
+            .setProperty("host-config-name", "host.xml")
+            .setProperty("domain-config-name", "domain.xml")
+            .build();
+
+    private static ProvisionedConfig standalone(String name) {
+        return ProvisionedConfigBuilder.builder()
+                .setModel("standalone").setName(name)
+                .setProperty("config-name", name + ".xml")
+                .build();
+    }
+
+    @Test
+    public void testHostReferencingDomainOnTheSameWorker() throws Exception {
+        final List<List<ProvisionedConfig>> workers = WfProvisioningPlugin.distributeConfigs(Arrays.asList(DOMAIN, HOST), 2);
+        assertEquals(Arrays.asList(Arrays.asList(DOMAIN, HOST), Collections.emptyList()), workers);
+    }
+
+    @Test
+    public void testStandaloneConfigsOnOtherWorkers() throws Exception {
+        final ProvisionedConfig standalone = standalone("standalone");
+        final ProvisionedConfig ha = standalone("standalone-ha");
+        final ProvisionedConfig full = standalone("standalone-full");
+        final List<List<ProvisionedConfig>> workers = WfProvisioningPlugin.distributeConfigs(
+                Arrays.asList(standalone, DOMAIN, ha, HOST, full), 3);
+        assertEquals(Arrays.asList(
+                Arrays.asList(DOMAIN, HOST),
+                Arrays.asList(standalone, full),
+                Arrays.asList(ha)), workers);
+    }
+
+    @Test
+    public void testSingleWorker() throws Exception {
+        final ProvisionedConfig standalone = standalone("standalone");
+        final List<List<ProvisionedConfig>> workers = WfProvisioningPlugin.distributeConfigs(
+                Arrays.asList(HOST, standalone, DOMAIN), 1);
+        assertEquals(Arrays.asList(Arrays.asList(HOST, DOMAIN, standalone)), workers);
+    }
+
+    @Test
+    public void testOnlyStandaloneConfigs() throws Exception {
+        final ProvisionedConfig standalone = standalone("standalone");
+        final ProvisionedConfig ha = standalone("standalone-ha");
+        final ProvisionedConfig full = standalone("standalone-full");
+        final List<List<ProvisionedConfig>> workers = WfProvisioningPlugin.distributeConfigs(
+                Arrays.asList(standalone, ha, full), 2);
+        assertEquals(Arrays.asList(
+                Arrays.asList(standalone, full),
+                Arrays.asList(ha)), workers);
+    }
+}
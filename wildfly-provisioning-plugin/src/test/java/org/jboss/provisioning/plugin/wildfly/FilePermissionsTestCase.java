@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.provisioning.plugin.wildfly;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+
+import org.jboss.provisioning.plugin.wildfly.config.FileFilter;
+import org.jboss.provisioning.plugin.wildfly.config.FilePermission;
+import org.jboss.provisioning.util.IoUtils;
+import org.jboss.provisioning.util.PropertyUtils;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Alexey Loubyansky
+ */
+public class FilePermissionsTestCase {
+
+    private Path installDir;
+
+    @Before
+    public void init() throws Exception {
+        Assume.assumeFalse(PropertyUtils.isWindows());
+        installDir = IoUtils.createRandomTmpDir();
+        Files.createDirectories(installDir.resolve("bin"));
+        IoUtils.writeFile(installDir.resolve("bin").resolve("standalone.sh"), "sh");
+        IoUtils.writeFile(installDir.resolve("bin").resolve("standalone.conf"), "conf");
+        IoUtils.writeFile(installDir.resolve("README.txt"), "readme");
+        for(Path path : Arrays.asList(installDir.resolve("bin").resolve("standalone.sh"),
+                installDir.resolve("bin").resolve("standalone.conf"),
+                installDir.resolve("README.txt"))) {
+            Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rw-------"));
+        }
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        if(installDir != null) {
+            IoUtils.recursiveDelete(installDir);
+        }
+    }
+
+    @Test
+    public void testNotMatchingPathsAreNotAffected() throws Exception {
+        final FilePermissions permissions = new FilePermissions();
+        permissions.add(Arrays.asList(permission("755", "bin/*.sh")));
+        permissions.apply(installDir);
+
+        assertPermissions("rwxr-xr-x", "bin/standalone.sh");
+        assertPermissions("rw-------", "bin/standalone.conf");
+        assertPermissions("rw-------", "README.txt");
+    }
+
+    @Test
+    public void testLastAddedPermissionWins() throws Exception {
+        final FilePermissions permissions = new FilePermissions();
+        // package 1
+        permissions.add(Arrays.asList(permission("644", "bin/*"), permission("755", "bin/*.sh")));
+        // package 2
+        permissions.add(Arrays.asList(permission("640", "bin/*.conf")));
+        permissions.apply(installDir);
+
+        assertPermissions("rwxr-xr-x", "bin/standalone.sh");
+        assertPermissions("rw-r-----", "bin/standalone.conf");
+    }
+
+    @Test
+    public void testDuplicatePermissionTakesLastPosition() throws Exception {
+        final FilePermissions permissions = new FilePermissions();
+        // package 1
+        permissions.add(Arrays.asList(permission("755", "bin/*.sh")));
+        // package 2
+        permissions.add(Arrays.asList(permission("700", "bin/*.sh")));
+        // package 3 re-declares the permission of package 1
+        permissions.add(Arrays.asList(permission("755", "bin/*.sh")));
+        permissions.apply(installDir);
+
+        assertPermissions("rwxr-xr-x", "bin/standalone.sh");
+    }
+
+    @Test
+    public void testPermissionsApplyToContentAddedByFollowingPackages() throws Exception {
+        final FilePermissions permissions = new FilePermissions();
+        // package 1
+        permissions.add(Arrays.asList(permission("755", "bin/*.sh")));
+        // package 2 adds a script after the permissions of package 1 have been collected
+        final Path domainSh = installDir.resolve("bin").resolve("domain.sh");
+        IoUtils.writeFile(domainSh, "sh");
+        Files.setPosixFilePermissions(domainSh, PosixFilePermissions.fromString("rw-------"));
+        permissions.apply(installDir);
+
+        assertPermissions("rwxr-xr-x", "bin/standalone.sh");
+        assertPermissions("rwxr-xr-x", "bin/domain.sh");
+    }
+
+    private void assertPermissions(String expected, String path) throws Exception {
+        assertEquals(path, expected, PosixFilePermissions.toString(Files.getPosixFilePermissions(installDir.resolve(path))));
+    }
+
+    private static FilePermission permission(String value, String pattern) {
+        return FilePermission.builder().setValue(value)
+                .addFilter(FileFilter.builder().setPatternString(pattern).setInclude().build())
+                .build();
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.provisioning.plugin.wildfly;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.jboss.provisioning.util.IoUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Alexey Loubyansky
+ */
+public class JarPipelineTestCase {
+
+    private static class Collector implements JarPipeline.EntryHandler {
+
+        final String prefix;
+        final Map<String, String> entries = new TreeMap<>();
+        boolean completed;
+
+        Collector(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public boolean accepts(String entryName) {
+            return entryName.startsWith(prefix);
+        }
+
+        @Override
+        public void handle(ZipEntry entry, InputStream in) throws IOException {
+            final byte[] bytes = new byte[(int) entry.getSize()];
+            int read = 0;
+            while(read < bytes.length) {
+                read += in.read(bytes, read, bytes.length - read);
+            }
+            assertEquals(-1, in.read());
+            entries.put(entry.getName(), new String(bytes, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void complete() {
+            completed = true;
+        }
+    }
+
+    private Path workDir;
+
+    @Before
+    public void init() throws Exception {
+        workDir = IoUtils.createRandomTmpDir();
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        IoUtils.recursiveDelete(workDir);
+    }
+
+    private Path createJar(String name, byte[] prefix) throws IOException {
+        final Path jar = workDir.resolve(name);
+        try(OutputStream out = Files.newOutputStream(jar)) {
+            out.write(prefix);
+            final ZipOutputStream zip = new ZipOutputStream(out);
+            zip.putNextEntry(new ZipEntry("schema/"));
+            zip.closeEntry();
+            addEntry(zip, "schema/a.xsd", "a schema", ZipEntry.DEFLATED);
+            addEntry(zip, "schema/b.xsd", "b schema", ZipEntry.STORED);
+            addEntry(zip, "org/C.class", "class", ZipEntry.DEFLATED);
+            zip.finish();
+        }
+        return jar;
+    }
+
+    private static void addEntry(ZipOutputStream zip, String name, String content, int method) throws IOException {
+        final byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        final ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(method);
+        if(method == ZipEntry.STORED) {
+            final CRC32 crc = new CRC32();
+            crc.update(bytes);
+            entry.setCrc(crc.getValue());
+            entry.setSize(bytes.length);
+            entry.setCompressedSize(bytes.length);
+        }
+        zip.putNextEntry(entry);
+        zip.write(bytes);
+        zip.closeEntry();
+    }
+
+    private void assertProcessed(Path jar) throws Exception {
+        final Path schemas = workDir.resolve("schemas");
+        final Path copy = workDir.resolve("copy").resolve("copy.jar");
+        final Collector schemaCollector = new Collector("schema/");
+        final Collector classCollector = new Collector("org/");
+        new JarPipeline(jar)
+            .copyTo(copy)
+            .add(JarPipeline.schemaExtractor(schemas))
+            .add(schemaCollector)
+            .add(classCollector)
+            .process();
+
+        assertArrayEquals(Files.readAllBytes(jar), Files.readAllBytes(copy));
+        assertEquals("a schema", new String(Files.readAllBytes(schemas.resolve("a.xsd")), StandardCharsets.UTF_8));
+        assertEquals("b schema", new String(Files.readAllBytes(schemas.resolve("b.xsd")), StandardCharsets.UTF_8));
+
+        final Map<String, String> expected = new TreeMap<>();
+        expected.put("schema/", "");
+        expected.put("schema/a.xsd", "a schema");
+        expected.put("schema/b.xsd", "b schema");
+        assertEquals(expected, schemaCollector.entries);
+        assertEquals(Collections.singletonMap("org/C.class", "class"), classCollector.entries);
+        assertTrue(schemaCollector.completed);
+        assertTrue(classCollector.completed);
+    }
+
+    @Test
+    public void testInMemory() throws Exception {
+        assertProcessed(createJar("test.jar", new byte[0]));
+    }
+
+    @Test
+    public void testArchiveWithPrefixIsReadThroughZipFile() throws Exception {
+        assertProcessed(createJar("prefixed.jar", "#!/bin/sh\n".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testContentReadByCaller() throws Exception {
+        final Path jar = createJar("test.jar", new byte[0]);
+        final Collector classCollector = new Collector("org/");
+        new JarPipeline(jar, Files.readAllBytes(jar)).add(classCollector).process();
+        assertEquals(Collections.singletonMap("org/C.class", "class"), classCollector.entries);
+    }
+
+    @Test
+    public void testEntryOutsideOfTargetDir() throws Exception {
+        final Path jar = workDir.resolve("evil.jar");
+        try(ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(jar))) {
+            addEntry(zip, "schema/../../evil.xsd", "evil", ZipEntry.DEFLATED);
+        }
+        try {
+            new JarPipeline(jar).add(JarPipeline.schemaExtractor(workDir.resolve("schemas"))).process();
+            fail("The entry is outside of the target directory");
+        } catch(IOException e) {
+            assertFalse(Files.exists(workDir.resolve("evil.xsd")));
+        }
+    }
+}
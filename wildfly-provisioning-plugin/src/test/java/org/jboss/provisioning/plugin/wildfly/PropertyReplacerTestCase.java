@@ -0,0 +1,209 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.provisioning.plugin.wildfly;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jboss.provisioning.util.IoUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Alexey Loubyansky
+ */
+public class PropertyReplacerTestCase {
+
+    /**
+     * Returns at most the specified number of chars per read.
+     */
+    private static class ChunkedReader extends Reader {
+
+        private final Reader reader;
+        private final int chunk;
+
+        ChunkedReader(String str, int chunk) {
+            this.reader = new StringReader(str);
+            this.chunk = chunk;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            return reader.read(cbuf, off, Math.min(len, chunk));
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    private static final String MIXED = "x$$y${a}z${/}${a,d}${b,d}$";
+
+    private final Map<String, String> props = new HashMap<>();
+    private final PropertyResolver resolver = new MapPropertyResolver(props);
+    private Path workDir;
+
+    @Before
+    public void init() throws Exception {
+        props.put("a", "A");
+        props.put("c", "C");
+        workDir = IoUtils.createRandomTmpDir();
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        IoUtils.recursiveDelete(workDir);
+    }
+
+    private String replace(String str) throws IOException {
+        return replace(new StringReader(str));
+    }
+
+    private String replace(Reader reader) throws IOException {
+        final StringWriter writer = new StringWriter();
+        PropertyReplacer.copy(reader, writer, resolver);
+        return writer.toString();
+    }
+
+    private void assertFailure(String str, String msg) throws IOException {
+        try {
+            replace(str);
+            fail("Expected failure for " + str);
+        } catch(IllegalStateException e) {
+            assertEquals(msg, e.getMessage());
+        }
+    }
+
+    @Test
+    public void testNoExpressions() throws Exception {
+        assertEquals("", replace(""));
+        assertEquals("no expressions {a}", replace("no expressions {a}"));
+    }
+
+    @Test
+    public void testEscapedDollar() throws Exception {
+        assertEquals("a$b", replace("a$$b"));
+        assertEquals("$${a}", replace("$$$${a}"));
+        assertEquals("${a}", replace("$${a}"));
+    }
+
+    @Test
+    public void testDollarNotFollowedByBrace() throws Exception {
+        assertEquals("$a $", replace("$a $"));
+        assertEquals("$", replace("$"));
+    }
+
+    @Test
+    public void testProperty() throws Exception {
+        assertEquals("xAy", replace("x${a}y"));
+        assertEquals("AC", replace("${a}${c}"));
+        assertFailure("${b}", "Failed to resolve property: b");
+    }
+
+    @Test
+    public void testDefault() throws Exception {
+        assertEquals("A", replace("${a,default}"));
+        assertEquals("default", replace("${b,default}"));
+        // the default is resolved as a property too
+        assertEquals("C", replace("${b,c}"));
+    }
+
+    @Test
+    public void testFileSeparator() throws Exception {
+        assertEquals("a" + File.separatorChar + "b", replace("a${/}b"));
+        assertEquals(String.valueOf(File.separatorChar), replace("${/,default}"));
+    }
+
+    @Test
+    public void testColonIsAProperty() throws Exception {
+        assertFailure("${:}", "Failed to resolve property: :");
+        props.put(":", File.pathSeparator);
+        assertEquals("a" + File.pathSeparator + "b", replace("a${:}b"));
+    }
+
+    @Test
+    public void testUnterminatedExpression() throws Exception {
+        assertFailure("x${a", "Incomplete expression: a");
+        assertFailure("${", "Incomplete expression: ");
+        assertEquals("de", replace("${b,de"));
+        assertEquals("A", replace("${a,de"));
+    }
+
+    @Test
+    public void testExpressionsSplitAcrossReads() throws Exception {
+        final String expected = "x$yAz" + File.separatorChar + "Ad$";
+        assertEquals(expected, replace(MIXED));
+        for(int chunk = 1; chunk <= MIXED.length(); ++chunk) {
+            assertEquals("chunk " + chunk, expected, replace(new ChunkedReader(MIXED, chunk)));
+        }
+    }
+
+    @Test
+    public void testExpressionsAtBufferBoundary() throws Exception {
+        // the replacer reads 8192 chars at a time
+        final StringBuilder padding = new StringBuilder();
+        for(int i = 0; i < 8191; ++i) {
+            padding.append('-');
+        }
+        assertEquals(padding + "$x", replace(padding + "$$x"));
+        assertEquals(padding + "Ax", replace(padding + "${a}x"));
+        assertEquals(padding + "-Ax", replace(padding + "-${a}x"));
+        assertEquals(padding + "$", replace(padding + "$"));
+    }
+
+    @Test
+    public void testVerbatimFile() throws Exception {
+        final byte[] content = "h\u00e9llo {a}\r\nw\u00f6rld\n".getBytes(StandardCharsets.UTF_8);
+        final Path src = workDir.resolve("src.txt");
+        Files.write(src, content);
+        assertTrue(PropertyReplacer.isVerbatim(src));
+
+        final Path target = workDir.resolve("target").resolve("target.txt");
+        PropertyReplacer.copy(src, target, resolver);
+        assertArrayEquals(content, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void testFileWithExpressions() throws Exception {
+        final Path src = workDir.resolve("src.txt");
+        Files.write(src, MIXED.getBytes(StandardCharsets.UTF_8));
+        assertFalse(PropertyReplacer.isVerbatim(src));
+
+        final Path target = workDir.resolve("target.txt");
+        // the previous content is replaced
+        Files.write(target, "previous content which is longer".getBytes(StandardCharsets.UTF_8));
+        PropertyReplacer.copy(src, target, resolver);
+        assertEquals("x$yAz" + File.separatorChar + "Ad$", new String(Files.readAllBytes(target), StandardCharsets.UTF_8));
+    }
+}
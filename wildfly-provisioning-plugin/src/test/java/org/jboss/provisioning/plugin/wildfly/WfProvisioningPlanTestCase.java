@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.provisioning.plugin.wildfly;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.jboss.provisioning.Constants;
+import org.jboss.provisioning.plugin.wildfly.config.WildFlyPackageTasks;
+import org.jboss.provisioning.util.IoUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Alexey Loubyansky
+ */
+public class WfProvisioningPlanTestCase {
+
+    private static final String TASKS = "<tasks xmlns=\"urn:wildfly:wildfly-feature-pack-tasks:2.0\">"
+            + "<copy-paths><path src=\"content\" target=\"content\" replace-props=\"true\"/></copy-paths>"
+            + "</tasks>";
+
+    private Path fpDir;
+    private Path pmWfDir;
+    private Path planFile;
+
+    @Before
+    public void init() throws Exception {
+        fpDir = IoUtils.createRandomTmpDir();
+        pmWfDir = fpDir.resolve(Constants.PACKAGES).resolve("p1").resolve(WfConstants.PM).resolve(WfConstants.WILDFLY);
+        Files.createDirectories(pmWfDir.resolve("content"));
+        Files.createDirectories(pmWfDir.resolve(WfConstants.MODULE).resolve("m1"));
+        write(pmWfDir.resolve(WfConstants.TASKS_XML), TASKS);
+        write(pmWfDir.resolve("content").resolve("plain.txt"), "plain");
+        write(pmWfDir.resolve("content").resolve("props.txt"), "${a}");
+        write(pmWfDir.resolve(WfConstants.MODULE).resolve("m1").resolve(WfConstants.MODULE_XML), "<module/>");
+        planFile = fpDir.resolve(Constants.RESOURCES).resolve(WfConstants.WILDFLY).resolve(WfConstants.PROVISIONING_PLAN);
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        IoUtils.recursiveDelete(fpDir);
+    }
+
+    @Test
+    public void testTasksMatch() throws Exception {
+        final WfProvisioningPlan.PackagePlan pkgPlan = writeAndRead();
+        assertNotNull(pkgPlan.getTasks(pmWfDir.resolve(WfConstants.TASKS_XML)));
+    }
+
+    @Test
+    public void testModifiedTasksAreNotUsed() throws Exception {
+        final WfProvisioningPlan.PackagePlan pkgPlan = writeAndRead();
+        write(pmWfDir.resolve(WfConstants.TASKS_XML), TASKS + "\n");
+        assertNull(pkgPlan.getTasks(pmWfDir.resolve(WfConstants.TASKS_XML)));
+    }
+
+    @Test
+    public void testVerbatimFiles() throws Exception {
+        final WfProvisioningPlan.PackagePlan pkgPlan = writeAndRead();
+        assertNotNull(pkgPlan.getVerbatimHash("content/plain.txt"));
+        assertNull(pkgPlan.getVerbatimHash("content/props.txt"));
+    }
+
+    @Test
+    public void testVerbatimCopy() throws Exception {
+        final WfProvisioningPlan.PackagePlan pkgPlan = writeAndRead();
+        final Path target = fpDir.resolve("plain.txt");
+        assertTrue(PropertyReplacer.copyVerbatim(pmWfDir.resolve("content").resolve("plain.txt"), target,
+                pkgPlan.getVerbatimHash("content/plain.txt")));
+        assertEquals("plain", read(target));
+    }
+
+    @Test
+    public void testModifiedVerbatimFileIsNotCopiedVerbatim() throws Exception {
+        final WfProvisioningPlan.PackagePlan pkgPlan = writeAndRead();
+        final Path src = pmWfDir.resolve("content").resolve("plain.txt");
+        write(src, "${a}");
+        final Path target = fpDir.resolve("plain.txt");
+        assertFalse(PropertyReplacer.copyVerbatim(src, target, pkgPlan.getVerbatimHash("content/plain.txt")));
+        assertFalse(Files.exists(target));
+        PropertyReplacer.copy(src, target, new MapPropertyResolver(Collections.singletonMap("a", "A")));
+        assertEquals("A", read(target));
+    }
+
+    @Test
+    public void testModuleTemplate() throws Exception {
+        final WfProvisioningPlan.PackagePlan pkgPlan = writeAndRead();
+        int template = -1;
+        for(int i = 0; i < pkgPlan.getModuleEntriesTotal(); ++i) {
+            if(pkgPlan.getModuleEntryKind(i) == WfProvisioningPlan.TEMPLATE) {
+                template = i;
+            }
+        }
+        assertEquals("m1/" + WfConstants.MODULE_XML, pkgPlan.getModuleEntryPath(template));
+        final Path moduleXml = pmWfDir.resolve(WfConstants.MODULE).resolve("m1").resolve(WfConstants.MODULE_XML);
+        assertTrue(pkgPlan.getModuleTemplate(template).isParsedFrom(IoUtils.readFile(moduleXml)));
+        write(moduleXml, "<module />");
+        assertFalse(pkgPlan.getModuleTemplate(template).isParsedFrom(IoUtils.readFile(moduleXml)));
+    }
+
+    private WfProvisioningPlan.PackagePlan writeAndRead() throws Exception {
+        WfProvisioningPlan.write(fpDir);
+        final WfProvisioningPlan plan = WfProvisioningPlan.read(planFile);
+        assertNotNull(plan);
+        final WfProvisioningPlan.PackagePlan pkgPlan = plan.getPackage("p1");
+        assertNotNull(pkgPlan);
+        return pkgPlan;
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+}